@@ -1,15 +1,30 @@
 package com.smc.plugin;
 
+import com.smc.plugin.api.ApiMetrics;
+import com.smc.plugin.audit.CommandJournal;
+import com.smc.plugin.api.GenerationTracker;
 import com.smc.plugin.api.HttpApiServer;
 import com.smc.plugin.command.CommandExecutor;
+import com.smc.plugin.command.CommandJobManager;
+import com.smc.plugin.command.CommandRegistry;
+import com.smc.plugin.command.CommandScheduleManager;
 import com.smc.plugin.config.ConfigManager;
+import com.smc.plugin.health.HotspotSampler;
+import com.smc.plugin.health.TickSampler;
 import com.smc.plugin.logging.LogAppenderManager;
 import com.smc.plugin.logging.LogCollector;
+import com.smc.plugin.player.PlayerSnapshotCache;
+import com.smc.plugin.profiler.ListenerProfiler;
+import com.smc.plugin.profiler.StackSampler;
+import com.smc.plugin.version.ReflectionRegistry;
 import com.smc.plugin.version.VersionAdapter;
 import com.smc.plugin.version.VersionAdapterFactory;
 import com.smc.plugin.version.UnsupportedVersionException;
 import org.bukkit.plugin.java.JavaPlugin;
 
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
 /**
  * Main plugin class for SMC (Server Management via MCP).
  * Provides HTTP API for Minecraft server management.
@@ -21,10 +36,22 @@ public class SMCPlugin extends JavaPlugin {
     
     private static SMCPlugin instance;
     private ConfigManager configManager;
+    private ReflectionRegistry reflectionRegistry;
     private VersionAdapter versionAdapter;
     private LogCollector logCollector;
     private LogAppenderManager logAppenderManager;
     private CommandExecutor commandExecutor;
+    private CommandJobManager commandJobManager;
+    private CommandRegistry commandRegistry;
+    private CommandScheduleManager commandScheduleManager;
+    private PlayerSnapshotCache playerSnapshotCache;
+    private TickSampler tickSampler;
+    private HotspotSampler hotspotSampler;
+    private ListenerProfiler listenerProfiler;
+    private StackSampler stackSampler;
+    private GenerationTracker generationTracker;
+    private ApiMetrics apiMetrics;
+    private CommandJournal commandJournal;
     private HttpApiServer httpApiServer;
     
     /**
@@ -54,6 +81,15 @@ public class SMCPlugin extends JavaPlugin {
         return versionAdapter;
     }
     
+    /**
+     * Gets the cached version-dependent reflective access.
+     * 
+     * @return The reflection registry instance
+     */
+    public ReflectionRegistry getReflectionRegistry() {
+        return reflectionRegistry;
+    }
+    
     /**
      * Gets the log collector.
      * 
@@ -71,6 +107,105 @@ public class SMCPlugin extends JavaPlugin {
     public CommandExecutor getCommandExecutor() {
         return commandExecutor;
     }
+    
+    /**
+     * Gets the command job manager.
+     * 
+     * @return The command job manager instance
+     */
+    public CommandJobManager getCommandJobManager() {
+        return commandJobManager;
+    }
+    
+    /**
+     * Gets the scheduled command manager.
+     * 
+     * @return The schedule manager instance
+     */
+    public CommandScheduleManager getCommandScheduleManager() {
+        return commandScheduleManager;
+    }
+    
+    /**
+     * Gets the command audit journal.
+     * 
+     * @return The journal, or null if auditing is disabled or the journal could not be opened
+     */
+    public CommandJournal getCommandJournal() {
+        return commandJournal;
+    }
+    
+    /**
+     * Gets the command registry.
+     * 
+     * @return The command registry instance
+     */
+    public CommandRegistry getCommandRegistry() {
+        return commandRegistry;
+    }
+    
+    /**
+     * Gets the online player snapshot.
+     * 
+     * @return The player snapshot cache instance
+     */
+    public PlayerSnapshotCache getPlayerSnapshotCache() {
+        return playerSnapshotCache;
+    }
+    
+    /**
+     * Gets the HTTP API metrics.
+     * 
+     * @return The API metrics instance
+     */
+    public ApiMetrics getApiMetrics() {
+        return apiMetrics;
+    }
+    
+    /**
+     * Gets the tick sampler.
+     * 
+     * @return The tick sampler instance
+     */
+    public TickSampler getTickSampler() {
+        return tickSampler;
+    }
+    
+    /**
+     * Gets the entity and chunk hotspot sampler.
+     * 
+     * @return The hotspot sampler instance, or null if hotspot scanning is disabled
+     */
+    public HotspotSampler getHotspotSampler() {
+        return hotspotSampler;
+    }
+    
+    /**
+     * Gets the event listener profiler.
+     * 
+     * @return The listener profiler instance, or null if listener profiling is disabled
+     */
+    public ListenerProfiler getListenerProfiler() {
+        return listenerProfiler;
+    }
+    
+    /**
+     * Gets the on-demand sampler of the server thread's stack.
+     * 
+     * @return The stack sampler instance
+     */
+    public StackSampler getStackSampler() {
+        return stackSampler;
+    }
+    
+    /**
+     * Gets the generation tracker used to derive API ETags.
+     * 
+     * @return The generation tracker instance
+     */
+    public GenerationTracker getGenerationTracker() {
+        return generationTracker;
+    }
 
     /**
      * Called when the plugin is enabled.
@@ -97,9 +232,10 @@ public class SMCPlugin extends JavaPlugin {
             getLogger().info("Server Version: " + serverVersion);
             getLogger().info("Bukkit Version: " + bukkitVersion);
             
-            // Initialize version adapter
+            // Resolve reflective access once, then initialize the version adapter
+            reflectionRegistry = ReflectionRegistry.resolve(getServer(), getLogger());
             try {
-                versionAdapter = VersionAdapterFactory.createAdapter();
+                versionAdapter = VersionAdapterFactory.createAdapter(reflectionRegistry);
                 String detectedVersion = VersionAdapterFactory.detectServerVersion();
                 getLogger().info("Version adapter initialized for Minecraft " + detectedVersion);
                 getLogger().info("Using adapter: " + versionAdapter.getClass().getSimpleName());
@@ -123,9 +259,77 @@ public class SMCPlugin extends JavaPlugin {
                 getLogger().warning("Failed to register log appender - log collection may not work");
             }
             
+            // Record tick durations for TPS and MSPT
+            tickSampler = new TickSampler(this);
+            tickSampler.start();
+            getLogger().info("Tick sampler started (source: " + tickSampler.getSource() + ")");
+            
+            // Count entities per chunk a little at a time
+            if (configManager.isHotspotsEnabled()) {
+                hotspotSampler = new HotspotSampler(this);
+                hotspotSampler.start();
+                getLogger().info("Hotspot sampler started (every " + configManager.getHotspotIntervalSeconds()
+                    + "s, tick budget: " + configManager.getHotspotTickBudgetMillis() + "ms)");
+            }
+            
+            // Initialize API metrics (shared by the HTTP server and the command executor)
+            apiMetrics = new ApiMetrics();
+            
+            // Open the command audit journal before any command can be submitted
+            if (configManager.isAuditEnabled()) {
+                CommandJournal journal = new CommandJournal(getDataFolder().toPath().resolve("audit"),
+                    configManager.getAuditSegmentBytes(), configManager.getAuditMaxSegments(),
+                    configManager.getAuditFlushIntervalMillis(), getLogger());
+                try {
+                    journal.open();
+                    commandJournal = journal;
+                    getLogger().info("Command audit journal opened (" + configManager.getAuditMaxSegments()
+                        + " segments of " + configManager.getAuditSegmentBytes() / 1048576 + " MiB)");
+                } catch (IOException e) {
+                    getLogger().warning("Failed to open command audit journal - commands will not be audited: "
+                        + e.getMessage());
+                }
+            }
+            
             // Initialize command executor
             commandExecutor = new CommandExecutor(this);
-            getLogger().info("Command executor initialized (timeout: " + configManager.getCommandTimeoutSeconds() + "s)");
+            commandExecutor.start();
+            getLogger().info("Command executor initialized (timeout: " + configManager.getCommandTimeoutSeconds()
+                + "s, tick budget: " + configManager.getCommandTickBudgetMillis() + "ms)");
+            
+            // Initialize asynchronous command jobs
+            commandJobManager = new CommandJobManager(this);
+            
+            // Start recurring commands defined in the config
+            commandScheduleManager = new CommandScheduleManager(this);
+            commandScheduleManager.start();
+            getLogger().info("Command schedules loaded (" + commandScheduleManager.list().size() + " schedules)");
+            
+            // Track state generations for conditional API requests
+            generationTracker = new GenerationTracker();
+            getServer().getPluginManager().registerEvents(generationTracker, this);
+            
+            // Index registered commands; the first tick runs after every plugin has loaded
+            commandRegistry = new CommandRegistry(this);
+            getServer().getPluginManager().registerEvents(commandRegistry, this);
+            commandRegistry.scheduleRefresh();
+            
+            // Snapshot online players on the main thread for the HTTP threads
+            playerSnapshotCache = new PlayerSnapshotCache(this);
+            getServer().getPluginManager().registerEvents(playerSnapshotCache, this);
+            playerSnapshotCache.start();
+            
+            // Time event listeners per plugin when enabled
+            if (configManager.isListenerProfilingEnabled()) {
+                listenerProfiler = new ListenerProfiler(this);
+                listenerProfiler.start();
+                getLogger().info("Listener profiler started (" + listenerProfiler.getWrappedListeners()
+                    + " listeners)");
+            }
+            
+            // onEnable runs on the server thread, which CPU profiles sample
+            stackSampler = new StackSampler(Thread.currentThread(),
+                TimeUnit.SECONDS.toMillis(configManager.getCpuProfileMaxSeconds()));
             
             // Initialize and start HTTP API server
             if (configManager.isHttpEnabled()) {
@@ -171,6 +375,38 @@ public class SMCPlugin extends JavaPlugin {
                 httpApiServer.stopServer();
             }
             
+            if (playerSnapshotCache != null) {
+                playerSnapshotCache.shutdown();
+            }
+            if (tickSampler != null) {
+                tickSampler.shutdown();
+            }
+            if (hotspotSampler != null) {
+                hotspotSampler.shutdown();
+            }
+            if (listenerProfiler != null) {
+                listenerProfiler.shutdown();
+            }
+            if (stackSampler != null) {
+                stackSampler.shutdown();
+            }
+            
+            // Stop starting scheduled runs, then fail queued commands and jobs that can no longer run
+            if (commandScheduleManager != null) {
+                commandScheduleManager.shutdown();
+            }
+            if (commandExecutor != null) {
+                commandExecutor.shutdown();
+            }
+            if (commandJobManager != null) {
+                commandJobManager.shutdown();
+            }
+            
+            // Flush the audit journal once no more results can arrive
+            if (commandJournal != null) {
+                commandJournal.close();
+            }
+            
             // Unregister log appender
             if (logAppenderManager != null) {
                 logAppenderManager.unregister();
@@ -0,0 +1,181 @@
+package com.smc.plugin.api;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import com.smc.plugin.metrics.LogLinearHistogram;
+import com.smc.plugin.metrics.PrometheusWriter;
+
+/**
+ * Request metrics for the HTTP API.
+ *
+ * All series are allocated up front, one per route and status class, so memory
+ * stays fixed no matter how many requests are served, and recording never locks.
+ * Latencies are recorded in microseconds and exported in seconds.
+ */
+public class ApiMetrics {
+
+    /**
+     * Reasons a request can be rejected before reaching its handler.
+     */
+    public enum Rejection {
+        UNAUTHORIZED("unauthorized"),
+        RATE_LIMITED("rate_limited"),
+        PAYLOAD_TOO_LARGE("payload_too_large");
+
+        private final String label;
+
+        Rejection(String label) {
+            this.label = label;
+        }
+    }
+
+    private static final String[] STATUS_CLASSES = {"1xx", "2xx", "3xx", "4xx", "5xx"};
+
+    // 2^27 us is a little over two minutes, longer than any command timeout
+    private static final int LATENCY_MAX_EXPONENT = 27;
+    private static final int LATENCY_EXPORT_MIN_EXPONENT = 6;
+    private static final int LATENCY_EXPORT_MAX_EXPONENT = 26;
+    private static final int SIZE_MAX_EXPONENT = 31;
+    private static final int SIZE_EXPORT_MIN_EXPONENT = 6;
+    private static final int SIZE_EXPORT_MAX_EXPONENT = 26;
+    private static final double MICROS_TO_SECONDS = 1e-6;
+
+    private final ApiRoute[] routes;
+    private final LogLinearHistogram[][] latency;
+    private final LogLinearHistogram[] encodeTime;
+    private final LogLinearHistogram[] responseSize;
+    private final LongAdder[] responseBytes;
+    private final LongAdder[] errors;
+    private final LongAdder[] rejections;
+
+    public ApiMetrics() {
+        this.routes = ApiRoute.values();
+        this.latency = new LogLinearHistogram[routes.length][STATUS_CLASSES.length];
+        this.encodeTime = new LogLinearHistogram[routes.length];
+        this.responseSize = new LogLinearHistogram[routes.length];
+        this.responseBytes = new LongAdder[routes.length];
+        this.errors = new LongAdder[routes.length];
+
+        for (int r = 0; r < routes.length; r++) {
+            for (int c = 0; c < STATUS_CLASSES.length; c++) {
+                latency[r][c] = new LogLinearHistogram(LATENCY_MAX_EXPONENT);
+            }
+            encodeTime[r] = new LogLinearHistogram(LATENCY_MAX_EXPONENT);
+            responseSize[r] = new LogLinearHistogram(SIZE_MAX_EXPONENT);
+            responseBytes[r] = new LongAdder();
+            errors[r] = new LongAdder();
+        }
+
+        this.rejections = new LongAdder[Rejection.values().length];
+        for (int i = 0; i < rejections.length; i++) {
+            rejections[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Records a completed request.
+     *
+     * @param route The resolved route
+     * @param status The HTTP status code
+     * @param elapsedNanos Time spent handling the request
+     * @param bytes Response body size, or -1 if unknown (e.g. chunked responses)
+     */
+    public void recordRequest(ApiRoute route, int status, long elapsedNanos, long bytes) {
+        int r = route.ordinal();
+        int statusClass = Math.min(Math.max(status / 100 - 1, 0), STATUS_CLASSES.length - 1);
+
+        latency[r][statusClass].record(elapsedNanos / 1000L);
+        if (bytes >= 0) {
+            responseSize[r].record(bytes);
+            responseBytes[r].add(bytes);
+        }
+        if (status >= 500) {
+            errors[r].increment();
+        }
+    }
+
+    /**
+     * Records the time spent encoding a handler result into the response body.
+     *
+     * @param route The resolved route
+     * @param elapsedNanos Encoding time
+     */
+    public void recordEncode(ApiRoute route, long elapsedNanos) {
+        encodeTime[route.ordinal()].record(elapsedNanos / 1000L);
+    }
+
+    /**
+     * Records a request rejected before reaching its handler.
+     *
+     * @param reason The rejection reason
+     */
+    public void recordRejection(Rejection reason) {
+        rejections[reason.ordinal()].increment();
+    }
+
+    /**
+     * Renders all metrics in Prometheus text format.
+     *
+     * @return The exposition text
+     */
+    public String toPrometheus() {
+        PrometheusWriter writer = new PrometheusWriter();
+
+        writer.family("smc_http_request_duration_seconds", "histogram",
+            "Time spent handling HTTP API requests.");
+        for (int r = 0; r < routes.length; r++) {
+            for (int c = 0; c < STATUS_CLASSES.length; c++) {
+                LogLinearHistogram histogram = latency[r][c];
+                if (histogram.getCount() == 0L) {
+                    continue;
+                }
+                writer.histogram("smc_http_request_duration_seconds",
+                    new String[] {"route", routes[r].getPath(), "code", STATUS_CLASSES[c]},
+                    histogram, MICROS_TO_SECONDS, LATENCY_EXPORT_MIN_EXPONENT, LATENCY_EXPORT_MAX_EXPONENT);
+            }
+        }
+
+        writer.family("smc_http_response_encode_seconds", "histogram",
+            "Time spent encoding HTTP API responses (JSON or CBOR).");
+        for (int r = 0; r < routes.length; r++) {
+            if (encodeTime[r].getCount() == 0L) {
+                continue;
+            }
+            writer.histogram("smc_http_response_encode_seconds", new String[] {"route", routes[r].getPath()},
+                encodeTime[r], MICROS_TO_SECONDS, LATENCY_EXPORT_MIN_EXPONENT, LATENCY_EXPORT_MAX_EXPONENT);
+        }
+
+        writer.family("smc_http_response_size_bytes", "histogram",
+            "Size of HTTP API response bodies.");
+        for (int r = 0; r < routes.length; r++) {
+            if (responseSize[r].getCount() == 0L) {
+                continue;
+            }
+            writer.histogram("smc_http_response_size_bytes", new String[] {"route", routes[r].getPath()},
+                responseSize[r], 1.0, SIZE_EXPORT_MIN_EXPONENT, SIZE_EXPORT_MAX_EXPONENT);
+        }
+
+        writer.family("smc_http_response_bytes_total", "counter",
+            "Total bytes of HTTP API response bodies.");
+        for (int r = 0; r < routes.length; r++) {
+            writer.sample("smc_http_response_bytes_total", new String[] {"route", routes[r].getPath()},
+                responseBytes[r].sum());
+        }
+
+        writer.family("smc_http_errors_total", "counter",
+            "HTTP API requests that failed with a server error.");
+        for (int r = 0; r < routes.length; r++) {
+            writer.sample("smc_http_errors_total", new String[] {"route", routes[r].getPath()},
+                errors[r].sum());
+        }
+
+        writer.family("smc_http_rejected_requests_total", "counter",
+            "HTTP API requests rejected before reaching a handler.");
+        for (Rejection reason : Rejection.values()) {
+            writer.sample("smc_http_rejected_requests_total", new String[] {"reason", reason.label},
+                rejections[reason.ordinal()].sum());
+        }
+
+        return writer.toString();
+    }
+}
@@ -0,0 +1,131 @@
+package com.smc.plugin.api;
+
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import fi.iki.elonen.NanoHTTPD.Response;
+
+/**
+ * Result of an API handler before it is encoded for the wire.
+ *
+ * Handlers build a plain object tree (maps, lists, strings, numbers, booleans)
+ * and leave serialization to the server, so the same result can be rendered as
+ * a standalone HTTP response or embedded in a batch response.
+ */
+class ApiResponse {
+
+    private final Response.IStatus status;
+    private final Object body;
+    private final String mimeType;
+    private final Map<String, String> headers;
+    private boolean closeConnection;
+
+    private ApiResponse(Response.IStatus status, Object body, String mimeType) {
+        this.status = status;
+        this.body = body;
+        this.mimeType = mimeType;
+        this.headers = new LinkedHashMap<>();
+    }
+
+    /**
+     * Creates a structured response.
+     *
+     * @param status HTTP status
+     * @param body Object tree to serialize, or null for an empty body
+     * @return The response
+     */
+    static ApiResponse of(Response.IStatus status, Object body) {
+        return new ApiResponse(status, body, null);
+    }
+
+    /**
+     * Creates a pre-formatted text response that is sent as is.
+     *
+     * @param status HTTP status
+     * @param mimeType Content type of the text
+     * @param text The response text
+     * @return The response
+     */
+    static ApiResponse text(Response.IStatus status, String mimeType, String text) {
+        return new ApiResponse(status, text, mimeType);
+    }
+
+    /**
+     * Creates a response whose body is sent with chunked transfer encoding as
+     * it is read from the stream.
+     *
+     * @param status HTTP status
+     * @param mimeType Content type of the stream
+     * @param data The body, closed once sent or when the client goes away
+     * @return The response
+     */
+    static ApiResponse stream(Response.IStatus status, String mimeType, InputStream data) {
+        return new ApiResponse(status, data, mimeType);
+    }
+
+    /**
+     * Creates a structured error response.
+     *
+     * @param status HTTP status
+     * @param error Short error description
+     * @param message Detailed error message
+     * @return The response
+     */
+    static ApiResponse error(Response.IStatus status, String error, String message) {
+        Map<String, String> body = new HashMap<>();
+        body.put("error", error);
+        body.put("message", message);
+        return of(status, body);
+    }
+
+    /**
+     * Adds a response header.
+     *
+     * @param name Header name
+     * @param value Header value
+     * @return This response
+     */
+    ApiResponse header(String name, String value) {
+        headers.put(name, value);
+        return this;
+    }
+
+    /**
+     * Closes the connection after this response is sent, for requests whose
+     * body was left unread and would otherwise be parsed as the next request.
+     *
+     * @return This response
+     */
+    ApiResponse closeConnection() {
+        closeConnection = true;
+        return this;
+    }
+
+    Response.IStatus getStatus() {
+        return status;
+    }
+
+    Object getBody() {
+        return body;
+    }
+
+    /**
+     * Gets the content type of a text or streamed response.
+     *
+     * @return The content type, or null if the body is structured
+     */
+    String getMimeType() {
+        return mimeType;
+    }
+
+    Map<String, String> getHeaders() {
+        return Collections.unmodifiableMap(headers);
+    }
+
+    boolean isCloseConnection() {
+        return closeConnection;
+    }
+}
@@ -0,0 +1,131 @@
+package com.smc.plugin.api;
+
+import fi.iki.elonen.NanoHTTPD.Method;
+
+/**
+ * The fixed set of routes served by the HTTP API.
+ *
+ * Resolving a request to a route once up front lets per-route state such as
+ * metrics live in plain arrays indexed by ordinal.
+ */
+public enum ApiRoute {
+    STATUS(Method.GET, "/api/status", RouteClass.READ),
+    PLUGINS(Method.GET, "/api/plugins", RouteClass.READ),
+    COMMAND(Method.POST, "/api/command", RouteClass.COMMAND),
+    COMMANDS(Method.GET, "/api/commands", RouteClass.READ),
+    LOGS(Method.GET, "/api/logs", RouteClass.READ),
+    LOG_ERRORS(Method.GET, "/api/logs/errors", RouteClass.READ),
+    LOG_WARNINGS(Method.GET, "/api/logs/warnings", RouteClass.READ),
+    PLAYERS(Method.GET, "/api/players", RouteClass.READ),
+    METRICS(Method.GET, "/api/metrics", RouteClass.READ),
+    BATCH(Method.POST, "/api/batch", RouteClass.READ),
+    COMMAND_QUEUE(Method.GET, "/api/commands/queue", RouteClass.READ),
+    COMMAND_JOBS(Method.POST, "/api/commands/jobs", RouteClass.COMMAND),
+    COMMAND_JOB(Method.GET, "/api/commands/jobs/{id}", RouteClass.READ, true),
+    COMMAND_JOB_CANCEL(Method.DELETE, "/api/commands/jobs/{id}", RouteClass.COMMAND),
+    AUDIT(Method.GET, "/api/audit", RouteClass.READ),
+    SCHEDULES(Method.GET, "/api/schedules", RouteClass.READ),
+    SCHEDULE_PUT(Method.PUT, "/api/schedules/{id}", RouteClass.COMMAND),
+    SCHEDULE_DELETE(Method.DELETE, "/api/schedules/{id}", RouteClass.COMMAND),
+    TICKS(Method.GET, "/api/ticks", RouteClass.READ),
+    HOTSPOTS(Method.GET, "/api/hotspots", RouteClass.READ),
+    LISTENER_PROFILE(Method.GET, "/api/profiler/listeners", RouteClass.READ),
+    CPU_PROFILE(Method.GET, "/api/profiler/cpu", RouteClass.COMMAND, true),
+    NOT_FOUND(null, "unmatched", RouteClass.READ);
+
+    /**
+     * Cost classes used for admission control.
+     */
+    public enum RouteClass {
+        /** Cheap reads served from HTTP threads. */
+        READ,
+        /** Requests that run work on the main server thread. */
+        COMMAND
+    }
+
+    private static final ApiRoute[] VALUES = values();
+    private static final String ID_PARAMETER = "{id}";
+
+    private final Method method;
+    private final String path;
+    private final RouteClass routeClass;
+    private final boolean blocking;
+    private final String idPrefix;
+
+    ApiRoute(Method method, String path, RouteClass routeClass) {
+        this(method, path, routeClass, false);
+    }
+
+    ApiRoute(Method method, String path, RouteClass routeClass, boolean blocking) {
+        this.method = method;
+        this.path = path;
+        this.routeClass = routeClass;
+        this.blocking = blocking;
+        // Paths ending in {id} match any single trailing path segment
+        this.idPrefix = path.endsWith("/" + ID_PARAMETER)
+            ? path.substring(0, path.length() - ID_PARAMETER.length())
+            : null;
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    /**
+     * Gets the route path, used as the route label in metrics.
+     *
+     * @return The route path
+     */
+    public String getPath() {
+        return path;
+    }
+
+    public RouteClass getRouteClass() {
+        return routeClass;
+    }
+
+    /**
+     * Checks whether a request to this route may wait for a long time, such as
+     * a long poll or a profile, instead of answering right away.
+     *
+     * @return true if the route may block
+     */
+    public boolean isBlocking() {
+        return blocking;
+    }
+
+    /**
+     * Resolves a request to its route.
+     *
+     * @param method The request method
+     * @param uri The request URI (without query string)
+     * @return The matching route, or {@link #NOT_FOUND}
+     */
+    public static ApiRoute resolve(Method method, String uri) {
+        for (ApiRoute route : VALUES) {
+            if (route.method == method && route.matches(uri)) {
+                return route;
+            }
+        }
+        return NOT_FOUND;
+    }
+
+    private boolean matches(String uri) {
+        if (idPrefix == null) {
+            return path.equals(uri);
+        }
+        return uri.length() > idPrefix.length()
+            && uri.startsWith(idPrefix)
+            && uri.indexOf('/', idPrefix.length()) < 0;
+    }
+
+    /**
+     * Extracts the {id} segment of a request URI matched by this route.
+     *
+     * @param uri The request URI
+     * @return The ID, or null if this route has no ID segment
+     */
+    public String getId(String uri) {
+        return idPrefix != null ? uri.substring(idPrefix.length()) : null;
+    }
+}
@@ -0,0 +1,142 @@
+package com.smc.plugin.api;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Encodes API response trees as CBOR (RFC 8949).
+ *
+ * Handles exactly the types handlers put into responses: maps, collections,
+ * arrays, strings, numbers, booleans and null. All items use definite lengths
+ * so decoders can size containers up front. Anything else is encoded as its
+ * string form, mirroring what Gson would emit for such values.
+ */
+public final class CborEncoder {
+
+    /**
+     * Media type registered for CBOR.
+     */
+    public static final String CONTENT_TYPE = "application/cbor";
+
+    private static final int MAJOR_UNSIGNED = 0;
+    private static final int MAJOR_NEGATIVE = 1;
+    private static final int MAJOR_BYTES = 2;
+    private static final int MAJOR_TEXT = 3;
+    private static final int MAJOR_ARRAY = 4;
+    private static final int MAJOR_MAP = 5;
+
+    private static final int SIMPLE_FALSE = 0xf4;
+    private static final int SIMPLE_TRUE = 0xf5;
+    private static final int SIMPLE_NULL = 0xf6;
+    private static final int FLOAT_32 = 0xfa;
+    private static final int FLOAT_64 = 0xfb;
+
+    private final ByteArrayOutputStream out;
+
+    private CborEncoder() {
+        this.out = new ByteArrayOutputStream(1024);
+    }
+
+    /**
+     * Encodes an object tree.
+     *
+     * @param value The value to encode
+     * @return The CBOR bytes
+     */
+    public static byte[] encode(Object value) {
+        CborEncoder encoder = new CborEncoder();
+        encoder.write(value);
+        return encoder.out.toByteArray();
+    }
+
+    private void write(Object value) {
+        if (value == null) {
+            out.write(SIMPLE_NULL);
+        } else if (value instanceof String) {
+            writeText((String) value);
+        } else if (value instanceof Boolean) {
+            out.write((Boolean) value ? SIMPLE_TRUE : SIMPLE_FALSE);
+        } else if (value instanceof Integer || value instanceof Long
+                || value instanceof Short || value instanceof Byte) {
+            writeInteger(((Number) value).longValue());
+        } else if (value instanceof Float) {
+            out.write(FLOAT_32);
+            writeBigEndian(Float.floatToIntBits((Float) value), 4);
+        } else if (value instanceof Number) {
+            double d = ((Number) value).doubleValue();
+            if (d == Math.rint(d) && !Double.isInfinite(d) && Math.abs(d) < (double) Long.MAX_VALUE) {
+                writeInteger((long) d);
+            } else {
+                out.write(FLOAT_64);
+                writeBigEndian(Double.doubleToLongBits(d), 8);
+            }
+        } else if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            writeHeader(MAJOR_MAP, map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                writeText(String.valueOf(entry.getKey()));
+                write(entry.getValue());
+            }
+        } else if (value instanceof Collection) {
+            Collection<?> collection = (Collection<?>) value;
+            writeHeader(MAJOR_ARRAY, collection.size());
+            for (Object item : collection) {
+                write(item);
+            }
+        } else if (value instanceof byte[]) {
+            byte[] bytes = (byte[]) value;
+            writeHeader(MAJOR_BYTES, bytes.length);
+            out.write(bytes, 0, bytes.length);
+        } else if (value instanceof Object[]) {
+            Object[] array = (Object[]) value;
+            writeHeader(MAJOR_ARRAY, array.length);
+            for (Object item : array) {
+                write(item);
+            }
+        } else {
+            writeText(value.toString());
+        }
+    }
+
+    private void writeText(String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        writeHeader(MAJOR_TEXT, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private void writeInteger(long value) {
+        if (value >= 0) {
+            writeHeader(MAJOR_UNSIGNED, value);
+        } else {
+            // Negative integers are encoded as -1 - n
+            writeHeader(MAJOR_NEGATIVE, -1L - value);
+        }
+    }
+
+    private void writeHeader(int majorType, long argument) {
+        int major = majorType << 5;
+        if (argument < 24) {
+            out.write(major | (int) argument);
+        } else if (argument < 0x100L) {
+            out.write(major | 24);
+            out.write((int) argument);
+        } else if (argument < 0x10000L) {
+            out.write(major | 25);
+            writeBigEndian(argument, 2);
+        } else if (argument < 0x100000000L) {
+            out.write(major | 26);
+            writeBigEndian(argument, 4);
+        } else {
+            out.write(major | 27);
+            writeBigEndian(argument, 8);
+        }
+    }
+
+    private void writeBigEndian(long value, int bytes) {
+        for (int shift = (bytes - 1) * 8; shift >= 0; shift -= 8) {
+            out.write((int) (value >>> shift) & 0xff);
+        }
+    }
+}
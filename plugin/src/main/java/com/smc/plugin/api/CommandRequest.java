@@ -0,0 +1,156 @@
+package com.smc.plugin.api;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import com.smc.plugin.command.CommandPriority;
+
+import fi.iki.elonen.NanoHTTPD.Response;
+
+/**
+ * Typed body of a POST /api/command request.
+ *
+ * Parsed token by token straight off the request stream, so only the command
+ * strings themselves are ever materialized. Unknown fields are skipped.
+ */
+final class CommandRequest {
+
+    private final List<String> commands;
+    private final boolean stopOnFailure;
+    private final CommandPriority priority;
+    private final boolean stream;
+
+    private CommandRequest(List<String> commands, boolean stopOnFailure, CommandPriority priority, boolean stream) {
+        this.commands = Collections.unmodifiableList(commands);
+        this.stopOnFailure = stopOnFailure;
+        this.priority = priority;
+        this.stream = stream;
+    }
+
+    /**
+     * Reads a command request.
+     * {@code commands} may be a single string or an array of strings;
+     * {@code stop_on_failure} is an optional boolean and {@code priority} an
+     * optional lane name (interactive, normal or bulk). {@code stream} asks for
+     * output to be sent as it is produced.
+     *
+     * @param reader Reader positioned at the start of the body
+     * @return The parsed request
+     * @throws RequestBodyException if the body is not a valid command request
+     */
+    static CommandRequest read(JsonReader reader) throws RequestBodyException {
+        List<String> commands = null;
+        boolean stopOnFailure = false;
+        String priorityName = null;
+        boolean stream = false;
+        try {
+            if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                throw new RequestBodyException(Response.Status.BAD_REQUEST, "Invalid request body",
+                    "Request body must be a JSON object");
+            }
+            
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if ("commands".equals(name) && reader.peek() != JsonToken.NULL) {
+                    commands = readCommands(reader);
+                } else if ("stop_on_failure".equals(name) && reader.peek() == JsonToken.BOOLEAN) {
+                    stopOnFailure = reader.nextBoolean();
+                } else if ("priority".equals(name) && reader.peek() == JsonToken.STRING) {
+                    priorityName = reader.nextString();
+                } else if ("stream".equals(name) && reader.peek() == JsonToken.BOOLEAN) {
+                    stream = reader.nextBoolean();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } catch (IOException | IllegalStateException e) {
+            // MalformedJsonException and EOFException are IOExceptions
+            throw new RequestBodyException(Response.Status.BAD_REQUEST, "Invalid JSON", e.getMessage());
+        }
+        
+        if (commands == null) {
+            throw new RequestBodyException(Response.Status.BAD_REQUEST, "Missing 'commands' field",
+                "Request body must contain 'commands' field (string or array)");
+        }
+        CommandPriority priority;
+        try {
+            priority = CommandPriority.parse(priorityName);
+        } catch (IllegalArgumentException e) {
+            throw new RequestBodyException(Response.Status.BAD_REQUEST, "Invalid 'priority' field", e.getMessage());
+        }
+        return new CommandRequest(commands, stopOnFailure, priority, stream);
+    }
+
+    /**
+     * Reads a {@code commands} value: a single string or an array of strings.
+     */
+    static List<String> readCommands(JsonReader reader) throws IOException, RequestBodyException {
+        JsonToken token = reader.peek();
+        if (token == JsonToken.STRING) {
+            List<String> single = new ArrayList<>(1);
+            single.add(reader.nextString());
+            return single;
+        }
+        if (token != JsonToken.BEGIN_ARRAY) {
+            throw invalid("'commands' must be a string or array of strings");
+        }
+        
+        List<String> commands = new ArrayList<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (reader.peek() != JsonToken.STRING) {
+                throw invalid("'commands' must be a string or array of strings");
+            }
+            commands.add(reader.nextString());
+        }
+        reader.endArray();
+        return commands;
+    }
+
+    private static RequestBodyException invalid(String message) {
+        return new RequestBodyException(Response.Status.BAD_REQUEST, "Invalid 'commands' field type", message);
+    }
+
+    /**
+     * Gets the commands to run, in request order.
+     *
+     * @return The commands
+     */
+    List<String> getCommands() {
+        return commands;
+    }
+
+    /**
+     * Checks whether the rest of the batch is skipped once a command fails.
+     *
+     * @return true for stop-on-failure semantics
+     */
+    boolean isStopOnFailure() {
+        return stopOnFailure;
+    }
+
+    /**
+     * Gets the scheduling lane requested for the commands.
+     *
+     * @return The priority, {@link CommandPriority#NORMAL} if none was given
+     */
+    CommandPriority getPriority() {
+        return priority;
+    }
+
+    /**
+     * Checks whether output should be streamed as NDJSON instead of returned at the end.
+     *
+     * @return true for a streamed response
+     */
+    boolean isStream() {
+        return stream;
+    }
+}
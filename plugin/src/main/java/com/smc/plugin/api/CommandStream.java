@@ -0,0 +1,248 @@
+package com.smc.plugin.api;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.gson.Gson;
+import com.smc.plugin.command.CommandExecutor;
+import com.smc.plugin.command.CommandOutputListener;
+import com.smc.plugin.command.CommandScheduler;
+
+/**
+ * Streams the output of a command batch as newline-delimited JSON.
+ *
+ * The main thread hands over each output line and result without blocking,
+ * and the HTTP thread sending the response reads the encoded records as they
+ * arrive, so the first lines reach the client while the command is still
+ * running. Output lines are dropped and counted while the client reads too
+ * slowly for the buffer limit; results are always delivered. Closing the
+ * stream, which NanoHTTPD does when the client goes away, cancels the commands
+ * that have not started.
+ *
+ * Records, one JSON object per line:
+ * {@code output} (index, line), {@code result} (index plus the usual result
+ * fields), {@code dropped} (lines) and a final {@code done} (timed_out).
+ */
+final class CommandStream extends InputStream implements CommandOutputListener {
+
+    static final String CONTENT_TYPE = "application/x-ndjson";
+
+    private static final long POLL_MILLIS = 100L;
+    private static final Record WAKE_UP = new Record("", -1);
+    // Compact encoding; every record must stay on a single line
+    private static final Gson GSON = new Gson();
+
+    private final List<String> commands;
+    private final long maxBufferedChars;
+    private final long deadlineNanos;
+    private final int timeoutSeconds;
+    private final BlockingQueue<Record> records;
+    private final AtomicLong bufferedChars;
+    private final AtomicLong droppedLines;
+    private volatile CommandScheduler.Batch batch;
+    private volatile boolean closed;
+    // HTTP thread only
+    private final boolean[] reported;
+    private byte[] current;
+    private int position;
+    private boolean finished;
+
+    /**
+     * Creates a stream for a batch that is about to be submitted.
+     *
+     * @param commands The commands of the batch
+     * @param maxBufferedChars Most output characters held for a slow client
+     * @param timeoutSeconds Time after which commands that have not started are cancelled
+     */
+    CommandStream(List<String> commands, long maxBufferedChars, int timeoutSeconds) {
+        this.commands = commands;
+        this.maxBufferedChars = maxBufferedChars;
+        this.timeoutSeconds = timeoutSeconds;
+        this.deadlineNanos = System.nanoTime() + TimeUnit.SECONDS.toNanos(timeoutSeconds);
+        this.records = new LinkedBlockingQueue<>();
+        this.bufferedChars = new AtomicLong();
+        this.droppedLines = new AtomicLong();
+        this.reported = new boolean[commands.size()];
+    }
+
+    /**
+     * Connects the stream to its submitted batch. Must be called before the
+     * response is sent.
+     *
+     * @param batch The batch
+     */
+    void attach(CommandScheduler.Batch batch) {
+        this.batch = batch;
+        batch.getResults().whenComplete((results, error) -> records.offer(WAKE_UP));
+    }
+
+    @Override
+    public void onOutput(int index, String line) {
+        if (closed) {
+            return;
+        }
+        if (bufferedChars.addAndGet(line.length()) > maxBufferedChars) {
+            bufferedChars.addAndGet(-line.length());
+            droppedLines.incrementAndGet();
+            return;
+        }
+
+        Map<String, Object> record = new HashMap<>();
+        record.put("type", "output");
+        record.put("index", index);
+        record.put("line", line);
+        records.offer(new Record(GSON.toJson(record), -1, line.length()));
+    }
+
+    @Override
+    public void onResult(int index, CommandExecutor.CommandResult result) {
+        if (!closed) {
+            records.offer(new Record(resultRecord(index, result), index));
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        return read(single, 0, 1) < 0 ? -1 : single[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+
+        int written = 0;
+        while (written < length) {
+            if (current == null || position >= current.length) {
+                // Block for the first record only, then send whatever else is ready
+                String next = written == 0 ? nextRecord(true) : nextRecord(false);
+                if (next == null) {
+                    break;
+                }
+                current = (next + "\n").getBytes(StandardCharsets.UTF_8);
+                position = 0;
+            }
+            int n = Math.min(length - written, current.length - position);
+            System.arraycopy(current, position, buffer, offset + written, n);
+            position += n;
+            written += n;
+        }
+        return written == 0 ? -1 : written;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        CommandScheduler.Batch attached = batch;
+        if (attached != null && !attached.getResults().isDone()) {
+            attached.cancel("Cancelled: client disconnected");
+        }
+        records.clear();
+    }
+
+    /**
+     * Gets the next record to send.
+     *
+     * @param block Whether to wait for one
+     * @return The encoded record, or null at the end of the stream or if none is ready
+     */
+    private String nextRecord(boolean block) throws IOException {
+        while (!finished) {
+            long dropped = droppedLines.getAndSet(0);
+            if (dropped > 0) {
+                Map<String, Object> record = new HashMap<>();
+                record.put("type", "dropped");
+                record.put("lines", dropped);
+                return GSON.toJson(record);
+            }
+
+            Record record = records.poll();
+            if (record == null) {
+                if (batch.getResults().isDone()) {
+                    // Every record queued before completion has been sent
+                    return finish(batch.getResults().join(), false);
+                }
+                if (System.nanoTime() - deadlineNanos >= 0) {
+                    String error = "Command execution timed out after " + timeoutSeconds + " seconds";
+                    batch.cancel("Cancelled: " + error);
+                    return finish(batch.snapshot(error + " while running"), true);
+                }
+                if (!block) {
+                    return null;
+                }
+                try {
+                    record = records.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while waiting for command output", e);
+                }
+                if (record == null) {
+                    continue;
+                }
+            }
+
+            if (record == WAKE_UP) {
+                continue;
+            }
+            bufferedChars.addAndGet(-record.outputChars);
+            if (record.resultIndex >= 0) {
+                reported[record.resultIndex] = true;
+            }
+            return record.json;
+        }
+        return null;
+    }
+
+    /**
+     * Encodes the results not yet sent, followed by the closing record.
+     * Rejected, skipped and cancelled commands are only reported here.
+     */
+    private String finish(List<CommandExecutor.CommandResult> results, boolean timedOut) {
+        finished = true;
+        StringBuilder tail = new StringBuilder();
+        for (int i = 0; i < results.size(); i++) {
+            if (!reported[i]) {
+                tail.append(resultRecord(i, results.get(i))).append('\n');
+            }
+        }
+
+        Map<String, Object> done = new HashMap<>();
+        done.put("type", "done");
+        done.put("command_count", commands.size());
+        done.put("timed_out", timedOut);
+        return tail.append(GSON.toJson(done)).toString();
+    }
+
+    private String resultRecord(int index, CommandExecutor.CommandResult result) {
+        Map<String, Object> record = HttpApiServer.commandResultMap(result);
+        record.put("type", "result");
+        record.put("index", index);
+        return GSON.toJson(record);
+    }
+
+    private static final class Record {
+        private final String json;
+        private final int resultIndex;
+        private final int outputChars;
+
+        private Record(String json, int resultIndex) {
+            this(json, resultIndex, 0);
+        }
+
+        private Record(String json, int resultIndex, int outputChars) {
+            this.json = json;
+            this.resultIndex = resultIndex;
+            this.outputChars = outputChars;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.smc.plugin.api;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.smc.plugin.logging.LogCollector;
+
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.server.PluginDisableEvent;
+import org.bukkit.event.server.PluginEnableEvent;
+
+/**
+ * Tracks generation counters for server state exposed by the HTTP API.
+ *
+ * Each counter advances whenever the state behind an endpoint may have changed,
+ * so the API can derive ETags from the counters instead of rebuilding and
+ * hashing the response body. Counters only ever move forward; a client whose
+ * tag matches the current generation is guaranteed to hold an up-to-date copy.
+ */
+public class GenerationTracker implements Listener {
+
+    private final String bootId;
+    private final AtomicLong pluginGeneration;
+    private final AtomicLong commandGeneration;
+    private final AtomicLong playerGeneration;
+
+    /**
+     * Creates a new generation tracker.
+     * The boot id makes tags from a previous server run never match again.
+     */
+    public GenerationTracker() {
+        this.bootId = Long.toString(System.currentTimeMillis(), 36);
+        this.pluginGeneration = new AtomicLong();
+        this.commandGeneration = new AtomicLong();
+        this.playerGeneration = new AtomicLong();
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPluginEnable(PluginEnableEvent event) {
+        pluginGeneration.incrementAndGet();
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPluginDisable(PluginDisableEvent event) {
+        pluginGeneration.incrementAndGet();
+    }
+
+    /**
+     * Marks the command index as changed.
+     * Called by the command registry whenever a rebuild produced different
+     * contents, so the tag always describes what the registry serves.
+     */
+    public void markCommandsChanged() {
+        commandGeneration.incrementAndGet();
+    }
+
+    /**
+     * Marks the player snapshot as changed.
+     * Called by the player snapshot cache whenever a rebuild produced different
+     * contents.
+     */
+    public void markPlayersChanged() {
+        playerGeneration.incrementAndGet();
+    }
+
+    public long getPluginGeneration() {
+        return pluginGeneration.get();
+    }
+
+    public long getCommandGeneration() {
+        return commandGeneration.get();
+    }
+
+    /**
+     * Gets the ETag for /api/status.
+     *
+     * @param tick The coarse tick figures included in the status
+     * @return Quoted entity tag
+     */
+    public String statusTag(long[] tick) {
+        StringBuilder generation = new StringBuilder("s").append(pluginGeneration.get());
+        for (long value : tick) {
+            generation.append('.').append(value);
+        }
+        return tag(generation.toString());
+    }
+
+    /**
+     * Gets the ETag for /api/ticks.
+     *
+     * @param tickGeneration Generation of the tick summary
+     * @return Quoted entity tag
+     */
+    public String ticksTag(long tickGeneration) {
+        return tag("t" + tickGeneration);
+    }
+
+    /**
+     * Gets the ETag for /api/hotspots.
+     *
+     * @param scan Number of the last completed hotspot scan
+     * @return Quoted entity tag
+     */
+    public String hotspotsTag(long scan) {
+        return tag("h" + scan);
+    }
+
+    /**
+     * Gets the ETag for /api/plugins.
+     *
+     * @return Quoted entity tag
+     */
+    public String pluginsTag() {
+        return tag("p" + pluginGeneration.get());
+    }
+
+    /**
+     * Gets the ETag for /api/commands.
+     *
+     * @return Quoted entity tag
+     */
+    public String commandsTag() {
+        return tag("c" + commandGeneration.get());
+    }
+
+    /**
+     * Gets the ETag for /api/players.
+     *
+     * @return Quoted entity tag
+     */
+    public String playersTag() {
+        return tag("u" + playerGeneration.get());
+    }
+
+    /**
+     * Gets the ETag for a log endpoint.
+     *
+     * @param stream The log stream the endpoint serves
+     * @param latestSequence Sequence number of the newest log entry in the stream
+     * @param removals Removal counter of the stream
+     * @return Quoted entity tag
+     */
+    public String logsTag(LogCollector.Stream stream, long latestSequence, long removals) {
+        return tag("l" + stream.ordinal() + "." + latestSequence + "." + removals);
+    }
+
+    private String tag(String generation) {
+        return "\"" + bootId + "-" + generation + "\"";
+    }
+}
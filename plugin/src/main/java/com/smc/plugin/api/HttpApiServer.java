@@ -1,30 +1,78 @@
 package com.smc.plugin.api;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 
 import org.bukkit.Bukkit;
-import org.bukkit.entity.Player;
 import org.bukkit.plugin.Plugin;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
 import com.smc.plugin.SMCPlugin;
+import com.smc.plugin.audit.CommandJournal;
 import com.smc.plugin.command.CommandExecutor;
+import com.smc.plugin.command.CommandJobManager;
+import com.smc.plugin.command.CommandLatencyStats;
+import com.smc.plugin.command.CommandPriority;
+import com.smc.plugin.command.CommandRegistry;
+import com.smc.plugin.command.CommandSchedule;
+import com.smc.plugin.command.CommandScheduleManager;
+import com.smc.plugin.command.CommandScheduler;
+import com.smc.plugin.health.HotspotSampler;
+import com.smc.plugin.health.TickSampler;
 import com.smc.plugin.logging.LogCollector;
+import com.smc.plugin.metrics.LogLinearHistogram;
+import com.smc.plugin.metrics.PrometheusWriter;
+import com.smc.plugin.player.PlayerSnapshotCache;
+import com.smc.plugin.profiler.ListenerProfiler;
+import com.smc.plugin.profiler.StackSampler;
 
 import fi.iki.elonen.NanoHTTPD;
 
 public class HttpApiServer extends NanoHTTPD {
     
+    private static final int MAX_BATCH_SIZE = 20;
+    private static final int BATCH_THREADS = 4;
+    
+    private static final List<String> PLUGIN_FIELDS = ListQuery.fields("name", "version", "enabled", "authors");
+    private static final List<String> PLAYER_FIELDS = ListQuery.fields("name", "uuid", "ping", "world", "location");
+    private static final List<String> COMMAND_FIELDS = ListQuery.fields(
+        "name", "description", "usage", "aliases", "permission", "plugin");
+    private static final List<String> LOG_FIELDS = ListQuery.fields("seq", "timestamp", "level", "logger", "message");
+    private static final List<String> LEVEL_LOG_FIELDS = ListQuery.fields("seq", "timestamp", "plugin", "message");
+    private static final List<String> HOTSPOT_FIELDS = ListQuery.fields(
+        "world", "x", "z", "entities", "tile_entities", "top_entity");
+    private static final List<String> LISTENER_FIELDS = ListQuery.fields(
+        "plugin", "event", "calls", "total_ms", "mean_us", "max_ms");
+    private static final List<String> AUDIT_FIELDS = ListQuery.fields(
+        "id", "timestamp", "client", "priority", "command", "result");
+    
     private final SMCPlugin plugin;
     private final Gson gson;
+    private final RateLimiter rateLimiter;
+    private final ExecutorService batchExecutor;
     private boolean running;
     
     public HttpApiServer(SMCPlugin plugin, String host, int port) {
@@ -33,6 +81,13 @@ public class HttpApiServer extends NanoHTTPD {
         this.gson = new GsonBuilder()
                 .setPrettyPrinting()
                 .create();
+        this.rateLimiter = new RateLimiter(plugin.getConfigManager());
+        AtomicInteger threadCount = new AtomicInteger();
+        this.batchExecutor = Executors.newFixedThreadPool(BATCH_THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "SMC-Batch-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
         this.running = false;
     }
     
@@ -61,6 +116,7 @@ public class HttpApiServer extends NanoHTTPD {
         try {
             plugin.getLogger().info("Stopping HTTP API server...");
             stop();
+            batchExecutor.shutdownNow();
             running = false;
             plugin.getLogger().info("HTTP API server stopped");
         } catch (Exception e) {
@@ -74,54 +130,315 @@ public class HttpApiServer extends NanoHTTPD {
     
     @Override
     public Response serve(IHTTPSession session) {
+        long startNanos = System.nanoTime();
         String uri = session.getUri();
         Method method = session.getMethod();
+        ApiRoute route = ApiRoute.resolve(method, uri);
+        ApiMetrics metrics = plugin.getApiMetrics();
+        
+        // Kept below INFO so polling the log endpoints does not add log entries of its own
+        plugin.getLogger().fine(String.format("[HTTP] %s %s", method, uri));
         
-        plugin.getLogger().info(String.format("[HTTP] %s %s", method, uri));
+        ApiResponse apiResponse;
+        String client = authenticate(session);
+        if (client == null) {
+            metrics.recordRejection(ApiMetrics.Rejection.UNAUTHORIZED);
+            apiResponse = ApiResponse.error(Response.Status.UNAUTHORIZED, "Unauthorized", "Invalid or missing API key");
+        } else {
+            apiResponse = admitAndDispatch(session, route, client);
+        }
         
+        long encodeStart = System.nanoTime();
+        Response response = render(session, apiResponse);
+        metrics.recordEncode(route, System.nanoTime() - encodeStart);
+        metrics.recordRequest(route, response.getStatus().getRequestStatus(),
+            System.nanoTime() - startNanos, responseSize(response));
+        return response;
+    }
+    
+    /**
+     * Checks the API key, sent either as X-API-Key or as a bearer token
+     * (the form Prometheus scrape configs support).
+     * 
+     * @return The name of the authenticated client, or null if the key is invalid
+     */
+    private String authenticate(IHTTPSession session) {
         String apiKey = session.getHeaders().get("x-api-key");
-        String expectedKey = plugin.getConfigManager().getApiKey();
+        if (apiKey == null) {
+            String authorization = session.getHeaders().get("authorization");
+            if (authorization != null && authorization.regionMatches(true, 0, "Bearer ", 0, 7)) {
+                apiKey = authorization.substring(7).trim();
+            }
+        }
         
-        if (apiKey == null || !apiKey.equals(expectedKey)) {
-            Map<String, String> error = new HashMap<>();
-            error.put("error", "Unauthorized");
-            error.put("message", "Invalid or missing API key");
-            return newFixedLengthResponse(Response.Status.UNAUTHORIZED, "application/json", gson.toJson(error));
+        return plugin.getConfigManager().getApiKeyName(apiKey);
+    }
+    
+    /**
+     * Applies admission control, then dispatches the request.
+     * Over-limit requests are rejected before the body is read or any
+     * main-thread work is scheduled.
+     */
+    private ApiResponse admitAndDispatch(IHTTPSession session, ApiRoute route, String client) {
+        long retryAfterNanos = rateLimiter.tryAcquire(client, route.getRouteClass());
+        if (retryAfterNanos > 0) {
+            plugin.getApiMetrics().recordRejection(ApiMetrics.Rejection.RATE_LIMITED);
+            long retryAfter = RateLimiter.retryAfterSeconds(retryAfterNanos);
+            Map<String, Object> error = new HashMap<>();
+            error.put("error", "Too Many Requests");
+            error.put("message", "Rate limit exceeded for " + route.getRouteClass().name().toLowerCase() + " requests");
+            error.put("retry_after", retryAfter);
+            return ApiResponse.of(Response.Status.TOO_MANY_REQUESTS, error)
+                .header("Retry-After", Long.toString(retryAfter));
         }
         
+        return dispatch(session, route, client);
+    }
+    
+    private ApiResponse dispatch(IHTTPSession session, ApiRoute route, String client) {
         try {
-            if (uri.equals("/api/status") && method == Method.GET) {
-                return handleStatus();
-            } else if (uri.equals("/api/plugins") && method == Method.GET) {
-                return handlePlugins();
-            } else if (uri.equals("/api/command") && method == Method.POST) {
-                return handleCommand(session);
-            } else if (uri.equals("/api/logs") && method == Method.GET) {
-                return handleLogs(session);
-            } else if (uri.equals("/api/players") && method == Method.GET) {
-                return handlePlayers();
-            } else if (uri.equals("/api/logs/errors") && method == Method.GET) {
-                return handleErrors(session);
-            } else if (uri.equals("/api/logs/warnings") && method == Method.GET) {
-                return handleWarnings(session);
-            } else if (uri.equals("/api/commands") && method == Method.GET) {
-                return handleCommands();
-            } else {
-                Map<String, String> error = new HashMap<>();
-                error.put("error", "Not Found");
-                error.put("message", "Endpoint not found");
-                return newFixedLengthResponse(Response.Status.NOT_FOUND, "application/json", gson.toJson(error));
+            GenerationTracker generations = plugin.getGenerationTracker();
+            
+            switch (route) {
+                case STATUS:
+                    long[] tick = statusTick();
+                    return conditional(session, generations.statusTag(tick), () -> handleStatus(tick));
+                case PLUGINS:
+                    return conditional(session, generations.pluginsTag(), () -> handlePlugins(session));
+                case COMMAND:
+                    return handleCommand(session, client);
+                case COMMANDS:
+                    return conditional(session, generations.commandsTag(), () -> handleCommands(session));
+                case LOGS:
+                    return conditional(session, logsTag(LogCollector.Stream.ALL), () -> handleLogs(session));
+                case LOG_ERRORS:
+                    return conditional(session, logsTag(LogCollector.Stream.ERRORS), () -> handleErrors(session));
+                case LOG_WARNINGS:
+                    return conditional(session, logsTag(LogCollector.Stream.WARNINGS),
+                        () -> handleWarnings(session));
+                case PLAYERS:
+                    return conditional(session, generations.playersTag(), () -> handlePlayers(session));
+                case METRICS:
+                    return handleMetrics();
+                case BATCH:
+                    return handleBatch(session, client);
+                case COMMAND_QUEUE:
+                    return handleCommandQueue();
+                case COMMAND_JOBS:
+                    return handleSubmitJob(session, client);
+                case COMMAND_JOB:
+                    return handleJob(session, route, client);
+                case COMMAND_JOB_CANCEL:
+                    return handleCancelJob(session, route, client);
+                case AUDIT:
+                    return handleAudit(session);
+                case SCHEDULES:
+                    return handleSchedules();
+                case SCHEDULE_PUT:
+                    return handlePutSchedule(session, route);
+                case SCHEDULE_DELETE:
+                    return handleDeleteSchedule(session, route);
+                case TICKS:
+                    return conditional(session, generations.ticksTag(plugin.getTickSampler().getGeneration()),
+                        this::handleTicks);
+                case HOTSPOTS:
+                    return conditional(session, generations.hotspotsTag(hotspotScan()), () -> handleHotspots(session));
+                case LISTENER_PROFILE:
+                    return handleListenerProfile(session);
+                case CPU_PROFILE:
+                    return handleCpuProfile(session);
+                default:
+                    return ApiResponse.error(Response.Status.NOT_FOUND, "Not Found", "Endpoint not found");
             }
         } catch (Exception e) {
             plugin.getLogger().log(Level.SEVERE, "Error handling request", e);
-            Map<String, String> error = new HashMap<>();
-            error.put("error", "Internal server error");
-            error.put("message", e.getMessage());
-            return newFixedLengthResponse(Response.Status.INTERNAL_ERROR, "application/json", gson.toJson(error));
+            return ApiResponse.error(Response.Status.INTERNAL_ERROR, "Internal server error", e.getMessage());
+        }
+    }
+    
+    /**
+     * Encodes a handler result as an HTTP response, in CBOR or JSON depending
+     * on the client's Accept header.
+     */
+    private Response render(IHTTPSession session, ApiResponse apiResponse) {
+        Object body = apiResponse.getBody();
+        Response response;
+        if (body instanceof InputStream) {
+            response = newChunkedResponse(apiResponse.getStatus(), apiResponse.getMimeType(), (InputStream) body);
+        } else if (apiResponse.getMimeType() != null) {
+            response = newFixedLengthResponse(apiResponse.getStatus(), apiResponse.getMimeType(), (String) body);
+        } else if (prefersCbor(session.getHeaders().get("accept"))) {
+            byte[] bytes = body != null ? CborEncoder.encode(body) : new byte[0];
+            response = newFixedLengthResponse(apiResponse.getStatus(), CborEncoder.CONTENT_TYPE,
+                new ByteArrayInputStream(bytes), bytes.length);
+            response.addHeader("Vary", "Accept");
+        } else if (body == null) {
+            response = newFixedLengthResponse(apiResponse.getStatus(), "application/json", "");
+            response.addHeader("Vary", "Accept");
+        } else {
+            response = newFixedLengthResponse(apiResponse.getStatus(), "application/json", gson.toJson(body));
+            response.addHeader("Vary", "Accept");
+        }
+        
+        for (Map.Entry<String, String> header : apiResponse.getHeaders().entrySet()) {
+            response.addHeader(header.getKey(), header.getValue());
+        }
+        if (apiResponse.isCloseConnection()) {
+            response.closeConnection(true);
+        }
+        return response;
+    }
+    
+    /**
+     * Checks whether the Accept header ranks CBOR above JSON.
+     * JSON wins ties and wildcards, so clients that do not ask for CBOR
+     * keep getting JSON.
+     */
+    private static boolean prefersCbor(String accept) {
+        if (accept == null || !accept.contains("cbor")) {
+            return false;
+        }
+        
+        double cborQuality = 0.0;
+        double jsonQuality = 0.0;
+        for (String range : accept.split(",")) {
+            String[] parts = range.split(";");
+            String type = parts[0].trim().toLowerCase();
+            double quality = 1.0;
+            for (int i = 1; i < parts.length; i++) {
+                String param = parts[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        quality = Double.parseDouble(param.substring(2));
+                    } catch (NumberFormatException e) {
+                        quality = 0.0;
+                    }
+                }
+            }
+            
+            if (type.equals(CborEncoder.CONTENT_TYPE)) {
+                cborQuality = Math.max(cborQuality, quality);
+            } else if (type.equals("application/json") || type.equals("application/*") || type.equals("*/*")) {
+                jsonQuality = Math.max(jsonQuality, quality);
+            }
+        }
+        return cborQuality > jsonQuality;
+    }
+    
+    /**
+     * Gets the size of a fixed-length response body, or -1 if it is streamed.
+     */
+    private static long responseSize(Response response) {
+        InputStream data = response.getData();
+        if (data instanceof ByteArrayInputStream) {
+            return ((ByteArrayInputStream) data).available();
+        }
+        return data == null ? 0L : -1L;
+    }
+    
+    /**
+     * Serves a cacheable GET endpoint.
+     * The tag is taken before the body is built, so a concurrent change can only
+     * make the tag older than the body, never newer; the client then simply
+     * revalidates once more on its next poll.
+     */
+    private ApiResponse conditional(IHTTPSession session, String generationTag, Supplier<ApiResponse> handler) {
+        String etag = representationTag(session, generationTag);
+        if (matchesEtag(session.getHeaders().get("if-none-match"), etag)) {
+            return ApiResponse.of(Response.Status.NOT_MODIFIED, null).header("ETag", etag);
+        }
+        
+        ApiResponse response = handler.get();
+        if (response.getStatus() == Response.Status.OK) {
+            response.header("ETag", etag);
+            response.header("Cache-Control", "no-cache");
+        }
+        return response;
+    }
+    
+    /**
+     * Gives the CBOR encoding of a resource a validator of its own, since
+     * JSON and CBOR bodies are different representations behind Vary: Accept.
+     */
+    private static String representationTag(IHTTPSession session, String etag) {
+        if (!prefersCbor(session.getHeaders().get("accept"))) {
+            return etag;
         }
+        return etag.substring(0, etag.length() - 1) + "-cbor\"";
     }
     
-    private Response handleStatus() {
+    private boolean matchesEtag(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.equals("*")) {
+                return true;
+            }
+            // If-None-Match uses weak comparison
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Opens the request body for streaming, enforcing the configured size limit.
+     */
+    private JsonReader openBody(IHTTPSession session) throws RequestBodyException {
+        try {
+            return RequestBody.openJson(session, plugin.getConfigManager().getMaxBodyBytes());
+        } catch (RequestBodyException e) {
+            if (e.getStatus() == Response.Status.PAYLOAD_TOO_LARGE) {
+                plugin.getApiMetrics().recordRejection(ApiMetrics.Rejection.PAYLOAD_TOO_LARGE);
+            }
+            throw e;
+        }
+    }
+    
+    private String logsTag(LogCollector.Stream stream) {
+        LogCollector collector = plugin.getLogCollector();
+        return plugin.getGenerationTracker().logsTag(stream, collector.getLatestSequence(stream),
+            collector.getRemovalCount(stream));
+    }
+    
+    /**
+     * Adds the cursor of the following page, if there is one.
+     */
+    private static void putNextCursor(Map<String, Object> response, boolean more, String lastSortKey) {
+        if (more && lastSortKey != null) {
+            response.put("next_cursor", ListQuery.cursor(lastSortKey));
+        }
+    }
+    
+    private Long parseSinceSeq(Map<String, String> params) {
+        String sinceSeqStr = params.get("since_seq");
+        return sinceSeqStr != null ? Long.valueOf(sinceSeqStr) : null;
+    }
+    
+    /**
+     * Gets the one-minute tick figures shown in /api/status: TPS in tenths and
+     * MSPT p50, p95 and max in whole milliseconds. They are this coarse so the
+     * status ETag, which is built from them, only moves when tick health does;
+     * /api/ticks has the exact figures.
+     */
+    private long[] statusTick() {
+        TickSampler.WindowStats lastMinute = plugin.getTickSampler().getSummary().get(TickSampler.Window.ONE_MINUTE);
+        return new long[] {
+            Math.round(lastMinute.getTps() * 10.0),
+            Math.round(lastMinute.getP50()),
+            Math.round(lastMinute.getP95()),
+            Math.round(lastMinute.getMax())
+        };
+    }
+    
+    private ApiResponse handleStatus(long[] statusTick) {
         Map<String, Object> response = new HashMap<>();
         
         try {
@@ -131,108 +448,540 @@ public class HttpApiServer extends NanoHTTPD {
             response.put("minecraft_version", Bukkit.getBukkitVersion());
             response.put("plugin_version", plugin.getDescription().getVersion());
             
-            return newFixedLengthResponse(Response.Status.OK, "application/json", gson.toJson(response));
+            Map<String, Object> tick = new LinkedHashMap<>();
+            tick.put("tps_1m", statusTick[0] / 10.0);
+            tick.put("mspt_p50", statusTick[1]);
+            tick.put("mspt_p95", statusTick[2]);
+            tick.put("mspt_max", statusTick[3]);
+            response.put("tick", tick);
+            
+            return ApiResponse.of(Response.Status.OK, response);
         } catch (Exception e) {
             plugin.getLogger().log(Level.SEVERE, "Error in /api/status", e);
             response.put("connected", false);
             response.put("online", false);
             response.put("error", e.getMessage());
-            return newFixedLengthResponse(Response.Status.INTERNAL_ERROR, "application/json", gson.toJson(response));
+            return ApiResponse.of(Response.Status.INTERNAL_ERROR, response);
+        }
+    }
+    
+    private ApiResponse handleTicks() {
+        TickSampler sampler = plugin.getTickSampler();
+        TickSampler.Summary summary = sampler.getSummary();
+        
+        Map<String, Object> tps = new LinkedHashMap<>();
+        Map<String, Object> mspt = new LinkedHashMap<>();
+        for (TickSampler.Window window : TickSampler.Window.values()) {
+            TickSampler.WindowStats stats = summary.get(window);
+            tps.put(window.getLabel(), stats.getTps());
+            
+            Map<String, Object> durations = new HashMap<>();
+            durations.put("ticks", stats.getTicks());
+            durations.put("p50", stats.getP50());
+            durations.put("p95", stats.getP95());
+            durations.put("p99", stats.getP99());
+            durations.put("max", stats.getMax());
+            durations.put("mean", stats.getMean());
+            mspt.put(window.getLabel(), durations);
         }
+        
+        Map<String, Object> response = new HashMap<>();
+        response.put("source", sampler.getSource());
+        response.put("ticks", summary.getTicks());
+        response.put("tps", tps);
+        response.put("mspt", mspt);
+        return ApiResponse.of(Response.Status.OK, response);
+    }
+    
+    /**
+     * Gets the number of the last completed hotspot scan, or 0 if there is none.
+     */
+    private long hotspotScan() {
+        HotspotSampler sampler = plugin.getHotspotSampler();
+        HotspotSampler.Snapshot snapshot = sampler != null ? sampler.getSnapshot() : null;
+        return snapshot != null ? snapshot.getGeneration() : 0L;
     }
     
-    private Response handlePlugins() {
+    private ApiResponse handleHotspots(IHTTPSession session) {
+        HotspotSampler sampler = plugin.getHotspotSampler();
+        if (sampler == null) {
+            return ApiResponse.error(Response.Status.SERVICE_UNAVAILABLE, "Hotspots unavailable",
+                "Hotspot scanning is disabled");
+        }
+        HotspotSampler.Snapshot snapshot = sampler.getSnapshot();
+        if (snapshot == null) {
+            return ApiResponse.error(Response.Status.SERVICE_UNAVAILABLE, "Hotspots unavailable",
+                "The first hotspot scan has not completed yet");
+        }
+        
         try {
-            Plugin[] plugins = Bukkit.getPluginManager().getPlugins();
-            List<Map<String, Object>> pluginList = new ArrayList<>();
+            Map<String, String> params = session.getParms();
+            ListQuery query = ListQuery.parse(params, 10, HOTSPOT_FIELDS);
+            String sort = params.get("sort");
+            List<HotspotSampler.ChunkStats> ranked;
+            if (sort == null || sort.equals("entities")) {
+                ranked = snapshot.getByEntities();
+            } else if (sort.equals("tile_entities")) {
+                ranked = snapshot.getByTileEntities();
+            } else {
+                throw new IllegalArgumentException("'sort' must be 'entities' or 'tile_entities'");
+            }
+            String worldFilter = params.get("world");
             
+            List<Map<String, Object>> worlds = new ArrayList<>();
+            for (HotspotSampler.WorldStats world : snapshot.getWorlds()) {
+                if (worldFilter != null && !worldFilter.equals(world.getName())) {
+                    continue;
+                }
+                Map<String, Object> item = new HashMap<>();
+                item.put("name", world.getName());
+                item.put("loaded_chunks", world.getLoadedChunks());
+                item.put("entities", world.getEntities());
+                item.put("tile_entities", world.getTileEntities());
+                item.put("entity_types", world.getEntityTypes());
+                worlds.add(item);
+            }
+            
+            List<Map<String, Object>> chunks = new ArrayList<>();
+            for (HotspotSampler.ChunkStats chunk : ranked) {
+                if (chunks.size() == query.getLimit()) {
+                    break;
+                }
+                if (worldFilter != null && !worldFilter.equals(chunk.getWorld())) {
+                    continue;
+                }
+                Map<String, Object> item = new HashMap<>();
+                if (query.includes("world")) {
+                    item.put("world", chunk.getWorld());
+                }
+                if (query.includes("x")) {
+                    item.put("x", chunk.getX());
+                }
+                if (query.includes("z")) {
+                    item.put("z", chunk.getZ());
+                }
+                if (query.includes("entities")) {
+                    item.put("entities", chunk.getEntities());
+                }
+                if (query.includes("tile_entities")) {
+                    item.put("tile_entities", chunk.getTileEntities());
+                }
+                if (query.includes("top_entity")) {
+                    Map<String, Object> top = null;
+                    if (chunk.getTopEntityType() != null) {
+                        top = new HashMap<>();
+                        top.put("type", chunk.getTopEntityType());
+                        top.put("count", chunk.getTopEntityCount());
+                    }
+                    item.put("top_entity", top);
+                }
+                chunks.add(item);
+            }
+            
+            Map<String, Object> scan = new HashMap<>();
+            scan.put("started_at", snapshot.getStartedAt());
+            scan.put("completed_at", snapshot.getCompletedAt());
+            scan.put("ticks", snapshot.getTicks());
+            scan.put("busy_ms", snapshot.getBusyNanos() / 1e6);
+            
+            Map<String, Object> response = new HashMap<>();
+            response.put("scan", scan);
+            response.put("worlds", worlds);
+            response.put("chunks", chunks);
+            return ApiResponse.of(Response.Status.OK, response);
+        } catch (IllegalArgumentException e) {
+            return ApiResponse.error(Response.Status.BAD_REQUEST, "Invalid query parameter", e.getMessage());
+        }
+    }
+    
+    private ApiResponse handleListenerProfile(IHTTPSession session) {
+        ListenerProfiler profiler = plugin.getListenerProfiler();
+        if (profiler == null) {
+            return ApiResponse.error(Response.Status.SERVICE_UNAVAILABLE, "Listener profiling unavailable",
+                "Listener profiling is disabled; set profiling.listeners.enabled to true");
+        }
+        
+        try {
+            Map<String, String> params = session.getParms();
+            ListQuery query = ListQuery.parse(params, 20, LISTENER_FIELDS);
+            long window = 60L;
+            String windowStr = params.get("window");
+            if (windowStr != null) {
+                try {
+                    window = Long.parseLong(windowStr);
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("'window' must be an integer");
+                }
+                if (window < 1 || window > ListenerProfiler.MAX_WINDOW_SECONDS) {
+                    throw new IllegalArgumentException("'window' must be between 1 and "
+                        + ListenerProfiler.MAX_WINDOW_SECONDS + " seconds");
+                }
+            }
+            
+            ListenerProfiler.Report report = profiler.report(window);
+            double seconds = Math.max(report.getWindowNanos() / 1e9, 1e-3);
+            
+            Map<String, long[]> perPlugin = new HashMap<>();
+            List<Map<String, Object>> listeners = new ArrayList<>();
+            for (ListenerProfiler.Entry entry : report.getEntries()) {
+                long[] total = perPlugin.computeIfAbsent(entry.getPlugin(), k -> new long[2]);
+                total[0] += entry.getCalls();
+                total[1] += entry.getNanos();
+                if (listeners.size() == query.getLimit()) {
+                    continue;
+                }
+                
+                Map<String, Object> item = new HashMap<>();
+                if (query.includes("plugin")) {
+                    item.put("plugin", entry.getPlugin());
+                }
+                if (query.includes("event")) {
+                    item.put("event", entry.getEvent());
+                }
+                if (query.includes("calls")) {
+                    item.put("calls", entry.getCalls());
+                }
+                if (query.includes("total_ms")) {
+                    item.put("total_ms", entry.getNanos() / 1e6);
+                }
+                if (query.includes("mean_us")) {
+                    item.put("mean_us", entry.getCalls() > 0 ? entry.getNanos() / 1e3 / entry.getCalls() : 0.0);
+                }
+                if (query.includes("max_ms")) {
+                    item.put("max_ms", entry.getMaxNanos() / 1e6);
+                }
+                listeners.add(item);
+            }
+            
+            List<Map.Entry<String, long[]>> pluginTotals = new ArrayList<>(perPlugin.entrySet());
+            pluginTotals.sort((a, b) -> Long.compare(b.getValue()[1], a.getValue()[1]));
+            List<Map<String, Object>> plugins = new ArrayList<>();
+            for (Map.Entry<String, long[]> total : pluginTotals) {
+                Map<String, Object> item = new HashMap<>();
+                item.put("plugin", total.getKey());
+                item.put("calls", total.getValue()[0]);
+                item.put("total_ms", total.getValue()[1] / 1e6);
+                // Main-thread ms per second of wall time; 1000 would be the whole tick loop
+                item.put("ms_per_second", total.getValue()[1] / 1e6 / seconds);
+                plugins.add(item);
+            }
+            
+            Map<String, Object> response = new HashMap<>();
+            response.put("window_seconds", report.getWindowNanos() / 1e9);
+            response.put("wrapped_listeners", profiler.getWrappedListeners());
+            response.put("plugins", plugins);
+            response.put("listeners", listeners);
+            return ApiResponse.of(Response.Status.OK, response);
+        } catch (IllegalArgumentException e) {
+            return ApiResponse.error(Response.Status.BAD_REQUEST, "Invalid query parameter", e.getMessage());
+        }
+    }
+    
+    /**
+     * Profiles the server thread for the requested duration and returns
+     * collapsed stacks; the request blocks until the profile is done.
+     */
+    private ApiResponse handleCpuProfile(IHTTPSession session) throws InterruptedException {
+        StackSampler sampler = plugin.getStackSampler();
+        Map<String, String> params = session.getParms();
+        long durationMillis;
+        long intervalMillis;
+        try {
+            String durationStr = params.get("duration");
+            String intervalStr = params.get("interval_ms");
+            durationMillis = (long) ((durationStr != null ? Double.parseDouble(durationStr) : 10.0) * 1000.0);
+            intervalMillis = intervalStr != null ? Long.parseLong(intervalStr) : 10L;
+        } catch (NumberFormatException e) {
+            return ApiResponse.error(Response.Status.BAD_REQUEST, "Invalid query parameter",
+                "'duration' must be a number of seconds and 'interval_ms' an integer");
+        }
+        
+        StackSampler.Profile profile;
+        try {
+            profile = sampler.profile(durationMillis, intervalMillis);
+        } catch (IllegalArgumentException e) {
+            return ApiResponse.error(Response.Status.BAD_REQUEST, "Invalid query parameter", e.getMessage());
+        } catch (IllegalStateException e) {
+            return ApiResponse.error(Response.Status.CONFLICT, "Profile already running", e.getMessage());
+        }
+        
+        return ApiResponse.text(Response.Status.OK, "text/plain; charset=utf-8", profile.getCollapsed())
+            .header("X-Profile-Samples", Integer.toString(profile.getSamples()))
+            .header("X-Profile-Duration-Ms", Long.toString(profile.getElapsedNanos() / 1000000L))
+            .header("X-Profile-Sampling-Ms", Long.toString(profile.getSamplingNanos() / 1000000L));
+    }
+    
+    private ApiResponse handlePlugins(IHTTPSession session) {
+        try {
+            ListQuery query = ListQuery.parse(session.getParms(), Integer.MAX_VALUE, PLUGIN_FIELDS);
+            
+            Plugin[] plugins = Bukkit.getPluginManager().getPlugins().clone();
+            Arrays.sort(plugins, (a, b) -> pluginSortKey(a).compareTo(pluginSortKey(b)));
+            
+            List<Map<String, Object>> pluginList = new ArrayList<>();
+            String last = null;
+            boolean more = false;
             for (Plugin p : plugins) {
+                String sortKey = pluginSortKey(p);
+                if (query.getAfter() != null && sortKey.compareTo(query.getAfter()) <= 0) {
+                    continue;
+                }
+                if (pluginList.size() == query.getLimit()) {
+                    more = true;
+                    break;
+                }
+                
                 Map<String, Object> pluginInfo = new HashMap<>();
-                pluginInfo.put("name", p.getName());
-                pluginInfo.put("version", p.getDescription().getVersion());
-                pluginInfo.put("enabled", p.isEnabled());
-                pluginInfo.put("authors", p.getDescription().getAuthors());
+                if (query.includes("name")) {
+                    pluginInfo.put("name", p.getName());
+                }
+                if (query.includes("version")) {
+                    pluginInfo.put("version", p.getDescription().getVersion());
+                }
+                if (query.includes("enabled")) {
+                    pluginInfo.put("enabled", p.isEnabled());
+                }
+                if (query.includes("authors")) {
+                    pluginInfo.put("authors", p.getDescription().getAuthors());
+                }
                 pluginList.add(pluginInfo);
+                last = sortKey;
             }
             
             Map<String, Object> response = new HashMap<>();
             response.put("plugins", pluginList);
+            putNextCursor(response, more, last);
             
-            return newFixedLengthResponse(Response.Status.OK, "application/json", gson.toJson(response));
+            return ApiResponse.of(Response.Status.OK, response);
+        } catch (IllegalArgumentException e) {
+            return ApiResponse.error(Response.Status.BAD_REQUEST, "Invalid query parameter", e.getMessage());
         } catch (Exception e) {
             plugin.getLogger().log(Level.SEVERE, "Error in /api/plugins", e);
             Map<String, String> error = new HashMap<>();
             error.put("error", "Failed to retrieve plugins");
             error.put("message", e.getMessage());
-            return newFixedLengthResponse(Response.Status.INTERNAL_ERROR, "application/json", gson.toJson(error));
+            return ApiResponse.of(Response.Status.INTERNAL_ERROR, error);
         }
     }
     
-    private Response handleCommand(IHTTPSession session) {
+    private static String pluginSortKey(Plugin p) {
+        // Plugin names are unique ignoring case
+        return p.getName().toLowerCase(Locale.ROOT);
+    }
+    
+    private ApiResponse handleCommand(IHTTPSession session, String client) {
         try {
-            Map<String, String> files = new HashMap<>();
-            session.parseBody(files);
-            String body = files.get("postData");
-            
-            @SuppressWarnings("unchecked")
-            Map<String, Object> bodyMap = gson.fromJson(body, Map.class);
-            Object commandsObj = bodyMap.get("commands");
-            
-            if (commandsObj == null) {
-                Map<String, String> error = new HashMap<>();
-                error.put("error", "Missing 'commands' field");
-                error.put("message", "Request body must contain 'commands' field (string or array)");
-                return newFixedLengthResponse(Response.Status.BAD_REQUEST, "application/json", gson.toJson(error));
+            CommandRequest request;
+            JsonReader reader = openBody(session);
+            try {
+                request = CommandRequest.read(reader);
+            } finally {
+                RequestBody.finish(reader);
             }
             
             CommandExecutor executor = plugin.getCommandExecutor();
-            List<CommandExecutor.CommandResult> results;
-            
-            if (commandsObj instanceof String) {
-                String command = (String) commandsObj;
-                CommandExecutor.CommandResult result = executor.executeCommand(command);
-                results = Collections.singletonList(result);
-            } else if (commandsObj instanceof List) {
-                @SuppressWarnings("unchecked")
-                List<String> commands = (List<String>) commandsObj;
-                results = executor.executeCommands(commands);
-            } else {
-                Map<String, String> error = new HashMap<>();
-                error.put("error", "Invalid 'commands' field type");
-                error.put("message", "'commands' must be a string or array of strings");
-                return newFixedLengthResponse(Response.Status.BAD_REQUEST, "application/json", gson.toJson(error));
-            }
-            
-            List<Map<String, Object>> resultList = new ArrayList<>();
-            for (CommandExecutor.CommandResult result : results) {
-                Map<String, Object> resultMap = new HashMap<>();
-                resultMap.put("command", result.getCommand());
-                resultMap.put("success", result.isSuccess());
-                resultMap.put("output", result.getOutput());
-                if (!result.isSuccess()) {
-                    resultMap.put("error", result.getError());
-                }
-                resultList.add(resultMap);
+            if (request.isStream()) {
+                return streamCommands(session, request, client);
             }
+            List<CommandExecutor.CommandResult> results = executor.executeCommands(request.getCommands(),
+                request.isStopOnFailure(), client, request.getPriority());
             
             Map<String, Object> response = new HashMap<>();
-            response.put("results", resultList);
+            response.put("results", commandResultList(results));
             
-            return newFixedLengthResponse(Response.Status.OK, "application/json", gson.toJson(response));
+            return ApiResponse.of(Response.Status.OK, response).header("Server-Timing", serverTiming(results));
+        } catch (RequestBodyException e) {
+            return e.toResponse();
         } catch (Exception e) {
             plugin.getLogger().log(Level.SEVERE, "Error in /api/command", e);
             Map<String, String> error = new HashMap<>();
             error.put("error", "Command execution failed");
             error.put("message", e.getMessage());
-            return newFixedLengthResponse(Response.Status.INTERNAL_ERROR, "application/json", gson.toJson(error));
+            return ApiResponse.of(Response.Status.INTERNAL_ERROR, error);
+        }
+    }
+    
+    /**
+     * Runs commands and sends their output as NDJSON while they run.
+     * Not available inside /api/batch, whose responses are built in memory.
+     */
+    private ApiResponse streamCommands(IHTTPSession session, CommandRequest request, String client) {
+        if (session instanceof SubRequestSession) {
+            return ApiResponse.error(Response.Status.BAD_REQUEST, "Invalid sub-request",
+                "Streamed commands cannot be part of a batch");
+        }
+        
+        CommandStream stream = new CommandStream(request.getCommands(),
+            plugin.getConfigManager().getMaxCommandOutputChars(), plugin.getConfigManager().getCommandTimeoutSeconds());
+        stream.attach(plugin.getCommandExecutor().submitCommands(request.getCommands(), request.isStopOnFailure(),
+            client, request.getPriority(), stream));
+        return ApiResponse.stream(Response.Status.OK, CommandStream.CONTENT_TYPE, stream);
+    }
+    
+    /**
+     * Summarizes where a command request spent its time, as a Server-Timing header:
+     * the wait before the first command started, then execution and output capture
+     * summed over all commands.
+     */
+    private static String serverTiming(List<CommandExecutor.CommandResult> results) {
+        long queue = -1L;
+        long execute = 0L;
+        long capture = 0L;
+        for (CommandExecutor.CommandResult result : results) {
+            if (result.getStatus() != CommandExecutor.CommandResult.Status.EXECUTED || result.isCached()) {
+                continue;
+            }
+            if (queue < 0) {
+                queue = result.getQueueNanos();
+            }
+            execute += result.getExecuteNanos();
+            capture += result.getCaptureNanos();
+        }
+        return String.format(Locale.ROOT, "queue;dur=%.3f, execute;dur=%.3f, capture;dur=%.3f",
+            Math.max(queue, 0L) / 1e6, execute / 1e6, capture / 1e6);
+    }
+    
+    private List<Map<String, Object>> commandResultList(List<CommandExecutor.CommandResult> results) {
+        List<Map<String, Object>> resultList = new ArrayList<>();
+        for (CommandExecutor.CommandResult result : results) {
+            resultList.add(commandResultMap(result));
+        }
+        return resultList;
+    }
+    
+    static Map<String, Object> commandResultMap(CommandExecutor.CommandResult result) {
+        Map<String, Object> resultMap = new HashMap<>();
+        resultMap.put("command", result.getCommand());
+        resultMap.put("success", result.isSuccess());
+        resultMap.put("output", result.getOutput());
+        resultMap.put("status", result.getStatus().getLabel());
+        if (!result.isSuccess()) {
+            resultMap.put("error", result.getError());
+        }
+        if (result.isSkipped()) {
+            resultMap.put("skipped", true);
+        }
+        if (result.isTruncated()) {
+            resultMap.put("truncated", true);
+        }
+        if (result.isCached()) {
+            resultMap.put("cached", true);
+        } else if (result.getStatus() == CommandExecutor.CommandResult.Status.EXECUTED) {
+            Map<String, Object> timing = new HashMap<>();
+            timing.put("queue", result.getQueueNanos() / 1e6);
+            timing.put("execute", result.getExecuteNanos() / 1e6);
+            timing.put("capture", result.getCaptureNanos() / 1e6);
+            resultMap.put("timing_ms", timing);
+        }
+        return resultMap;
+    }
+    
+    /**
+     * Starts a command job and returns its ID without waiting for the commands to run.
+     */
+    private ApiResponse handleSubmitJob(IHTTPSession session, String client) {
+        try {
+            CommandRequest request;
+            JsonReader reader = openBody(session);
+            try {
+                request = CommandRequest.read(reader);
+            } finally {
+                RequestBody.finish(reader);
+            }
+            
+            CommandJobManager.Job job = plugin.getCommandJobManager().submit(client, request.getCommands(),
+                request.isStopOnFailure(), request.getPriority());
+            String location = "/api/commands/jobs/" + job.getId();
+            
+            Map<String, Object> response = new HashMap<>();
+            response.put("job_id", job.getId());
+            response.put("status", "pending");
+            response.put("location", location);
+            
+            return ApiResponse.of(Response.Status.ACCEPTED, response).header("Location", location);
+        } catch (RequestBodyException e) {
+            return e.toResponse();
+        } catch (IllegalStateException e) {
+            return ApiResponse.error(Response.Status.SERVICE_UNAVAILABLE, "Job table full", e.getMessage())
+                .header("Retry-After", "1");
+        }
+    }
+    
+    /**
+     * Reports a command job. With {@code wait}, holds the request until the job
+     * finishes or the wait expires, so clients need not poll in a loop.
+     */
+    private ApiResponse handleJob(IHTTPSession session, ApiRoute route, String client) throws InterruptedException {
+        String waitStr = session.getParms().get("wait");
+        long waitMillis;
+        try {
+            double waitSeconds = waitStr != null ? Double.parseDouble(waitStr) : 0.0;
+            waitSeconds = Math.max(0.0, Math.min(waitSeconds, plugin.getConfigManager().getCommandTimeoutSeconds()));
+            waitMillis = (long) (waitSeconds * 1000.0);
+        } catch (NumberFormatException e) {
+            return ApiResponse.error(Response.Status.BAD_REQUEST, "Invalid query parameter", "'wait' must be a number of seconds");
+        }
+        
+        CommandJobManager.Job job = plugin.getCommandJobManager().get(client, route.getId(session.getUri()));
+        if (job == null) {
+            return ApiResponse.error(Response.Status.NOT_FOUND, "Not Found", "Unknown or expired job");
+        }
+        
+        return ApiResponse.of(Response.Status.OK, jobView(job, job.await(waitMillis)));
+    }
+    
+    /**
+     * Cancels the commands of a job that have not started yet and reports the job.
+     */
+    private ApiResponse handleCancelJob(IHTTPSession session, ApiRoute route, String client)
+            throws InterruptedException {
+        CommandJobManager.Job job = plugin.getCommandJobManager().cancel(client, route.getId(session.getUri()));
+        if (job == null) {
+            return ApiResponse.error(Response.Status.NOT_FOUND, "Not Found", "Unknown or expired job");
+        }
+        
+        return ApiResponse.of(Response.Status.OK, jobView(job, job.await(0)));
+    }
+    
+    private Map<String, Object> jobView(CommandJobManager.Job job, List<CommandExecutor.CommandResult> results) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("job_id", job.getId());
+        response.put("created_at", job.getCreatedAt());
+        response.put("command_count", job.getCommands().size());
+        if (results == null) {
+            // A cancelled job stays "cancelling" until its running command returns
+            response.put("status", job.isCancelRequested() ? "cancelling" : "pending");
+        } else {
+            String status = "completed";
+            if (job.getError() != null) {
+                status = "failed";
+            } else if (job.isCancelRequested() && hasCancelledResult(results)) {
+                // A cancel that came after every command had started changes nothing
+                status = "cancelled";
+            }
+            response.put("status", status);
+            response.put("completed_at", job.getCompletedAt());
+            response.put("results", commandResultList(results));
+            if (job.getError() != null) {
+                response.put("error", job.getError());
+            }
+        }
+        return response;
+    }
+    
+    private static boolean hasCancelledResult(List<CommandExecutor.CommandResult> results) {
+        for (CommandExecutor.CommandResult result : results) {
+            if (result.getStatus() == CommandExecutor.CommandResult.Status.CANCELLED) {
+                return true;
+            }
         }
+        return false;
     }
     
-    private Response handleLogs(IHTTPSession session) {
+    private ApiResponse handleLogs(IHTTPSession session) {
         try {
             Map<String, String> params = session.getParms();
-            String limitStr = params.get("limit");
-            Integer limit = limitStr != null ? Integer.valueOf(limitStr) : 100;
+            ListQuery query = ListQuery.parse(params, 100, LOG_FIELDS);
             String startTimeStr = params.get("start_time");
             String endTimeStr = params.get("end_time");
             
@@ -246,191 +995,626 @@ public class HttpApiServer extends NanoHTTPD {
                 endTime = Long.parseLong(endTimeStr);
             }
             
-            LogCollector collector = plugin.getLogCollector();
-            List<LogCollector.LogEntry> logs = collector.getLogs(limit, startTime, endTime);
+            Long sinceSeq = parseSinceSeq(params);
             
-            List<Map<String, Object>> logList = new ArrayList<>();
-            for (LogCollector.LogEntry log : logs) {
-                Map<String, Object> logMap = new HashMap<>();
-                logMap.put("timestamp", log.getTimestamp());
-                logMap.put("level", log.getLevel());
-                logMap.put("logger", log.getLogger());
-                logMap.put("message", log.getMessage());
-                logList.add(logMap);
-            }
+            LogCollector collector = plugin.getLogCollector();
+            long latestSeq = collector.getLatestSequence();
+            List<LogCollector.LogEntry> logs = collector.getLogs(query.getFetchLimit(), startTime, endTime,
+                sinceSeq, query.getAfterSequence());
             
             Map<String, Object> response = new HashMap<>();
-            response.put("logs", logList);
+            response.put("logs", logPage(logs, query, LOG_FIELDS, response));
+            response.put("latest_seq", latestSeq);
             
-            return newFixedLengthResponse(Response.Status.OK, "application/json", gson.toJson(response));
+            return ApiResponse.of(Response.Status.OK, response);
+        } catch (IllegalArgumentException e) {
+            return ApiResponse.error(Response.Status.BAD_REQUEST, "Invalid query parameter", e.getMessage());
         } catch (Exception e) {
             plugin.getLogger().log(Level.SEVERE, "Error in /api/logs", e);
             Map<String, String> error = new HashMap<>();
             error.put("error", "Failed to retrieve logs");
             error.put("message", e.getMessage());
-            return newFixedLengthResponse(Response.Status.INTERNAL_ERROR, "application/json", gson.toJson(error));
+            return ApiResponse.of(Response.Status.INTERNAL_ERROR, error);
         }
     }
     
-    private Response handlePlayers() {
+    private ApiResponse handlePlayers(IHTTPSession session) {
         try {
-            Collection<? extends Player> onlinePlayers = plugin.getVersionAdapter().getOnlinePlayers();
+            ListQuery query = ListQuery.parse(session.getParms(), Integer.MAX_VALUE, PLAYER_FIELDS);
+            PlayerSnapshotCache.Snapshot snapshot = plugin.getPlayerSnapshotCache().getSnapshot();
+            
+            List<PlayerSnapshotCache.PlayerInfo> following = snapshot.after(query.getAfter());
+            boolean more = following.size() > query.getLimit();
+            if (more) {
+                following = following.subList(0, query.getLimit());
+            }
             
-            List<Map<String, Object>> playerList = new ArrayList<>();
-            for (Player player : onlinePlayers) {
+            List<Map<String, Object>> playerList = new ArrayList<>(following.size());
+            for (PlayerSnapshotCache.PlayerInfo player : following) {
                 Map<String, Object> playerInfo = new HashMap<>();
-                playerInfo.put("name", player.getName());
-                playerInfo.put("uuid", player.getUniqueId().toString());
-                
-                int ping;
-                try {
-                    ping = (int) player.getClass().getMethod("getPing").invoke(player);
-                } catch (NoSuchMethodException | IllegalAccessException | java.lang.reflect.InvocationTargetException e) {
-                    ping = -1;
+                if (query.includes("name")) {
+                    playerInfo.put("name", player.getName());
+                }
+                if (query.includes("uuid")) {
+                    playerInfo.put("uuid", player.getUniqueId().toString());
+                }
+                if (query.includes("ping")) {
+                    playerInfo.put("ping", player.getPing());
+                }
+                if (query.includes("world")) {
+                    playerInfo.put("world", player.getWorld());
+                }
+                if (query.includes("location")) {
+                    Map<String, Object> location = new HashMap<>();
+                    location.put("x", player.getX());
+                    location.put("y", player.getY());
+                    location.put("z", player.getZ());
+                    playerInfo.put("location", location);
                 }
-                playerInfo.put("ping", ping);
-                
                 playerList.add(playerInfo);
             }
             
             Map<String, Object> response = new HashMap<>();
             response.put("count", playerList.size());
+            response.put("total", snapshot.size());
             response.put("players", playerList);
+            response.put("snapshot_at", snapshot.getBuiltAt());
+            putNextCursor(response, more, following.isEmpty() ? null : following.get(following.size() - 1).getSortKey());
             
-            return newFixedLengthResponse(Response.Status.OK, "application/json", gson.toJson(response));
-        } catch (Exception e) {
-            plugin.getLogger().log(Level.SEVERE, "Error in /api/players", e);
-            Map<String, String> error = new HashMap<>();
-            error.put("error", "Failed to retrieve player list");
-            error.put("message", e.getMessage());
-            return newFixedLengthResponse(Response.Status.INTERNAL_ERROR, "application/json", gson.toJson(error));
+            return ApiResponse.of(Response.Status.OK, response);
+        } catch (IllegalArgumentException e) {
+            return ApiResponse.error(Response.Status.BAD_REQUEST, "Invalid query parameter", e.getMessage());
         }
     }
     
-    private Response handleErrors(IHTTPSession session) {
+    private ApiResponse handleErrors(IHTTPSession session) {
         try {
             Map<String, String> params = session.getParms();
             String pluginName = params.get("plugin");
-            String limitStr = params.get("limit");
-            Integer limit = limitStr != null ? Integer.valueOf(limitStr) : 100;
+            ListQuery query = ListQuery.parse(params, 100, LEVEL_LOG_FIELDS);
             
-            LogCollector collector = plugin.getLogCollector();
-            List<LogCollector.LogEntry> errors = collector.getErrors(pluginName, limit);
+            Long sinceSeq = parseSinceSeq(params);
             
-            List<Map<String, Object>> errorList = new ArrayList<>();
-            for (LogCollector.LogEntry log : errors) {
-                Map<String, Object> errorMap = new HashMap<>();
-                errorMap.put("timestamp", log.getTimestamp());
-                errorMap.put("plugin", log.getLogger());
-                errorMap.put("message", log.getMessage());
-                errorList.add(errorMap);
-            }
+            LogCollector collector = plugin.getLogCollector();
+            // Only errors move the cursor, so the body stays in step with the ETag
+            long latestSeq = collector.getLatestSequence(LogCollector.Stream.ERRORS);
+            List<LogCollector.LogEntry> entries = collector.getErrors(pluginName, query.getFetchLimit(),
+                sinceSeq, query.getAfterSequence());
             
             Map<String, Object> response = new HashMap<>();
-            response.put("errors", errorList);
+            response.put("errors", logPage(entries, query, LEVEL_LOG_FIELDS, response));
+            response.put("latest_seq", latestSeq);
             
-            return newFixedLengthResponse(Response.Status.OK, "application/json", gson.toJson(response));
+            return ApiResponse.of(Response.Status.OK, response);
+        } catch (IllegalArgumentException e) {
+            return ApiResponse.error(Response.Status.BAD_REQUEST, "Invalid query parameter", e.getMessage());
         } catch (Exception e) {
             plugin.getLogger().log(Level.SEVERE, "Error in /api/logs/errors", e);
             Map<String, String> error = new HashMap<>();
             error.put("error", "Failed to retrieve error logs");
             error.put("message", e.getMessage());
-            return newFixedLengthResponse(Response.Status.INTERNAL_ERROR, "application/json", gson.toJson(error));
+            return ApiResponse.of(Response.Status.INTERNAL_ERROR, error);
+        }
+    }
+    
+    /**
+     * Builds one page of log entries, generating only the requested fields.
+     * The entries are fetched with {@link ListQuery#getFetchLimit()}.
+     */
+    private List<Map<String, Object>> logPage(List<LogCollector.LogEntry> entries, ListQuery query,
+                                              List<String> knownFields, Map<String, Object> response) {
+        boolean more = entries.size() > query.getLimit();
+        List<LogCollector.LogEntry> page = more ? entries.subList(0, query.getLimit()) : entries;
+        
+        List<Map<String, Object>> rows = new ArrayList<>(page.size());
+        for (LogCollector.LogEntry log : page) {
+            Map<String, Object> row = new HashMap<>();
+            for (String field : knownFields) {
+                if (!query.includes(field)) {
+                    continue;
+                }
+                switch (field) {
+                    case "seq":
+                        row.put(field, log.getSequence());
+                        break;
+                    case "timestamp":
+                        row.put(field, log.getTimestamp());
+                        break;
+                    case "level":
+                        row.put(field, log.getLevel());
+                        break;
+                    case "message":
+                        row.put(field, log.getMessage());
+                        break;
+                    default:
+                        // "logger" on /api/logs, "plugin" on the level endpoints
+                        row.put(field, log.getLogger());
+                        break;
+                }
+            }
+            rows.add(row);
         }
+        
+        // Logs are newest first, so the next page continues below the last sequence
+        String last = page.isEmpty() ? null : Long.toString(page.get(page.size() - 1).getSequence());
+        putNextCursor(response, more, last);
+        return rows;
     }
     
-    private Response handleWarnings(IHTTPSession session) {
+    private ApiResponse handleWarnings(IHTTPSession session) {
         try {
             Map<String, String> params = session.getParms();
             String pluginName = params.get("plugin");
-            String limitStr = params.get("limit");
-            Integer limit = limitStr != null ? Integer.valueOf(limitStr) : 100;
+            ListQuery query = ListQuery.parse(params, 100, LEVEL_LOG_FIELDS);
             
-            LogCollector collector = plugin.getLogCollector();
-            List<LogCollector.LogEntry> warnings = collector.getWarnings(pluginName, limit);
+            Long sinceSeq = parseSinceSeq(params);
             
-            List<Map<String, Object>> warningList = new ArrayList<>();
-            for (LogCollector.LogEntry log : warnings) {
-                Map<String, Object> warningMap = new HashMap<>();
-                warningMap.put("timestamp", log.getTimestamp());
-                warningMap.put("plugin", log.getLogger());
-                warningMap.put("message", log.getMessage());
-                warningList.add(warningMap);
-            }
+            LogCollector collector = plugin.getLogCollector();
+            long latestSeq = collector.getLatestSequence(LogCollector.Stream.WARNINGS);
+            List<LogCollector.LogEntry> entries = collector.getWarnings(pluginName, query.getFetchLimit(),
+                sinceSeq, query.getAfterSequence());
             
             Map<String, Object> response = new HashMap<>();
-            response.put("warnings", warningList);
+            response.put("warnings", logPage(entries, query, LEVEL_LOG_FIELDS, response));
+            response.put("latest_seq", latestSeq);
             
-            return newFixedLengthResponse(Response.Status.OK, "application/json", gson.toJson(response));
+            return ApiResponse.of(Response.Status.OK, response);
+        } catch (IllegalArgumentException e) {
+            return ApiResponse.error(Response.Status.BAD_REQUEST, "Invalid query parameter", e.getMessage());
         } catch (Exception e) {
             plugin.getLogger().log(Level.SEVERE, "Error in /api/logs/warnings", e);
             Map<String, String> error = new HashMap<>();
             error.put("error", "Failed to retrieve warning logs");
             error.put("message", e.getMessage());
-            return newFixedLengthResponse(Response.Status.INTERNAL_ERROR, "application/json", gson.toJson(error));
+            return ApiResponse.of(Response.Status.INTERNAL_ERROR, error);
         }
     }
     
-    private Response handleCommands() {
+    /**
+     * Runs several API calls in one round trip.
+     * Read-only sub-requests run in parallel on the batch pool while the others,
+     * and reads that may block, run in order on this thread; each sub-request
+     * is admitted individually.
+     */
+    private ApiResponse handleBatch(IHTTPSession session, String client) throws Exception {
+        JsonElement root;
+        JsonReader reader;
         try {
-            List<Map<String, Object>> commandList = new ArrayList<>();
+            reader = openBody(session);
+        } catch (RequestBodyException e) {
+            return e.toResponse();
+        }
+        try {
+            root = JsonParser.parseReader(reader);
+        } catch (JsonParseException e) {
+            return ApiResponse.error(Response.Status.BAD_REQUEST, "Invalid JSON", e.getMessage());
+        } finally {
+            RequestBody.finish(reader);
+        }
+        
+        if (!root.isJsonObject() || !root.getAsJsonObject().has("requests")
+                || !root.getAsJsonObject().get("requests").isJsonArray()) {
+            return ApiResponse.error(Response.Status.BAD_REQUEST, "Missing 'requests' field",
+                "Request body must contain a 'requests' array");
+        }
+        
+        JsonArray requests = root.getAsJsonObject().getAsJsonArray("requests");
+        if (requests.size() > MAX_BATCH_SIZE) {
+            return ApiResponse.error(Response.Status.BAD_REQUEST, "Batch too large",
+                "A batch may contain at most " + MAX_BATCH_SIZE + " requests");
+        }
+        
+        Object[] results = new Object[requests.size()];
+        List<BatchItem> sequential = new ArrayList<>();
+        List<Future<?>> pending = new ArrayList<>();
+        
+        for (int i = 0; i < requests.size(); i++) {
+            JsonElement element = requests.get(i);
+            if (!element.isJsonObject() || !element.getAsJsonObject().has("route")) {
+                results[i] = subResult(null, null, ApiResponse.error(Response.Status.BAD_REQUEST,
+                    "Invalid sub-request", "Each sub-request must be an object with a 'route' field"));
+                continue;
+            }
             
+            JsonObject request = element.getAsJsonObject();
+            String id = null;
+            String path = null;
+            Method method;
+            Map<String, String> params = new HashMap<>();
+            String ifNoneMatch;
             try {
-                Object commandMap = Bukkit.getServer().getClass().getMethod("getCommandMap").invoke(Bukkit.getServer());
-                @SuppressWarnings("unchecked")
-                Map<String, org.bukkit.command.Command> knownCommands = 
-                    (Map<String, org.bukkit.command.Command>) commandMap.getClass().getMethod("getKnownCommands").invoke(commandMap);
-                
-                for (Map.Entry<String, org.bukkit.command.Command> entry : knownCommands.entrySet()) {
-                    org.bukkit.command.Command cmd = entry.getValue();
-                    
-                    Map<String, Object> commandInfo = new HashMap<>();
+                id = batchField(request, "id");
+                path = batchField(request, "route");
+                String methodName = batchField(request, "method");
+                method = methodName != null ? Method.lookup(methodName.toUpperCase()) : Method.GET;
+                if (method == null) {
+                    throw new IllegalArgumentException("Unsupported method '" + methodName + "'");
+                }
+                if (request.has("params") && request.get("params").isJsonObject()) {
+                    for (Map.Entry<String, JsonElement> param : request.getAsJsonObject("params").entrySet()) {
+                        if (!param.getValue().isJsonPrimitive()) {
+                            throw new IllegalArgumentException("Parameter '" + param.getKey() + "' must be a string");
+                        }
+                        params.put(param.getKey(), param.getValue().getAsString());
+                    }
+                }
+                ifNoneMatch = batchField(request, "if_none_match");
+            } catch (IllegalArgumentException e) {
+                results[i] = subResult(id, path, ApiResponse.error(Response.Status.BAD_REQUEST,
+                    "Invalid sub-request", e.getMessage()));
+                continue;
+            }
+            ApiRoute route = ApiRoute.resolve(method, path);
+            
+            if (route == ApiRoute.BATCH) {
+                results[i] = subResult(id, path, ApiResponse.error(Response.Status.BAD_REQUEST,
+                    "Invalid sub-request", "Batches cannot be nested"));
+                continue;
+            }
+            
+            String subBody = request.has("body") ? request.get("body").toString() : null;
+            
+            BatchItem item = new BatchItem(i, id, path, route,
+                new SubRequestSession(session, method, path, params, subBody, ifNoneMatch));
+            if (route.getMethod() == Method.GET && !route.isBlocking()) {
+                pending.add(batchExecutor.submit(() -> {
+                    results[item.index] = runSubRequest(item, client);
+                }));
+            } else {
+                sequential.add(item);
+            }
+        }
+        
+        for (BatchItem item : sequential) {
+            results[item.index] = runSubRequest(item, client);
+        }
+        
+        for (Future<?> future : pending) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                plugin.getLogger().log(Level.SEVERE, "Error in batch sub-request", e.getCause());
+            }
+        }
+        
+        List<Object> responses = new ArrayList<>();
+        Collections.addAll(responses, results);
+        
+        Map<String, Object> response = new HashMap<>();
+        response.put("responses", responses);
+        
+        return ApiResponse.of(Response.Status.OK, response);
+    }
+    
+    /**
+     * Reads a string field of a batch sub-request.
+     *
+     * @return The value, or null if the field is absent
+     * @throws IllegalArgumentException if the field is an object, array or null
+     */
+    private static String batchField(JsonObject request, String name) {
+        JsonElement value = request.get(name);
+        if (value == null) {
+            return null;
+        }
+        if (!value.isJsonPrimitive()) {
+            throw new IllegalArgumentException("Field '" + name + "' must be a string");
+        }
+        return value.getAsString();
+    }
+    
+    private Map<String, Object> runSubRequest(BatchItem item, String client) {
+        long startNanos = System.nanoTime();
+        ApiResponse result = admitAndDispatch(item.session, item.route, client);
+        plugin.getApiMetrics().recordRequest(item.route, result.getStatus().getRequestStatus(),
+            System.nanoTime() - startNanos, -1L);
+        return subResult(item.id, item.path, result);
+    }
+    
+    private Map<String, Object> subResult(String id, String path, ApiResponse result) {
+        Map<String, Object> entry = new HashMap<>();
+        if (id != null) {
+            entry.put("id", id);
+        }
+        entry.put("route", path);
+        entry.put("status", result.getStatus().getRequestStatus());
+        if (result.getHeaders().containsKey("ETag")) {
+            entry.put("etag", result.getHeaders().get("ETag"));
+        }
+        entry.put("body", result.getBody());
+        return entry;
+    }
+    
+    private ApiResponse handleMetrics() {
+        CommandJournal journal = plugin.getCommandJournal();
+        HotspotSampler hotspots = plugin.getHotspotSampler();
+        ListenerProfiler listeners = plugin.getListenerProfiler();
+        return ApiResponse.text(Response.Status.OK, PrometheusWriter.CONTENT_TYPE,
+            plugin.getApiMetrics().toPrometheus() + plugin.getCommandExecutor().getScheduler().toPrometheus()
+                + plugin.getCommandExecutor().getResultCache().toPrometheus()
+                + plugin.getCommandScheduleManager().toPrometheus()
+                + plugin.getTickSampler().toPrometheus()
+                + (hotspots != null ? hotspots.toPrometheus() : "")
+                + (listeners != null ? listeners.toPrometheus() : "")
+                + (journal != null ? journal.toPrometheus() : ""));
+    }
+    
+    private ApiResponse handleCommandQueue() {
+        CommandScheduler scheduler = plugin.getCommandExecutor().getScheduler();
+        
+        Map<String, Object> lanes = new LinkedHashMap<>();
+        for (CommandPriority priority : CommandPriority.values()) {
+            LogLinearHistogram wait = scheduler.getQueueWait(priority);
+            
+            Map<String, Object> waitMillis = new HashMap<>();
+            waitMillis.put("p50", wait.getPercentile(50.0) / 1000.0);
+            waitMillis.put("p99", wait.getPercentile(99.0) / 1000.0);
+            waitMillis.put("mean", wait.getCount() > 0 ? wait.getSum() / 1000.0 / wait.getCount() : 0.0);
+            
+            Map<String, Object> lane = new HashMap<>();
+            lane.put("weight", priority.getWeight());
+            lane.put("pending_commands", scheduler.getPendingCommands(priority));
+            lane.put("wait_ms", waitMillis);
+            lanes.put(priority.getLabel(), lane);
+        }
+        
+        Map<String, Object> response = new HashMap<>();
+        response.put("pending_commands", scheduler.getPendingCommands());
+        response.put("queued_batches", scheduler.getQueueDepth());
+        response.put("tick_budget_ms", scheduler.getBudgetMillis());
+        response.put("deferred_ticks", scheduler.getDeferredTicks());
+        response.put("lanes", lanes);
+        
+        List<Map<String, Object>> heaviest = new ArrayList<>();
+        for (Map.Entry<String, CommandLatencyStats.Stats> entry : scheduler.getLatencyStats().heaviest(10)) {
+            LogLinearHistogram execute = entry.getValue().getExecute();
+            LogLinearHistogram queue = entry.getValue().getQueue();
+            
+            Map<String, Object> command = new HashMap<>();
+            command.put("command", entry.getKey());
+            command.put("count", execute.getCount());
+            command.put("execute_total_ms", execute.getSum() / 1000.0);
+            command.put("execute_p50_ms", execute.getPercentile(50.0) / 1000.0);
+            command.put("execute_p99_ms", execute.getPercentile(99.0) / 1000.0);
+            command.put("queue_p99_ms", queue.getPercentile(99.0) / 1000.0);
+            heaviest.add(command);
+        }
+        response.put("heaviest_commands", heaviest);
+        
+        return ApiResponse.of(Response.Status.OK, response);
+    }
+    
+    private ApiResponse handleSchedules() {
+        List<Map<String, Object>> schedules = new ArrayList<>();
+        for (CommandScheduleManager.State state : plugin.getCommandScheduleManager().list()) {
+            schedules.add(scheduleView(state));
+        }
+        
+        Map<String, Object> response = new HashMap<>();
+        response.put("schedules", schedules);
+        return ApiResponse.of(Response.Status.OK, response);
+    }
+    
+    /**
+     * Creates or replaces a schedule. Its commands are validated now, so a
+     * blacklisted command is rejected here instead of failing on every run.
+     */
+    private ApiResponse handlePutSchedule(IHTTPSession session, ApiRoute route) {
+        try {
+            CommandSchedule schedule;
+            JsonReader reader = openBody(session);
+            try {
+                schedule = ScheduleRequest.read(reader, route.getId(session.getUri()));
+            } finally {
+                RequestBody.finish(reader);
+            }
+            
+            for (String command : schedule.getCommands()) {
+                CommandExecutor.ValidationResult validation = plugin.getCommandExecutor().validateCommand(command);
+                if (!validation.isValid()) {
+                    return ApiResponse.error(Response.Status.BAD_REQUEST, "Invalid schedule",
+                        "Command '" + command + "': " + validation.getErrorMessage());
+                }
+            }
+            
+            boolean created = plugin.getCommandScheduleManager().get(schedule.getId()) == null;
+            CommandScheduleManager.State state = plugin.getCommandScheduleManager().put(schedule);
+            return ApiResponse.of(created ? Response.Status.CREATED : Response.Status.OK, scheduleView(state));
+        } catch (RequestBodyException e) {
+            return e.toResponse();
+        }
+    }
+    
+    private ApiResponse handleDeleteSchedule(IHTTPSession session, ApiRoute route) {
+        CommandScheduleManager.State state = plugin.getCommandScheduleManager().remove(route.getId(session.getUri()));
+        if (state == null) {
+            return ApiResponse.error(Response.Status.NOT_FOUND, "Not Found", "Unknown schedule");
+        }
+        
+        Map<String, Object> response = scheduleView(state);
+        response.put("deleted", true);
+        return ApiResponse.of(Response.Status.OK, response);
+    }
+    
+    private static Map<String, Object> scheduleView(CommandScheduleManager.State state) {
+        CommandSchedule schedule = state.getSchedule();
+        Map<String, Object> view = new HashMap<>();
+        view.put("id", schedule.getId());
+        view.put("commands", schedule.getCommands());
+        if (schedule.getCron() != null) {
+            view.put("cron", schedule.getCron().toString());
+        } else {
+            view.put("interval_seconds", schedule.getIntervalSeconds());
+        }
+        view.put("priority", schedule.getPriority().getLabel());
+        view.put("stop_on_failure", schedule.isStopOnFailure());
+        view.put("enabled", schedule.isEnabled());
+        view.put("next_run_at", schedule.isEnabled() ? state.getNextRunAt() : null);
+        view.put("runs", state.getRuns());
+        view.put("overlaps_skipped", state.getOverlaps());
+        if (state.getLastRunAt() > 0) {
+            view.put("last_run_at", state.getLastRunAt());
+            view.put("last_status", state.isRunning() ? "running" : state.isLastSuccess() ? "succeeded" : "failed");
+        }
+        return view;
+    }
+    
+    private ApiResponse handleAudit(IHTTPSession session) {
+        CommandJournal journal = plugin.getCommandJournal();
+        if (journal == null) {
+            return ApiResponse.error(Response.Status.SERVICE_UNAVAILABLE, "Audit journal unavailable",
+                "Command auditing is disabled or the journal could not be opened");
+        }
+        try {
+            Map<String, String> params = session.getParms();
+            ListQuery query = ListQuery.parse(params, 100, AUDIT_FIELDS);
+            String startTimeStr = params.get("start_time");
+            String endTimeStr = params.get("end_time");
+            Long startTime = startTimeStr != null ? Long.valueOf(startTimeStr) : null;
+            Long endTime = endTimeStr != null ? Long.valueOf(endTimeStr) : null;
+            
+            List<CommandJournal.Entry> entries = journal.query(startTime, endTime, params.get("client"),
+                query.getAfterSequence(), query.getFetchLimit());
+            boolean more = entries.size() > query.getLimit();
+            if (more) {
+                entries = entries.subList(0, query.getLimit());
+            }
+            
+            List<Map<String, Object>> page = new ArrayList<>(entries.size());
+            for (CommandJournal.Entry entry : entries) {
+                Map<String, Object> item = new HashMap<>();
+                if (query.includes("id")) {
+                    item.put("id", entry.getId());
+                }
+                if (query.includes("timestamp")) {
+                    item.put("timestamp", entry.getTimestamp());
+                }
+                if (query.includes("client")) {
+                    item.put("client", entry.getClient());
+                }
+                if (query.includes("priority")) {
+                    item.put("priority", entry.getPriority());
+                }
+                if (query.includes("command")) {
+                    item.put("command", entry.getCommand());
+                }
+                if (query.includes("result")) {
+                    item.put("result", entry.isCompleted() ? auditResultMap(entry) : null);
+                }
+                page.add(item);
+            }
+            
+            Map<String, Object> response = new HashMap<>();
+            response.put("entries", page);
+            putNextCursor(response, more,
+                entries.isEmpty() ? null : String.valueOf(entries.get(entries.size() - 1).getId()));
+            return ApiResponse.of(Response.Status.OK, response);
+        } catch (IllegalArgumentException e) {
+            return ApiResponse.error(Response.Status.BAD_REQUEST, "Invalid query parameter", e.getMessage());
+        }
+    }
+    
+    private static Map<String, Object> auditResultMap(CommandJournal.Entry entry) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("status", entry.getStatus());
+        result.put("success", entry.isSuccess());
+        result.put("completed_at", entry.getCompletedAt());
+        result.put("queue_us", entry.getQueueMicros());
+        result.put("execute_us", entry.getExecuteMicros());
+        result.put("output_chars", entry.getOutputChars());
+        if (entry.isCached()) {
+            result.put("cached", true);
+        }
+        if (entry.isTruncated()) {
+            result.put("truncated", true);
+        }
+        if (entry.getError() != null) {
+            result.put("error", entry.getError());
+        }
+        return result;
+    }
+    
+    private ApiResponse handleCommands(IHTTPSession session) {
+        try {
+            Map<String, String> params = session.getParms();
+            String prefix = params.get("prefix");
+            String pluginName = params.get("plugin");
+            String offsetStr = params.get("offset");
+            int offset = offsetStr != null ? Integer.parseInt(offsetStr) : 0;
+            ListQuery query = ListQuery.parse(params, Integer.MAX_VALUE, COMMAND_FIELDS);
+            
+            CommandRegistry.QueryResult page = plugin.getCommandRegistry().query(prefix, pluginName,
+                query.getAfter(), offset, query.getFetchLimit());
+            List<CommandRegistry.CommandInfo> matches = page.getCommands();
+            boolean more = matches.size() > query.getLimit();
+            if (more) {
+                matches = matches.subList(0, query.getLimit());
+            }
+            
+            List<Map<String, Object>> commandList = new ArrayList<>();
+            for (CommandRegistry.CommandInfo cmd : matches) {
+                Map<String, Object> commandInfo = new HashMap<>();
+                if (query.includes("name")) {
                     commandInfo.put("name", cmd.getName());
+                }
+                if (query.includes("description")) {
                     commandInfo.put("description", cmd.getDescription());
+                }
+                if (query.includes("usage")) {
                     commandInfo.put("usage", cmd.getUsage());
-                    commandInfo.put("aliases", new ArrayList<>(cmd.getAliases()));
-                    commandInfo.put("permission", cmd.getPermission() != null ? cmd.getPermission() : "");
-                    
-                    String pluginName = "Unknown";
-                    try {
-                        Object owningPlugin = cmd.getClass().getMethod("getPlugin").invoke(cmd);
-                        if (owningPlugin != null && owningPlugin instanceof Plugin) {
-                            pluginName = ((Plugin) owningPlugin).getName();
-                        } else {
-                            pluginName = "Minecraft";
-                        }
-                    } catch (NoSuchMethodException e) {
-                        String className = cmd.getClass().getName();
-                        if (className.startsWith("org.bukkit.command")) {
-                            pluginName = "Minecraft";
-                        } else {
-                            String[] parts = className.split("\\.");
-                            if (parts.length > 2) {
-                                pluginName = parts[2];
-                            }
-                        }
-                    } catch (IllegalAccessException | java.lang.reflect.InvocationTargetException e) {
-                        pluginName = "Unknown";
-                    }
-                    
-                    commandInfo.put("plugin", pluginName);
-                    commandList.add(commandInfo);
                 }
-            } catch (Exception e) {
-                plugin.getLogger().log(Level.WARNING, "Could not retrieve command map using reflection", e);
+                if (query.includes("aliases")) {
+                    commandInfo.put("aliases", cmd.getAliases());
+                }
+                if (query.includes("permission")) {
+                    commandInfo.put("permission", cmd.getPermission());
+                }
+                if (query.includes("plugin")) {
+                    commandInfo.put("plugin", cmd.getPlugin());
+                }
+                commandList.add(commandInfo);
             }
             
             Map<String, Object> response = new HashMap<>();
             response.put("commands", commandList);
             response.put("count", commandList.size());
+            response.put("total", page.getTotal());
+            response.put("offset", offset);
+            putNextCursor(response, more, matches.isEmpty() ? null : matches.get(matches.size() - 1).getSortKey());
             
-            return newFixedLengthResponse(Response.Status.OK, "application/json", gson.toJson(response));
+            return ApiResponse.of(Response.Status.OK, response);
+        } catch (NumberFormatException e) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", "Invalid paging parameter");
+            error.put("message", "'offset' and 'limit' must be integers");
+            return ApiResponse.of(Response.Status.BAD_REQUEST, error);
+        } catch (IllegalArgumentException e) {
+            return ApiResponse.error(Response.Status.BAD_REQUEST, "Invalid query parameter", e.getMessage());
         } catch (Exception e) {
             plugin.getLogger().log(Level.SEVERE, "Error in /api/commands", e);
             Map<String, String> error = new HashMap<>();
             error.put("error", "Failed to retrieve commands");
             error.put("message", e.getMessage());
-            return newFixedLengthResponse(Response.Status.INTERNAL_ERROR, "application/json", gson.toJson(error));
+            return ApiResponse.of(Response.Status.INTERNAL_ERROR, error);
+        }
+    }
+    
+    /**
+     * A parsed sub-request and its position in the batch.
+     */
+    private static final class BatchItem {
+        private final int index;
+        private final String id;
+        private final String path;
+        private final ApiRoute route;
+        private final SubRequestSession session;
+        
+        private BatchItem(int index, String id, String path, ApiRoute route, SubRequestSession session) {
+            this.index = index;
+            this.id = id;
+            this.path = path;
+            this.route = route;
+            this.session = session;
         }
     }
 }
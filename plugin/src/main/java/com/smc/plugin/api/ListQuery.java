@@ -0,0 +1,156 @@
+package com.smc.plugin.api;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Paging and projection parameters shared by the list endpoints.
+ *
+ * Lists are returned in a stable order and paged with an opaque cursor: the
+ * sort key of the last item on the previous page, base64url encoded. Unlike an
+ * offset, a cursor does not skip or repeat items when the list changes between
+ * pages. {@code fields} restricts which fields are generated for each item, so
+ * unused fields are never computed, let alone serialized.
+ */
+final class ListQuery {
+
+    private static final Base64.Encoder CURSOR_ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder CURSOR_DECODER = Base64.getUrlDecoder();
+
+    private final String after;
+    private final int limit;
+    private final Set<String> fields;
+
+    private ListQuery(String after, int limit, Set<String> fields) {
+        this.after = after;
+        this.limit = limit;
+        this.fields = fields;
+    }
+
+    /**
+     * Parses the {@code cursor}, {@code limit} and {@code fields} parameters.
+     *
+     * @param params Query parameters
+     * @param defaultLimit Page size when no limit is given
+     * @param knownFields Fields the endpoint can produce
+     * @return The parsed query
+     * @throws IllegalArgumentException if a parameter is invalid
+     */
+    static ListQuery parse(Map<String, String> params, int defaultLimit, List<String> knownFields) {
+        String after = null;
+        String cursor = params.get("cursor");
+        if (cursor != null && !cursor.isEmpty()) {
+            try {
+                after = new String(CURSOR_DECODER.decode(cursor), StandardCharsets.UTF_8);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("'cursor' is not a valid cursor");
+            }
+        }
+        
+        int limit = defaultLimit;
+        String limitStr = params.get("limit");
+        if (limitStr != null) {
+            try {
+                limit = Integer.parseInt(limitStr);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("'limit' must be an integer");
+            }
+            if (limit < 1) {
+                throw new IllegalArgumentException("'limit' must be at least 1");
+            }
+        }
+        
+        Set<String> fields = null;
+        String fieldsStr = params.get("fields");
+        if (fieldsStr != null && !fieldsStr.trim().isEmpty()) {
+            fields = new HashSet<>();
+            for (String field : fieldsStr.split(",")) {
+                String name = field.trim();
+                if (name.isEmpty()) {
+                    continue;
+                }
+                if (!knownFields.contains(name)) {
+                    throw new IllegalArgumentException("Unknown field '" + name + "', expected one of " + knownFields);
+                }
+                fields.add(name);
+            }
+        }
+        
+        return new ListQuery(after, limit, fields);
+    }
+
+    /**
+     * Convenience for building the known field list.
+     *
+     * @param fields Field names
+     * @return The field names as a list
+     */
+    static List<String> fields(String... fields) {
+        return Arrays.asList(fields);
+    }
+
+    /**
+     * Encodes a sort key as a cursor.
+     *
+     * @param sortKey Sort key of the last item on a page
+     * @return The opaque cursor
+     */
+    static String cursor(String sortKey) {
+        return CURSOR_ENCODER.encodeToString(sortKey.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Gets the sort key after which the page starts.
+     *
+     * @return The decoded cursor, or null for the first page
+     */
+    String getAfter() {
+        return after;
+    }
+
+    /**
+     * Gets the decoded cursor of a list ordered by sequence number.
+     *
+     * @return The sequence number, or null for the first page
+     * @throws IllegalArgumentException if the cursor does not hold a sequence number
+     */
+    Long getAfterSequence() {
+        if (after == null) {
+            return null;
+        }
+        try {
+            return Long.valueOf(after);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("'cursor' is not a valid cursor");
+        }
+    }
+
+    int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Gets how many items to fetch: one more than the page size, so the
+     * presence of an extra item tells whether another page follows.
+     *
+     * @return The number of items to fetch
+     */
+    int getFetchLimit() {
+        return limit == Integer.MAX_VALUE ? limit : limit + 1;
+    }
+
+    /**
+     * Checks whether a field should be generated.
+     *
+     * @param field Field name
+     * @return true if the field was requested, or no projection was given
+     */
+    boolean includes(String field) {
+        return fields == null || fields.contains(field);
+    }
+}
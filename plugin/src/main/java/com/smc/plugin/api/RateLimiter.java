@@ -0,0 +1,99 @@
+package com.smc.plugin.api;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.smc.plugin.config.ConfigManager;
+
+/**
+ * Token bucket admission control per API client and route class.
+ *
+ * Each bucket is stored as a single "theoretical arrival time" (the generic cell
+ * rate algorithm), which behaves exactly like a token bucket but can be updated
+ * with one compare-and-set, so checking a request never blocks another HTTP thread.
+ */
+public class RateLimiter {
+
+    private final boolean enabled;
+    private final Map<ApiRoute.RouteClass, Limit> limits;
+    private final Map<ApiRoute.RouteClass, ConcurrentHashMap<String, Bucket>> buckets;
+
+    /**
+     * Creates a rate limiter from the current configuration.
+     *
+     * @param config The configuration manager
+     */
+    public RateLimiter(ConfigManager config) {
+        this.enabled = config.isRateLimitEnabled();
+        this.limits = new EnumMap<>(ApiRoute.RouteClass.class);
+        this.limits.put(ApiRoute.RouteClass.READ,
+            new Limit(config.getReadRateCapacity(), config.getReadRateRefillPerSecond()));
+        this.limits.put(ApiRoute.RouteClass.COMMAND,
+            new Limit(config.getCommandRateCapacity(), config.getCommandRateRefillPerSecond()));
+
+        this.buckets = new EnumMap<>(ApiRoute.RouteClass.class);
+        for (ApiRoute.RouteClass routeClass : ApiRoute.RouteClass.values()) {
+            this.buckets.put(routeClass, new ConcurrentHashMap<>());
+        }
+    }
+
+    /**
+     * Takes one token from the client's bucket for the given route class.
+     *
+     * @param client The authenticated client name
+     * @param routeClass The class of the requested route
+     * @return 0 if the request is admitted, otherwise nanoseconds until a token is available
+     */
+    public long tryAcquire(String client, ApiRoute.RouteClass routeClass) {
+        if (!enabled) {
+            return 0L;
+        }
+
+        Limit limit = limits.get(routeClass);
+        Bucket bucket = buckets.get(routeClass).computeIfAbsent(client, k -> new Bucket());
+        return bucket.tryAcquire(limit, System.nanoTime());
+    }
+
+    /**
+     * Converts a wait time to a Retry-After header value.
+     *
+     * @param waitNanos Nanoseconds until a token is available
+     * @return Whole seconds, rounded up and at least 1
+     */
+    public static long retryAfterSeconds(long waitNanos) {
+        return Math.max(1L, (waitNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+    }
+
+    private static final class Limit {
+        private final long emissionIntervalNanos;
+        private final long burstToleranceNanos;
+
+        private Limit(int capacity, double refillPerSecond) {
+            this.emissionIntervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / refillPerSecond);
+            this.burstToleranceNanos = emissionIntervalNanos * (capacity - 1L);
+        }
+    }
+
+    private static final class Bucket {
+        // Time at which the bucket will be full again; starts full
+        private final AtomicLong theoreticalArrival = new AtomicLong(Long.MIN_VALUE);
+
+        private long tryAcquire(Limit limit, long now) {
+            while (true) {
+                long current = theoreticalArrival.get();
+                long tat = current == Long.MIN_VALUE ? now : Math.max(current, now);
+                long allowAt = tat - limit.burstToleranceNanos;
+
+                if (allowAt > now) {
+                    return allowAt - now;
+                }
+                if (theoreticalArrival.compareAndSet(current, tat + limit.emissionIntervalNanos)) {
+                    return 0L;
+                }
+            }
+        }
+    }
+}
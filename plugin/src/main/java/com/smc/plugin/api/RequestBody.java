@@ -0,0 +1,138 @@
+package com.smc.plugin.api;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+import com.google.gson.stream.JsonReader;
+
+import fi.iki.elonen.NanoHTTPD.IHTTPSession;
+import fi.iki.elonen.NanoHTTPD.Response;
+
+/**
+ * Streams request bodies straight from the connection.
+ *
+ * Unlike {@code IHTTPSession.parseBody}, nothing is buffered into a string or
+ * spilled to a temporary file: the declared length is checked against the limit
+ * before the first byte is read, and readers can never consume past the end of
+ * the body into a following keep-alive request.
+ */
+final class RequestBody {
+
+    private RequestBody() {
+    }
+
+    /**
+     * Opens a JSON reader over the request body.
+     *
+     * @param session The request
+     * @param maxBytes Largest accepted body size
+     * @return A reader limited to the declared body length
+     * @throws RequestBodyException if the length is missing or exceeds the limit
+     */
+    static JsonReader openJson(IHTTPSession session, long maxBytes) throws RequestBodyException {
+        String lengthHeader = session.getHeaders().get("content-length");
+        if (lengthHeader == null) {
+            throw new RequestBodyException(Response.Status.LENGTH_REQUIRED, "Length Required",
+                "Request body must be sent with a Content-Length header", true);
+        }
+
+        long length;
+        try {
+            length = Long.parseLong(lengthHeader.trim());
+        } catch (NumberFormatException e) {
+            throw new RequestBodyException(Response.Status.BAD_REQUEST, "Invalid Content-Length",
+                "Content-Length must be a number", true);
+        }
+
+        if (length > maxBytes) {
+            throw new RequestBodyException(Response.Status.PAYLOAD_TOO_LARGE, "Payload Too Large",
+                "Request body is " + length + " bytes, the limit is " + maxBytes + " bytes", true);
+        }
+        if (length <= 0) {
+            throw new RequestBodyException(Response.Status.BAD_REQUEST, "Missing request body",
+                "Request body must be a JSON object");
+        }
+
+        InputStream body = new BoundedInputStream(session.getInputStream(), length);
+        return new JsonReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Discards whatever is left of the body so the connection can be reused.
+     * Only ever reads up to the declared length.
+     *
+     * @param reader A reader returned by {@link #openJson}
+     */
+    static void finish(JsonReader reader) {
+        try {
+            reader.close();
+        } catch (IOException ignored) {
+            // The connection is closed by NanoHTTPD if it is no longer usable
+        }
+    }
+
+    /**
+     * Input stream that stops at the end of the body and drains the rest on close.
+     */
+    private static final class BoundedInputStream extends FilterInputStream {
+        private long remaining;
+
+        private BoundedInputStream(InputStream in, long length) {
+            super(in);
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = in.read();
+            if (b >= 0) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int n = in.read(buffer, offset, (int) Math.min(length, remaining));
+            if (n > 0) {
+                remaining -= n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = in.skip(Math.min(n, remaining));
+            remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(in.available(), remaining);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() throws IOException {
+            // Never close the connection stream itself, only consume this body
+            byte[] scratch = new byte[512];
+            while (remaining > 0 && read(scratch, 0, scratch.length) > 0) {
+                // discard
+            }
+        }
+    }
+}
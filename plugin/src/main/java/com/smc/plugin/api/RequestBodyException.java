@@ -0,0 +1,50 @@
+package com.smc.plugin.api;
+
+import fi.iki.elonen.NanoHTTPD.Response;
+
+/**
+ * Thrown when a request body is missing, too large or malformed.
+ */
+class RequestBodyException extends Exception {
+
+    private final Response.Status status;
+    private final String error;
+    private final boolean bodyUnread;
+
+    RequestBodyException(Response.Status status, String error, String message) {
+        this(status, error, message, false);
+    }
+
+    /**
+     * Creates a new exception.
+     *
+     * @param status HTTP status to respond with
+     * @param error Short error description
+     * @param message Detailed error message
+     * @param bodyUnread Whether the body was rejected before it was read
+     */
+    RequestBodyException(Response.Status status, String error, String message, boolean bodyUnread) {
+        super(message);
+        this.status = status;
+        this.error = error;
+        this.bodyUnread = bodyUnread;
+    }
+
+    /**
+     * Converts the exception into the response sent to the client.
+     *
+     * @return The error response
+     */
+    ApiResponse toResponse() {
+        ApiResponse response = ApiResponse.error(status, error, getMessage());
+        return bodyUnread ? response.closeConnection() : response;
+    }
+
+    Response.Status getStatus() {
+        return status;
+    }
+
+    boolean isBodyUnread() {
+        return bodyUnread;
+    }
+}
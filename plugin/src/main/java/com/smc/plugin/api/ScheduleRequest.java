@@ -0,0 +1,81 @@
+package com.smc.plugin.api;
+
+import java.io.IOException;
+import java.util.List;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import com.smc.plugin.command.CommandPriority;
+import com.smc.plugin.command.CommandSchedule;
+
+import fi.iki.elonen.NanoHTTPD.Response;
+
+/**
+ * Typed body of a PUT /api/schedules/{id} request.
+ *
+ * Parsed token by token like {@link CommandRequest}. Unknown fields are skipped.
+ */
+final class ScheduleRequest {
+
+    private ScheduleRequest() {
+    }
+
+    /**
+     * Reads a schedule definition.
+     * {@code commands} may be a single string or an array of strings, and
+     * exactly one of {@code interval_seconds} and {@code cron} must be given.
+     * {@code priority} defaults to bulk, {@code stop_on_failure} to false and
+     * {@code enabled} to true.
+     *
+     * @param reader Reader positioned at the start of the body
+     * @param id The schedule ID from the path
+     * @return The parsed schedule
+     * @throws RequestBodyException if the body is not a valid schedule
+     */
+    static CommandSchedule read(JsonReader reader, String id) throws RequestBodyException {
+        List<String> commands = null;
+        long intervalSeconds = 0L;
+        String cron = null;
+        String priorityName = CommandPriority.BULK.getLabel();
+        boolean stopOnFailure = false;
+        boolean enabled = true;
+        try {
+            if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                throw new RequestBodyException(Response.Status.BAD_REQUEST, "Invalid request body",
+                    "Request body must be a JSON object");
+            }
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if ("commands".equals(name) && reader.peek() != JsonToken.NULL) {
+                    commands = CommandRequest.readCommands(reader);
+                } else if ("interval_seconds".equals(name) && reader.peek() == JsonToken.NUMBER) {
+                    intervalSeconds = reader.nextLong();
+                } else if ("cron".equals(name) && reader.peek() == JsonToken.STRING) {
+                    cron = reader.nextString();
+                } else if ("priority".equals(name) && reader.peek() == JsonToken.STRING) {
+                    priorityName = reader.nextString();
+                } else if ("stop_on_failure".equals(name) && reader.peek() == JsonToken.BOOLEAN) {
+                    stopOnFailure = reader.nextBoolean();
+                } else if ("enabled".equals(name) && reader.peek() == JsonToken.BOOLEAN) {
+                    enabled = reader.nextBoolean();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } catch (IOException | IllegalStateException | NumberFormatException e) {
+            // MalformedJsonException and EOFException are IOExceptions
+            throw new RequestBodyException(Response.Status.BAD_REQUEST, "Invalid JSON", e.getMessage());
+        }
+
+        try {
+            return CommandSchedule.of(id, commands, intervalSeconds, cron, CommandPriority.parse(priorityName),
+                stopOnFailure, enabled);
+        } catch (IllegalArgumentException e) {
+            throw new RequestBodyException(Response.Status.BAD_REQUEST, "Invalid schedule", e.getMessage());
+        }
+    }
+}
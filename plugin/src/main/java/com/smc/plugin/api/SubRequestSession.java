@@ -0,0 +1,135 @@
+package com.smc.plugin.api;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import fi.iki.elonen.NanoHTTPD.CookieHandler;
+import fi.iki.elonen.NanoHTTPD.IHTTPSession;
+import fi.iki.elonen.NanoHTTPD.Method;
+
+/**
+ * An in-process request carried inside a batch request.
+ *
+ * Presents a sub-request to the regular handlers as if it had arrived on its
+ * own connection, sharing the parent's headers and cookies.
+ */
+class SubRequestSession implements IHTTPSession {
+
+    private final IHTTPSession parent;
+    private final Method method;
+    private final String uri;
+    private final Map<String, String> params;
+    private final Map<String, String> headers;
+    private final String body;
+
+    /**
+     * Creates a new sub-request.
+     *
+     * @param parent The batch request carrying this sub-request
+     * @param method The sub-request method
+     * @param uri The sub-request route
+     * @param params Query parameters
+     * @param body Request body, or null if there is none
+     * @param ifNoneMatch Entity tag for a conditional request, or null
+     */
+    SubRequestSession(IHTTPSession parent, Method method, String uri, Map<String, String> params,
+                      String body, String ifNoneMatch) {
+        this.parent = parent;
+        this.method = method;
+        this.uri = uri;
+        this.params = Collections.unmodifiableMap(new HashMap<>(params));
+        this.body = body;
+
+        Map<String, String> merged = new HashMap<>(parent.getHeaders());
+        // Body framing and conditionals belong to the batch, not to its parts
+        merged.remove("content-length");
+        merged.remove("content-type");
+        merged.remove("if-none-match");
+        if (ifNoneMatch != null) {
+            merged.put("if-none-match", ifNoneMatch);
+        }
+        if (body != null) {
+            merged.put("content-type", "application/json");
+            merged.put("content-length", Integer.toString(body.getBytes(StandardCharsets.UTF_8).length));
+        } else {
+            merged.put("content-length", "0");
+        }
+        this.headers = Collections.unmodifiableMap(merged);
+    }
+
+    @Override
+    public void execute() {
+        throw new UnsupportedOperationException("Sub-requests are dispatched by the batch handler");
+    }
+
+    @Override
+    public CookieHandler getCookies() {
+        return parent.getCookies();
+    }
+
+    @Override
+    public Map<String, String> getHeaders() {
+        return headers;
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        byte[] bytes = body != null ? body.getBytes(StandardCharsets.UTF_8) : new byte[0];
+        return new ByteArrayInputStream(bytes);
+    }
+
+    @Override
+    public Method getMethod() {
+        return method;
+    }
+
+    @Override
+    @Deprecated
+    public Map<String, String> getParms() {
+        return params;
+    }
+
+    @Override
+    public Map<String, List<String>> getParameters() {
+        Map<String, List<String>> parameters = new HashMap<>();
+        for (Map.Entry<String, String> entry : params.entrySet()) {
+            List<String> values = new ArrayList<>(1);
+            values.add(entry.getValue());
+            parameters.put(entry.getKey(), values);
+        }
+        return parameters;
+    }
+
+    @Override
+    public String getQueryParameterString() {
+        return null;
+    }
+
+    @Override
+    public String getUri() {
+        return uri;
+    }
+
+    @Override
+    public void parseBody(Map<String, String> files) {
+        if (body != null) {
+            files.put("postData", body);
+        }
+    }
+
+    @Override
+    public String getRemoteIpAddress() {
+        return parent.getRemoteIpAddress();
+    }
+
+    @Override
+    public String getRemoteHostName() {
+        return parent.getRemoteHostName();
+    }
+}
@@ -0,0 +1,631 @@
+package com.smc.plugin.audit;
+
+import com.smc.plugin.command.CommandExecutor;
+import com.smc.plugin.command.CommandPriority;
+import com.smc.plugin.metrics.LogLinearHistogram;
+import com.smc.plugin.metrics.PrometheusWriter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of commands submitted through the API and their results.
+ *
+ * The journal is a series of fixed-size segment files in the plugin data
+ * folder, each memory-mapped for writing. Appending a record encodes it on the
+ * calling thread and copies the bytes into the mapping under a short lock; no
+ * system call is made per command. A background thread forces dirty segments
+ * to disk at a fixed interval, so every record written in one interval is
+ * committed by a single flush. A segment that is full is flushed and replaced
+ * by a new one, and the oldest segments are deleted beyond the configured
+ * count.
+ *
+ * Record layout: length (int) and CRC32 (int) of the body, then the body:
+ * type (byte), timestamp in ms (long), ID (long) and the type's fields. A
+ * zero length marks the end of a segment; a record with a bad checksum, as
+ * left by a crash in the middle of a write, ends it as well. Command output is
+ * not journaled, only its length.
+ */
+public class CommandJournal {
+
+    private static final int MAGIC = 0x534D434A; // "SMCJ"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 16;
+    private static final int RECORD_HEADER_BYTES = 8;
+    private static final int ID_OFFSET = RECORD_HEADER_BYTES + 9;
+    private static final byte TYPE_SUBMIT = 1;
+    private static final byte TYPE_RESULT = 2;
+    private static final int MAX_COMMAND_CHARS = 8192;
+    private static final int MAX_ERROR_CHARS = 1024;
+    private static final String FILE_PREFIX = "journal-";
+    private static final String FILE_SUFFIX = ".bin";
+    private static final int APPEND_MAX_EXPONENT = 30;
+    private static final int APPEND_EXPORT_MIN_EXPONENT = 6;
+    private static final int APPEND_EXPORT_MAX_EXPONENT = 24;
+    private static final double NANOS_TO_SECONDS = 1e-9;
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final int maxSegments;
+    private final long flushIntervalMillis;
+    private final Logger logger;
+    private final Object lock;
+    private final LongAdder records;
+    private final LongAdder bytes;
+    private final LongAdder dropped;
+    private final LongAdder flushes;
+    private final LogLinearHistogram appendNanos;
+    private ScheduledExecutorService flusher;
+    // Guarded by lock
+    private long nextId;
+    private Segment current;
+    private boolean dirty;
+    private boolean closed;
+
+    /**
+     * Creates a journal. Nothing is written until {@link #open()} is called.
+     *
+     * @param directory Folder holding the segment files
+     * @param segmentBytes Size of each segment file
+     * @param maxSegments Most segment files kept; older ones are deleted
+     * @param flushIntervalMillis Time between flushes of written records to disk
+     * @param logger Logger for I/O problems
+     */
+    public CommandJournal(Path directory, int segmentBytes, int maxSegments, long flushIntervalMillis,
+                          Logger logger) {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.maxSegments = maxSegments;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.logger = logger;
+        // IDs stay unique and increasing across restarts without reading old segments
+        this.nextId = System.currentTimeMillis() * 1000L;
+        this.lock = new Object();
+        this.records = new LongAdder();
+        this.bytes = new LongAdder();
+        this.dropped = new LongAdder();
+        this.flushes = new LongAdder();
+        this.appendNanos = new LogLinearHistogram(APPEND_MAX_EXPONENT);
+    }
+
+    /**
+     * Starts a new segment and the flush thread.
+     *
+     * @throws IOException if the first segment cannot be created
+     */
+    public void open() throws IOException {
+        Files.createDirectories(directory);
+        synchronized (lock) {
+            current = createSegment();
+        }
+        deleteOldSegments();
+
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "SMC-Audit-Flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, flushIntervalMillis, flushIntervalMillis,
+            TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Flushes written records and stops accepting new ones.
+     */
+    public void close() {
+        if (flusher != null) {
+            flusher.shutdown();
+        }
+        Segment last;
+        synchronized (lock) {
+            closed = true;
+            last = current;
+        }
+        if (last != null) {
+            last.buffer.force();
+        }
+    }
+
+    /**
+     * Journals the submission of a batch of commands.
+     *
+     * @param client Name of the API client, never the key itself
+     * @param priority The scheduling lane
+     * @param commands The commands, in order
+     * @return The ID of the first command; the others follow consecutively
+     */
+    public long recordSubmission(String client, CommandPriority priority, List<String> commands) {
+        long now = System.currentTimeMillis();
+        byte[] clientBytes = utf8(client, MAX_COMMAND_CHARS);
+        byte[] priorityBytes = utf8(priority.getLabel(), MAX_COMMAND_CHARS);
+        ByteBuffer[] bodies = new ByteBuffer[commands.size()];
+        for (int i = 0; i < bodies.length; i++) {
+            byte[] commandBytes = utf8(commands.get(i), MAX_COMMAND_CHARS);
+            bodies[i] = body(TYPE_SUBMIT, now, 0L,
+                12 + clientBytes.length + priorityBytes.length + commandBytes.length);
+            putBytes(bodies[i], clientBytes);
+            putBytes(bodies[i], priorityBytes);
+            putBytes(bodies[i], commandBytes);
+        }
+        return append(bodies, true);
+    }
+
+    /**
+     * Journals the result of a command.
+     *
+     * @param id The command's ID from {@link #recordSubmission}
+     * @param result The result
+     */
+    public void recordResult(long id, CommandExecutor.CommandResult result) {
+        byte[] statusBytes = utf8(result.getStatus().getLabel(), MAX_ERROR_CHARS);
+        byte[] errorBytes = result.getError() != null ? utf8(result.getError(), MAX_ERROR_CHARS) : null;
+        ByteBuffer body = body(TYPE_RESULT, System.currentTimeMillis(), id,
+            4 + statusBytes.length + 3 + 8 + 8 + 4 + 4 + (errorBytes != null ? errorBytes.length : 0));
+        putBytes(body, statusBytes);
+        body.put((byte) (result.isSuccess() ? 1 : 0));
+        body.put((byte) (result.isCached() ? 1 : 0));
+        body.put((byte) (result.isTruncated() ? 1 : 0));
+        body.putLong(result.getQueueNanos() / 1000L);
+        body.putLong(result.getExecuteNanos() / 1000L);
+        body.putInt(result.getOutput() != null ? result.getOutput().length() : 0);
+        if (errorBytes != null) {
+            putBytes(body, errorBytes);
+        } else {
+            body.putInt(-1);
+        }
+        append(new ByteBuffer[] {body}, false);
+    }
+
+    /**
+     * Finds journaled commands, newest first.
+     *
+     * @param startTime Earliest submission time (ms), null for no lower bound
+     * @param endTime Latest submission time (ms), null for no upper bound
+     * @param client Only commands of this client, null for all
+     * @param beforeId Only commands with a smaller ID, null for the newest
+     * @param limit Most entries to return
+     * @return Matching commands joined with their results, if journaled
+     * @throws UncheckedIOException if a segment cannot be read
+     */
+    public List<Entry> query(Long startTime, Long endTime, String client, Long beforeId, int limit) {
+        Segment live;
+        ByteBuffer liveView;
+        synchronized (lock) {
+            live = current;
+            liveView = live != null ? (ByteBuffer) live.buffer.duplicate().flip() : null;
+        }
+
+        List<Path> segments = listSegments();
+        List<Entry> page = new ArrayList<>();
+        // Results are written after their submission, so they are in the same or a newer segment
+        Map<Long, Entry> results = new HashMap<>();
+        long newerStart = Long.MAX_VALUE;
+        for (int i = segments.size() - 1; i >= 0 && page.size() < limit; i--) {
+            Path path = segments.get(i);
+            long segmentStart = startMillis(path);
+            if (startTime != null && newerStart <= startTime) {
+                // Everything in this and older segments was submitted before startTime
+                break;
+            }
+            boolean submissionsWanted = endTime == null || segmentStart <= endTime;
+            newerStart = segmentStart;
+
+            ByteBuffer view = live != null && path.equals(live.path) ? liveView : map(path);
+            if (view == null) {
+                continue;
+            }
+            List<Entry> submissions = new ArrayList<>();
+            readSegment(view, submissionsWanted ? submissions : null, results);
+
+            for (int j = submissions.size() - 1; j >= 0 && page.size() < limit; j--) {
+                Entry entry = submissions.get(j);
+                if ((beforeId != null && entry.id >= beforeId)
+                    || (startTime != null && entry.timestamp < startTime)
+                    || (endTime != null && entry.timestamp > endTime)
+                    || (client != null && !client.equals(entry.client))) {
+                    continue;
+                }
+                Entry result = results.get(entry.id);
+                if (result != null) {
+                    entry.attach(result);
+                }
+                page.add(entry);
+            }
+        }
+        return page;
+    }
+
+    /**
+     * Renders the journal metrics in Prometheus text format.
+     *
+     * @return The exposition text
+     */
+    public String toPrometheus() {
+        return new PrometheusWriter()
+            .family("smc_audit_records_total", "counter", "Records written to the command audit journal.")
+            .sample("smc_audit_records_total", null, records.sum())
+            .family("smc_audit_bytes_total", "counter", "Bytes written to the command audit journal.")
+            .sample("smc_audit_bytes_total", null, bytes.sum())
+            .family("smc_audit_dropped_total", "counter",
+                "Audit records lost because no segment could be written.")
+            .sample("smc_audit_dropped_total", null, dropped.sum())
+            .family("smc_audit_flushes_total", "counter", "Group commits of the audit journal to disk.")
+            .sample("smc_audit_flushes_total", null, flushes.sum())
+            .family("smc_audit_append_seconds", "histogram", "Time spent appending one audit record.")
+            .histogram("smc_audit_append_seconds", null, appendNanos,
+                NANOS_TO_SECONDS, APPEND_EXPORT_MIN_EXPONENT, APPEND_EXPORT_MAX_EXPONENT)
+            .toString();
+    }
+
+    /**
+     * Writes records to the current segment, rotating it when full.
+     *
+     * @param bodies Encoded records, checksums not yet set
+     * @param assignIds Whether to give the records consecutive new IDs
+     * @return The first assigned ID, or 0 if none were assigned
+     */
+    private long append(ByteBuffer[] bodies, boolean assignIds) {
+        long started = System.nanoTime();
+        long firstId = 0L;
+        List<Segment> full = null;
+        synchronized (lock) {
+            // Assigned under the lock so IDs increase in write order, which the query cursor relies on
+            if (assignIds) {
+                firstId = nextId;
+                nextId += bodies.length;
+            }
+            for (int i = 0; i < bodies.length; i++) {
+                if (closed || current == null) {
+                    dropped.add(bodies.length - i);
+                    break;
+                }
+                if (assignIds) {
+                    bodies[i].putLong(ID_OFFSET, firstId + i);
+                }
+                byte[] record = seal(bodies[i]);
+                if (current.buffer.remaining() < record.length) {
+                    try {
+                        Segment next = createSegment();
+                        if (full == null) {
+                            full = new ArrayList<>();
+                        }
+                        full.add(current);
+                        current = next;
+                    } catch (IOException e) {
+                        // Keep the full segment so a later append can retry the rotation
+                        dropped.add(bodies.length - i);
+                        logger.log(Level.WARNING, "Failed to rotate the command audit journal", e);
+                        break;
+                    }
+                }
+                current.buffer.put(record);
+                dirty = true;
+                records.increment();
+                bytes.add(record.length);
+            }
+        }
+
+        if (full != null) {
+            for (Segment segment : full) {
+                segment.buffer.force();
+            }
+            deleteOldSegments();
+        }
+        appendNanos.record(System.nanoTime() - started);
+        return firstId;
+    }
+
+    /**
+     * Fills in the length and checksum of an encoded record.
+     */
+    private static byte[] seal(ByteBuffer body) {
+        byte[] record = body.array();
+        CRC32 crc = new CRC32();
+        crc.update(record, RECORD_HEADER_BYTES, record.length - RECORD_HEADER_BYTES);
+        body.putInt(0, record.length - RECORD_HEADER_BYTES);
+        body.putInt(4, (int) crc.getValue());
+        return record;
+    }
+
+    private void flush() {
+        Segment segment;
+        synchronized (lock) {
+            if (!dirty || current == null) {
+                return;
+            }
+            dirty = false;
+            segment = current;
+        }
+        segment.buffer.force();
+        flushes.increment();
+    }
+
+    private Segment createSegment() throws IOException {
+        long start = System.currentTimeMillis();
+        Path path = directory.resolve(FILE_PREFIX + start + FILE_SUFFIX);
+        while (Files.exists(path)) {
+            path = directory.resolve(FILE_PREFIX + (++start) + FILE_SUFFIX);
+        }
+
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // The mapping stays valid after the channel is closed
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        }
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putLong(start);
+        return new Segment(path, buffer);
+    }
+
+    private void deleteOldSegments() {
+        List<Path> segments = listSegments();
+        for (int i = 0; i < segments.size() - maxSegments; i++) {
+            try {
+                Files.deleteIfExists(segments.get(i));
+            } catch (IOException e) {
+                // Still mapped somewhere, e.g. by a running query; retried on the next rotation
+                logger.log(Level.FINE, "Could not delete audit segment " + segments.get(i), e);
+            }
+        }
+    }
+
+    /**
+     * Lists the segment files, oldest first.
+     */
+    private List<Path> listSegments() {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, FILE_PREFIX + "*" + FILE_SUFFIX)) {
+            for (Path path : stream) {
+                if (startMillis(path) >= 0) {
+                    segments.add(path);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to list audit segments", e);
+        }
+        Collections.sort(segments, (a, b) -> Long.compare(startMillis(a), startMillis(b)));
+        return segments;
+    }
+
+    private static long startMillis(Path path) {
+        String name = path.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(FILE_PREFIX.length(), name.length() - FILE_SUFFIX.length()));
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            return -1L;
+        }
+    }
+
+    /**
+     * Maps a closed segment for reading.
+     *
+     * @return The segment contents, or null if it was deleted in the meantime
+     */
+    private static ByteBuffer map(Path path) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (java.nio.file.NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read audit segment " + path, e);
+        }
+    }
+
+    /**
+     * Decodes the records of a segment.
+     *
+     * @param view The segment contents
+     * @param submissions Receives submissions in write order, or null to skip them
+     * @param results Receives results by command ID
+     */
+    private static void readSegment(ByteBuffer view, List<Entry> submissions, Map<Long, Entry> results) {
+        if (view.remaining() < HEADER_BYTES || view.getInt(0) != MAGIC || view.getInt(4) != VERSION) {
+            return;
+        }
+        view.position(HEADER_BYTES);
+        CRC32 crc = new CRC32();
+        byte[] body = new byte[256];
+        while (view.remaining() >= RECORD_HEADER_BYTES) {
+            int length = view.getInt();
+            int checksum = view.getInt();
+            if (length <= 0 || length > view.remaining()) {
+                return;
+            }
+            if (body.length < length) {
+                body = new byte[Math.max(length, body.length * 2)];
+            }
+            view.get(body, 0, length);
+            crc.reset();
+            crc.update(body, 0, length);
+            if ((int) crc.getValue() != checksum) {
+                return;
+            }
+
+            ByteBuffer record = ByteBuffer.wrap(body, 0, length);
+            byte type = record.get();
+            long timestamp = record.getLong();
+            long id = record.getLong();
+            if (type == TYPE_SUBMIT && submissions != null) {
+                submissions.add(new Entry(id, timestamp, getString(record), getString(record), getString(record)));
+            } else if (type == TYPE_RESULT) {
+                Entry result = new Entry(id, timestamp, null, null, null);
+                result.status = getString(record);
+                result.success = record.get() != 0;
+                result.cached = record.get() != 0;
+                result.truncated = record.get() != 0;
+                result.queueMicros = record.getLong();
+                result.executeMicros = record.getLong();
+                result.outputChars = record.getInt();
+                result.error = getString(record);
+                result.completedAt = timestamp;
+                results.put(id, result);
+            }
+        }
+    }
+
+    private static ByteBuffer body(byte type, long timestamp, long id, int fieldBytes) {
+        ByteBuffer body = ByteBuffer.wrap(new byte[RECORD_HEADER_BYTES + 17 + fieldBytes]);
+        body.position(RECORD_HEADER_BYTES);
+        body.put(type);
+        body.putLong(timestamp);
+        body.putLong(id);
+        return body;
+    }
+
+    private static byte[] utf8(String value, int maxChars) {
+        String bounded = value.length() > maxChars ? value.substring(0, maxChars) : value;
+        return bounded.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void putBytes(ByteBuffer buffer, byte[] value) {
+        buffer.putInt(value.length);
+        buffer.put(value);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        String value = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    private static final class Segment {
+        private final Path path;
+        private final MappedByteBuffer buffer;
+
+        private Segment(Path path, MappedByteBuffer buffer) {
+            this.path = path;
+            this.buffer = buffer;
+        }
+    }
+
+    /**
+     * A journaled command and, once journaled, its result.
+     */
+    public static final class Entry {
+        private final long id;
+        private final long timestamp;
+        private final String client;
+        private final String priority;
+        private final String command;
+        private String status;
+        private boolean success;
+        private boolean cached;
+        private boolean truncated;
+        private long queueMicros;
+        private long executeMicros;
+        private int outputChars;
+        private String error;
+        private Long completedAt;
+
+        private Entry(long id, long timestamp, String client, String priority, String command) {
+            this.id = id;
+            this.timestamp = timestamp;
+            this.client = client;
+            this.priority = priority;
+            this.command = command;
+        }
+
+        private void attach(Entry result) {
+            status = result.status;
+            success = result.success;
+            cached = result.cached;
+            truncated = result.truncated;
+            queueMicros = result.queueMicros;
+            executeMicros = result.executeMicros;
+            outputChars = result.outputChars;
+            error = result.error;
+            completedAt = result.completedAt;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public String getClient() {
+            return client;
+        }
+
+        public String getPriority() {
+            return priority;
+        }
+
+        public String getCommand() {
+            return command;
+        }
+
+        /**
+         * Checks whether the command's result was journaled.
+         *
+         * @return false while the command is pending, or if the server stopped before it finished
+         */
+        public boolean isCompleted() {
+            return completedAt != null;
+        }
+
+        public String getStatus() {
+            return status;
+        }
+
+        public boolean isSuccess() {
+            return success;
+        }
+
+        public boolean isCached() {
+            return cached;
+        }
+
+        public boolean isTruncated() {
+            return truncated;
+        }
+
+        public long getQueueMicros() {
+            return queueMicros;
+        }
+
+        public long getExecuteMicros() {
+            return executeMicros;
+        }
+
+        public int getOutputChars() {
+            return outputChars;
+        }
+
+        public String getError() {
+            return error;
+        }
+
+        public Long getCompletedAt() {
+            return completedAt;
+        }
+    }
+}
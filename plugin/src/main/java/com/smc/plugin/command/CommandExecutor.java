@@ -1,15 +1,18 @@
 package com.smc.plugin.command;
 
 import com.smc.plugin.SMCPlugin;
+import com.smc.plugin.audit.CommandJournal;
 import org.bukkit.Bukkit;
 import org.bukkit.command.CommandSender;
 import org.bukkit.command.ConsoleCommandSender;
 
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 
 /**
@@ -25,9 +28,17 @@ import java.util.logging.Level;
  */
 public class CommandExecutor {
     
+    /**
+     * Client name used for commands that are not tied to an API key.
+     */
+    private static final String DEFAULT_CLIENT = "default";
+    
     private final SMCPlugin plugin;
     private final int timeoutSeconds;
-    private final List<String> commandBlacklist;
+    private final CommandPolicy commandPolicy;
+    private final int maxOutputChars;
+    private final CommandScheduler scheduler;
+    private final CommandResultCache resultCache;
     
     /**
      * Creates a new command executor.
@@ -37,7 +48,42 @@ public class CommandExecutor {
     public CommandExecutor(SMCPlugin plugin) {
         this.plugin = plugin;
         this.timeoutSeconds = plugin.getConfigManager().getCommandTimeoutSeconds();
-        this.commandBlacklist = plugin.getConfigManager().getCommandBlacklist();
+        this.commandPolicy = plugin.getConfigManager().getCommandPolicy();
+        this.maxOutputChars = plugin.getConfigManager().getMaxCommandOutputChars();
+        this.scheduler = new CommandScheduler(plugin, this::runCommand);
+        this.resultCache = new CommandResultCache(plugin);
+    }
+    
+    /**
+     * Starts the main-thread command queue.
+     */
+    public void start() {
+        scheduler.start();
+    }
+    
+    /**
+     * Stops the main-thread command queue, failing commands that have not run.
+     */
+    public void shutdown() {
+        scheduler.shutdown();
+    }
+    
+    /**
+     * Gets the main-thread command queue.
+     * 
+     * @return The command scheduler
+     */
+    public CommandScheduler getScheduler() {
+        return scheduler;
+    }
+    
+    /**
+     * Gets the cache of read-only command results.
+     * 
+     * @return The result cache
+     */
+    public CommandResultCache getResultCache() {
+        return resultCache;
     }
     
     /**
@@ -47,93 +93,248 @@ public class CommandExecutor {
      * @return The command result containing output and success status
      */
     public CommandResult executeCommand(String command) {
-        // Validate the command
-        ValidationResult validation = validateCommand(command);
-        if (!validation.isValid()) {
-            return CommandResult.failure(command, validation.getErrorMessage());
-        }
-        
+        return executeCommands(Collections.singletonList(command)).get(0);
+    }
+    
+    /**
+     * Executes multiple commands in sequence and returns all results.
+     * 
+     * @param commands The list of commands to execute
+     * @return List of command results in the same order as input
+     */
+    public List<CommandResult> executeCommands(List<String> commands) {
+        return executeCommands(commands, false);
+    }
+    
+    /**
+     * Executes multiple commands in sequence within a single server tick and
+     * returns all results.
+     * 
+     * @param commands The list of commands to execute
+     * @param stopOnFailure Skip the remaining commands once one fails; if any
+     *                      command is invalid, none are run
+     * @return List of command results in the same order as input
+     */
+    public List<CommandResult> executeCommands(List<String> commands, boolean stopOnFailure) {
+        return executeCommands(commands, stopOnFailure, DEFAULT_CLIENT, CommandPriority.NORMAL);
+    }
+    
+    /**
+     * Executes multiple commands in sequence on behalf of an API client and
+     * returns all results.
+     * 
+     * @param commands The list of commands to execute
+     * @param stopOnFailure Skip the remaining commands once one fails; if any
+     *                      command is invalid, none are run
+     * @param client Name of the API client, used to share its lane fairly with other clients
+     * @param priority The scheduling lane
+     * @return List of command results in the same order as input
+     */
+    public List<CommandResult> executeCommands(List<String> commands, boolean stopOnFailure,
+                                               String client, CommandPriority priority) {
+        CommandScheduler.Batch batch = submitCommands(commands, stopOnFailure, client, priority);
         try {
-            // Execute the command asynchronously with timeout
-            CompletableFuture<CommandResult> future = executeCommandAsync(command);
-            return future.get(timeoutSeconds, TimeUnit.SECONDS);
+            return batch.getResults().get(timeoutSeconds, TimeUnit.SECONDS);
             
         } catch (TimeoutException e) {
+            // Nobody is waiting for the rest any more, so they must not run later
             String error = "Command execution timed out after " + timeoutSeconds + " seconds";
-            plugin.getLogger().warning("Command timeout: " + command);
-            return CommandResult.failure(command, error);
+            int cancelled = batch.cancel("Cancelled: " + error);
+            plugin.getLogger().warning("Command batch timeout (" + commands.size() + " commands, "
+                + cancelled + " cancelled before they started)");
+            return batch.snapshot(error + " while running");
             
         } catch (Exception e) {
             String error = "Command execution failed: " + e.getMessage();
-            plugin.getLogger().log(Level.SEVERE, "Error executing command: " + command, e);
-            return CommandResult.failure(command, error);
+            batch.cancel("Cancelled: " + error);
+            plugin.getLogger().log(Level.SEVERE, "Error executing command batch", e);
+            return batch.snapshot(error);
         }
     }
     
     /**
-     * Executes multiple commands in sequence and returns all results.
+     * Validates a command and schedules it on the main server thread without
+     * waiting for it to run.
      * 
-     * @param commands The list of commands to execute
-     * @return List of command results in the same order as input
+     * @param command The command to execute
+     * @return A future completed with the command result; invalid commands complete at once
      */
-    public List<CommandResult> executeCommands(List<String> commands) {
-        List<CommandResult> results = new ArrayList<>();
+    public CompletableFuture<CommandResult> submitCommand(String command) {
+        return submitCommands(Collections.singletonList(command)).getResults()
+            .thenApply(results -> results.get(0));
+    }
+    
+    /**
+     * Schedules several commands without waiting for them.
+     * 
+     * @param commands The commands to execute
+     * @return The queued batch
+     * @see #submitCommands(List, boolean)
+     */
+    public CommandScheduler.Batch submitCommands(List<String> commands) {
+        return submitCommands(commands, false);
+    }
+    
+    /**
+     * Queues several commands to run back to back on the main thread, without
+     * waiting for them. The batch runs within one tick unless it exceeds the
+     * scheduler's tick budget. Each command gets its own output capture and a
+     * failing command does not affect the others unless stopOnFailure is set.
+     * 
+     * @param commands The commands to execute
+     * @param stopOnFailure Skip the remaining commands once one fails; if any
+     *                      command is invalid, none are run
+     * @return The queued batch, which can be cancelled until its commands start
+     */
+    public CommandScheduler.Batch submitCommands(List<String> commands, boolean stopOnFailure) {
+        return submitCommands(commands, stopOnFailure, DEFAULT_CLIENT, CommandPriority.NORMAL);
+    }
+    
+    /**
+     * Queues several commands on behalf of an API client, without waiting for them.
+     * 
+     * @param commands The commands to execute
+     * @param stopOnFailure Skip the remaining commands once one fails; if any
+     *                      command is invalid, none are run
+     * @param client Name of the API client, used to share its lane fairly with other clients
+     * @param priority The scheduling lane
+     * @return The queued batch, which can be cancelled until its commands start
+     * @see CommandScheduler
+     */
+    public CommandScheduler.Batch submitCommands(List<String> commands, boolean stopOnFailure,
+                                                                 String client, CommandPriority priority) {
+        return submitCommands(commands, stopOnFailure, client, priority, null);
+    }
+    
+    /**
+     * Queues several commands on behalf of an API client and hands their
+     * output to a listener as it is produced, instead of buffering it.
+     * 
+     * @param commands The commands to execute
+     * @param stopOnFailure Skip the remaining commands once one fails; if any
+     *                      command is invalid, none are run
+     * @param client Name of the API client, used to share its lane fairly with other clients
+     * @param priority The scheduling lane
+     * @param listener Receives output lines and results on the main thread, or null
+     * @return The queued batch, which can be cancelled until its commands start
+     */
+    public CommandScheduler.Batch submitCommands(List<String> commands, boolean stopOnFailure,
+                                                 String client, CommandPriority priority,
+                                                 CommandOutputListener listener) {
+        // Validate everything up front so an invalid command never leaves a batch half-run
+        CommandResult[] results = new CommandResult[commands.size()];
+        boolean anyInvalid = false;
+        for (int i = 0; i < results.length; i++) {
+            String command = commands.get(i);
+            ValidationResult validation = validateCommand(command);
+            if (!validation.isValid()) {
+                results[i] = CommandResult.rejected(command, validation.getErrorMessage());
+                anyInvalid = true;
+            }
+        }
         
-        for (String command : commands) {
-            CommandResult result = executeCommand(command);
-            results.add(result);
+        if (anyInvalid && stopOnFailure) {
+            for (int i = 0; i < results.length; i++) {
+                if (results[i] == null) {
+                    results[i] = CommandResult.skipped(commands.get(i));
+                }
+            }
         }
         
-        return results;
+        // Answer leading read-only commands from the cache; anything after the first
+        // other command must see its effects, so it always goes through the queue
+        if (listener == null) {
+            for (int i = 0; i < results.length && results[i] == null; i++) {
+                String key = resultCache.keyOf(commands.get(i));
+                if (key == null) {
+                    break;
+                }
+                results[i] = resultCache.get(key, commands.get(i));
+                if (results[i] == null) {
+                    break;
+                }
+            }
+        }
+        
+        // Journal the submission before anything can run, and each result once the batch is done
+        CommandJournal journal = plugin.getCommandJournal();
+        long firstId = journal != null ? journal.recordSubmission(client, priority, commands) : 0L;
+        
+        CommandScheduler.Batch batch = scheduler.submit(client, priority, commands, results, stopOnFailure, listener);
+        if (journal != null) {
+            batch.getResults().thenAccept(finished -> {
+                for (int i = 0; i < finished.size(); i++) {
+                    journal.recordResult(firstId + i, finished.get(i));
+                }
+            });
+        }
+        return batch;
     }
     
     /**
-     * Executes a command asynchronously on the main server thread.
+     * Runs a validated command. Must be called on the main server thread.
      * 
      * @param command The command to execute
-     * @return A CompletableFuture that will contain the command result
+     * @param listener Receives each output line instead of the result, or null
+     * @return The command result; exceptions are reported as a failed result
      */
-    private CompletableFuture<CommandResult> executeCommandAsync(String command) {
-        CompletableFuture<CommandResult> future = new CompletableFuture<>();
-        
-        // Schedule command execution on the main thread
-        Bukkit.getScheduler().runTask(plugin, () -> {
-            try {
-                // Get the console command sender
-                ConsoleCommandSender console = Bukkit.getConsoleSender();
-                
-                // Create a custom command sender to capture output
-                CommandOutputCapture outputCapture = new CommandOutputCapture(console);
-                
-                // Remove leading slash if present
-                String cleanCommand = command.trim();
-                if (cleanCommand.startsWith("/")) {
-                    cleanCommand = cleanCommand.substring(1);
-                }
-                
-                // Execute the command
-                boolean success = Bukkit.dispatchCommand(outputCapture, cleanCommand);
-                
-                // Get the captured output
-                String output = outputCapture.getOutput();
-                
-                // Create the result
-                CommandResult result;
-                if (success) {
-                    result = CommandResult.success(command, output);
-                } else {
-                    result = CommandResult.failure(command, "Command execution returned false");
-                }
-                
-                future.complete(result);
-                
-            } catch (Exception e) {
-                plugin.getLogger().log(Level.SEVERE, "Error in command execution: " + command, e);
-                future.complete(CommandResult.failure(command, "Exception: " + e.getMessage()));
+    private CommandResult runCommand(String command, Consumer<String> listener) {
+        // Streamed output cannot be replayed, so streamed commands neither use nor fill the cache
+        String cacheKey = resultCache.keyOf(command);
+        if (cacheKey != null && listener == null) {
+            // An identical command queued earlier may have just run
+            CommandResult cached = resultCache.get(cacheKey, command);
+            if (cached != null) {
+                return cached;
             }
-        });
+            CommandResult result = dispatch(command, null);
+            resultCache.put(cacheKey, result);
+            return result;
+        }
         
-        return future;
+        CommandResult result = dispatch(command, listener);
+        if (cacheKey == null) {
+            resultCache.invalidateAll();
+        }
+        return result;
+    }
+    
+    /**
+     * Dispatches a command with output capture. Must be called on the main server thread.
+     */
+    private CommandResult dispatch(String command, Consumer<String> listener) {
+        try {
+            // Get the console command sender
+            ConsoleCommandSender console = Bukkit.getConsoleSender();
+            
+            // Create a custom command sender to capture output
+            CommandOutputCapture outputCapture = new CommandOutputCapture(console, maxOutputChars, listener);
+            
+            // Remove leading slash if present
+            String cleanCommand = command.trim();
+            if (cleanCommand.startsWith("/")) {
+                cleanCommand = cleanCommand.substring(1);
+            }
+            
+            // Execute the command
+            long started = System.nanoTime();
+            boolean success = Bukkit.dispatchCommand(outputCapture, cleanCommand);
+            long dispatched = System.nanoTime();
+            
+            // Get the captured output
+            String output = outputCapture.getOutput();
+            long captured = System.nanoTime();
+            
+            // Create the result
+            CommandResult result = success
+                ? CommandResult.success(command, output, outputCapture.isTruncated())
+                : CommandResult.failure(command, "Command execution returned false");
+            return result.withTimings(0L, dispatched - started, captured - dispatched);
+            
+        } catch (Exception e) {
+            plugin.getLogger().log(Level.SEVERE, "Error in command execution: " + command, e);
+            return CommandResult.failure(command, "Exception: " + e.getMessage());
+        }
     }
     
     /**
@@ -153,9 +354,14 @@ public class CommandExecutor {
             return ValidationResult.invalid("Command is too long (max 1000 characters)");
         }
         
-        // Check if command is blacklisted
-        if (plugin.getConfigManager().isCommandBlacklisted(command)) {
-            return ValidationResult.invalid("Command is blacklisted and cannot be executed");
+        // Check the blacklist and policy rules
+        switch (commandPolicy.evaluate(command)) {
+            case DENIED:
+                return ValidationResult.invalid("Command is blacklisted and cannot be executed");
+            case NOT_ALLOWED:
+                return ValidationResult.invalid("Command is not on the allowlist and cannot be executed");
+            default:
+                break;
         }
         
         return ValidationResult.valid();
@@ -165,16 +371,60 @@ public class CommandExecutor {
      * Represents the result of a command execution.
      */
     public static class CommandResult {
+        
+        /**
+         * Whether a command actually ran.
+         */
+        public enum Status {
+            /** The command was dispatched; see {@link #isSuccess()} for the outcome. */
+            EXECUTED,
+            /** The command failed validation and was never queued. */
+            REJECTED,
+            /** The command was not run because an earlier command in its batch failed. */
+            SKIPPED,
+            /** The command was removed from the queue before it started. */
+            CANCELLED;
+            
+            /**
+             * Gets the lowercase name used in API responses.
+             * 
+             * @return The status label
+             */
+            public String getLabel() {
+                return name().toLowerCase(Locale.ROOT);
+            }
+        }
+        
         private final String command;
         private final String output;
         private final boolean success;
         private final String error;
+        private final Status status;
+        private final boolean truncated;
+        private final boolean cached;
+        
+        private final long queueNanos;
+        private final long executeNanos;
+        private final long captureNanos;
         
-        private CommandResult(String command, String output, boolean success, String error) {
+        private CommandResult(String command, String output, boolean success, String error, Status status,
+                              boolean truncated) {
+            this(command, output, success, error, status, truncated, false, 0L, 0L, 0L);
+        }
+        
+        private CommandResult(String command, String output, boolean success, String error, Status status,
+                              boolean truncated, boolean cached, long queueNanos, long executeNanos,
+                              long captureNanos) {
             this.command = command;
             this.output = output;
             this.success = success;
             this.error = error;
+            this.status = status;
+            this.truncated = truncated;
+            this.cached = cached;
+            this.queueNanos = queueNanos;
+            this.executeNanos = executeNanos;
+            this.captureNanos = captureNanos;
         }
         
         /**
@@ -185,7 +435,19 @@ public class CommandExecutor {
          * @return A successful command result
          */
         public static CommandResult success(String command, String output) {
-            return new CommandResult(command, output, true, null);
+            return success(command, output, false);
+        }
+        
+        /**
+         * Creates a successful command result.
+         * 
+         * @param command The executed command
+         * @param output The command output
+         * @param truncated Whether part of the output was dropped
+         * @return A successful command result
+         */
+        public static CommandResult success(String command, String output, boolean truncated) {
+            return new CommandResult(command, output, true, null, Status.EXECUTED, truncated);
         }
         
         /**
@@ -196,7 +458,64 @@ public class CommandExecutor {
          * @return A failed command result
          */
         public static CommandResult failure(String command, String error) {
-            return new CommandResult(command, "", false, error);
+            return new CommandResult(command, "", false, error, Status.EXECUTED, false);
+        }
+        
+        /**
+         * Creates a result for a command that was not run because an earlier
+         * command in its batch failed.
+         * 
+         * @param command The skipped command
+         * @return A skipped command result
+         */
+        public static CommandResult skipped(String command) {
+            return new CommandResult(command, "", false, "Skipped after an earlier command failed",
+                Status.SKIPPED, false);
+        }
+        
+        /**
+         * Creates a result for a command that failed validation.
+         * 
+         * @param command The rejected command
+         * @param error Why the command was rejected
+         * @return A rejected command result
+         */
+        public static CommandResult rejected(String command, String error) {
+            return new CommandResult(command, "", false, error, Status.REJECTED, false);
+        }
+        
+        /**
+         * Creates a result for a command that was cancelled before it started.
+         * 
+         * @param command The cancelled command
+         * @param reason Why the command was cancelled
+         * @return A cancelled command result
+         */
+        public static CommandResult cancelled(String command, String reason) {
+            return new CommandResult(command, "", false, reason, Status.CANCELLED, false);
+        }
+        
+        /**
+         * Creates a copy of this result served from the result cache.
+         * 
+         * @param command The command as sent by the client
+         * @return The cached result
+         */
+        CommandResult cachedAs(String command) {
+            return new CommandResult(command, output, success, error, status, truncated, true, 0L, 0L, 0L);
+        }
+        
+        /**
+         * Creates a copy of this result with its phase timings.
+         * 
+         * @param queueNanos Time from submission until the main thread picked the command up
+         * @param executeNanos Time spent dispatching the command
+         * @param captureNanos Time spent collecting the output after dispatch
+         * @return The timed result
+         */
+        CommandResult withTimings(long queueNanos, long executeNanos, long captureNanos) {
+            return new CommandResult(command, output, success, error, status, truncated, cached,
+                queueNanos, executeNanos, captureNanos);
         }
         
         public String getCommand() {
@@ -215,6 +534,59 @@ public class CommandExecutor {
             return error;
         }
         
+        public Status getStatus() {
+            return status;
+        }
+        
+        public boolean isSkipped() {
+            return status == Status.SKIPPED;
+        }
+        
+        /**
+         * Checks whether the output was cut down to the configured limit.
+         * 
+         * @return true if part of the output was dropped
+         */
+        public boolean isTruncated() {
+            return truncated;
+        }
+        
+        /**
+         * Checks whether the result was served from the result cache instead of running the command.
+         * 
+         * @return true for a cached result
+         */
+        public boolean isCached() {
+            return cached;
+        }
+        
+        /**
+         * Gets how long the command waited for the main thread.
+         * 
+         * @return Queue wait in nanoseconds, 0 if the command never ran
+         */
+        public long getQueueNanos() {
+            return queueNanos;
+        }
+        
+        /**
+         * Gets how long dispatching the command took on the main thread.
+         * 
+         * @return Execution time in nanoseconds, 0 if the command never ran
+         */
+        public long getExecuteNanos() {
+            return executeNanos;
+        }
+        
+        /**
+         * Gets how long collecting the output took after dispatch.
+         * 
+         * @return Capture time in nanoseconds, 0 if the command never ran
+         */
+        public long getCaptureNanos() {
+            return captureNanos;
+        }
+        
         @Override
         public String toString() {
             if (success) {
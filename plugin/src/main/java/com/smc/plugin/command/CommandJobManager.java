@@ -0,0 +1,279 @@
+package com.smc.plugin.command;
+
+import com.smc.plugin.SMCPlugin;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+/**
+ * Runs commands as asynchronous jobs.
+ *
+ * Submitting a job only schedules its commands, so the HTTP thread returns at
+ * once with a job ID and the client fetches the results later. Jobs are kept
+ * in a bounded table: finished jobs are evicted once their time-to-live has
+ * passed, and a full table of unfinished jobs rejects new submissions instead
+ * of growing without limit. A job can be cancelled until its commands start.
+ */
+public class CommandJobManager {
+
+    /**
+     * Minimum time between two sweeps of the job table.
+     */
+    private static final long SWEEP_INTERVAL_MILLIS = 1000L;
+
+    private final SMCPlugin plugin;
+    private final int maxJobs;
+    private final long ttlMillis;
+    private final Map<String, Job> jobs;
+    private final SecureRandom random;
+    private final AtomicLong lastSweep;
+
+    /**
+     * Creates a new job manager.
+     *
+     * @param plugin The plugin instance
+     */
+    public CommandJobManager(SMCPlugin plugin) {
+        this.plugin = plugin;
+        this.maxJobs = plugin.getConfigManager().getMaxCommandJobs();
+        this.ttlMillis = plugin.getConfigManager().getCommandJobTtlSeconds() * 1000L;
+        this.jobs = new ConcurrentHashMap<>();
+        this.random = new SecureRandom();
+        this.lastSweep = new AtomicLong();
+    }
+
+    /**
+     * Submits commands to run as a job.
+     *
+     * @param client Name of the API client submitting the job
+     * @param commands The commands to run, in order
+     * @param stopOnFailure Skip the remaining commands once one fails
+     * @param priority The scheduling lane
+     * @return The new job
+     * @throws IllegalStateException if the job table is full of unfinished jobs
+     */
+    public Job submit(String client, List<String> commands, boolean stopOnFailure, CommandPriority priority) {
+        long now = System.currentTimeMillis();
+        sweep(now, jobs.size() >= maxJobs);
+        if (jobs.size() >= maxJobs) {
+            throw new IllegalStateException("Too many unfinished command jobs (max " + maxJobs + ")");
+        }
+
+        Job job = new Job(newId(), client, commands, now);
+        jobs.put(job.id, job);
+
+        CompletableFuture<List<CommandExecutor.CommandResult>> results;
+        try {
+            job.batch = plugin.getCommandExecutor().submitCommands(commands, stopOnFailure, client, priority);
+            results = job.batch.getResults();
+        } catch (Exception e) {
+            // Scheduling fails once the plugin is being disabled
+            results = new CompletableFuture<>();
+            results.completeExceptionally(e);
+        }
+        results.whenComplete((list, error) -> {
+            if (error != null) {
+                plugin.getLogger().log(Level.WARNING, "Command job " + job.id + " failed", error);
+            }
+            job.complete(list, error);
+        });
+        return job;
+    }
+
+    /**
+     * Looks up a job.
+     *
+     * @param client Name of the API client asking; jobs are only visible to the client that submitted them
+     * @param id The job ID
+     * @return The job, or null if it does not exist, has expired or belongs to another client
+     */
+    public Job get(String client, String id) {
+        Job job = jobs.get(id);
+        if (job == null || !job.client.equals(client) || job.isExpired(System.currentTimeMillis(), ttlMillis)) {
+            return null;
+        }
+        return job;
+    }
+
+    /**
+     * Cancels the commands of a job that have not started yet. Commands already
+     * run keep their results, and the job finishes once any running command returns.
+     *
+     * @param client Name of the API client asking; only the submitting client can cancel a job
+     * @param id The job ID
+     * @return The job, or null if it does not exist, has expired or belongs to another client
+     */
+    public Job cancel(String client, String id) {
+        Job job = get(client, id);
+        if (job == null) {
+            return null;
+        }
+        CommandScheduler.Batch batch = job.batch;
+        if (batch != null && !job.isDone()) {
+            // A job that already finished keeps its status
+            job.cancelRequested = true;
+            batch.cancel("Cancelled by client");
+        }
+        return job;
+    }
+
+    /**
+     * Gets the number of jobs in the table, including finished ones awaiting eviction.
+     *
+     * @return Job count
+     */
+    public int size() {
+        return jobs.size();
+    }
+
+    /**
+     * Fails every unfinished job. Called when the plugin is disabled, since
+     * commands still waiting for the main thread will never run.
+     */
+    public void shutdown() {
+        for (Job job : jobs.values()) {
+            job.complete(null, new IllegalStateException("Server is shutting down"));
+        }
+        jobs.clear();
+    }
+
+    /**
+     * Removes expired jobs. Runs at most once per interval unless forced by a full table.
+     */
+    private void sweep(long now, boolean force) {
+        long last = lastSweep.get();
+        if (!force && now - last < SWEEP_INTERVAL_MILLIS) {
+            return;
+        }
+        if (!lastSweep.compareAndSet(last, now)) {
+            return;
+        }
+
+        Iterator<Job> it = jobs.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().isExpired(now, ttlMillis)) {
+                it.remove();
+            }
+        }
+    }
+
+    private String newId() {
+        byte[] bytes = new byte[12];
+        random.nextBytes(bytes);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    /**
+     * A submitted group of commands and, once finished, their results.
+     */
+    public static final class Job {
+        private final String id;
+        private final String client;
+        private final List<String> commands;
+        private final long createdAt;
+        private final CompletableFuture<List<CommandExecutor.CommandResult>> done;
+        private volatile CommandScheduler.Batch batch;
+        private volatile boolean cancelRequested;
+        private volatile long completedAt;
+        private volatile String error;
+
+        private Job(String id, String client, List<String> commands, long createdAt) {
+            this.id = id;
+            this.client = client;
+            this.commands = Collections.unmodifiableList(commands);
+            this.createdAt = createdAt;
+            this.done = new CompletableFuture<>();
+        }
+
+        private void complete(List<CommandExecutor.CommandResult> results, Throwable failure) {
+            if (done.isDone()) {
+                return;
+            }
+            if (failure != null) {
+                error = failure.getMessage() != null ? failure.getMessage() : failure.toString();
+            }
+            completedAt = System.currentTimeMillis();
+            done.complete(results != null ? Collections.unmodifiableList(results) : Collections.emptyList());
+        }
+
+        private boolean isExpired(long now, long ttlMillis) {
+            long completed = completedAt;
+            return completed != 0 && now - completed > ttlMillis;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public List<String> getCommands() {
+            return commands;
+        }
+
+        public long getCreatedAt() {
+            return createdAt;
+        }
+
+        /**
+         * Gets when the job finished.
+         *
+         * @return Unix timestamp in ms, or 0 while the job is still running
+         */
+        public long getCompletedAt() {
+            return completedAt;
+        }
+
+        public boolean isDone() {
+            return done.isDone();
+        }
+
+        /**
+         * Checks whether the client asked for the job to be cancelled.
+         *
+         * @return true once the job has been cancelled
+         */
+        public boolean isCancelRequested() {
+            return cancelRequested;
+        }
+
+        /**
+         * Gets why the job could not run to completion.
+         *
+         * @return The failure message, or null if every command ran
+         */
+        public String getError() {
+            return error;
+        }
+
+        /**
+         * Waits for the job to finish.
+         *
+         * @param timeoutMillis Longest time to wait; 0 returns immediately
+         * @return The results in command order, or null if the job is still running
+         * @throws InterruptedException if the waiting thread is interrupted
+         */
+        public List<CommandExecutor.CommandResult> await(long timeoutMillis) throws InterruptedException {
+            try {
+                if (timeoutMillis <= 0) {
+                    return done.getNow(null);
+                }
+                return done.get(timeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                return null;
+            } catch (ExecutionException e) {
+                // Never completed exceptionally; failures are recorded in error
+                return Collections.emptyList();
+            }
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.smc.plugin.command;
+
+import com.smc.plugin.metrics.LogLinearHistogram;
+import com.smc.plugin.metrics.PrometheusWriter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Latency of API commands per base command, split into the time spent
+ * waiting for the main thread, running the command and collecting its output.
+ *
+ * The number of tracked base commands is capped so clients sending arbitrary
+ * command names cannot grow the table; anything beyond the cap is counted
+ * under {@value #OTHER}.
+ */
+public class CommandLatencyStats {
+
+    /**
+     * Label used for base commands beyond the tracking cap.
+     */
+    public static final String OTHER = "other";
+
+    private static final int MAX_COMMANDS = 64;
+    private static final int LATENCY_MAX_EXPONENT = 27;
+    private static final int LATENCY_EXPORT_MIN_EXPONENT = 6;
+    private static final int LATENCY_EXPORT_MAX_EXPONENT = 26;
+    private static final double MICROS_TO_SECONDS = 1e-6;
+
+    private final Map<String, Stats> byCommand;
+
+    public CommandLatencyStats() {
+        this.byCommand = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Records a command that ran on the main thread.
+     *
+     * @param result The result, carrying its phase timings
+     */
+    public void record(CommandExecutor.CommandResult result) {
+        Stats stats = statsFor(baseCommand(result.getCommand()));
+        stats.queue.record(result.getQueueNanos() / 1000L);
+        stats.execute.record(result.getExecuteNanos() / 1000L);
+        stats.capture.record(result.getCaptureNanos() / 1000L);
+    }
+
+    /**
+     * Gets the tracked base commands ordered by total execution time, heaviest first.
+     *
+     * @param limit Most commands to return
+     * @return Base command and its stats
+     */
+    public List<Map.Entry<String, Stats>> heaviest(int limit) {
+        List<Map.Entry<String, Stats>> entries = new ArrayList<>(byCommand.entrySet());
+        Collections.sort(entries, (a, b) -> Long.compare(b.getValue().execute.getSum(), a.getValue().execute.getSum()));
+        return entries.size() > limit ? entries.subList(0, limit) : entries;
+    }
+
+    /**
+     * Renders the per-command histograms in Prometheus text format.
+     *
+     * @return The exposition text
+     */
+    public String toPrometheus() {
+        PrometheusWriter writer = new PrometheusWriter();
+        writePhase(writer, "smc_command_queue_seconds",
+            "Time commands waited for the main thread, by base command.", 0);
+        writePhase(writer, "smc_command_execution_seconds",
+            "Time commands spent running on the main thread, by base command.", 1);
+        writePhase(writer, "smc_command_capture_seconds",
+            "Time spent collecting command output, by base command.", 2);
+        return writer.toString();
+    }
+
+    private void writePhase(PrometheusWriter writer, String name, String help, int phase) {
+        writer.family(name, "histogram", help);
+        for (Map.Entry<String, Stats> entry : byCommand.entrySet()) {
+            Stats stats = entry.getValue();
+            LogLinearHistogram histogram = phase == 0 ? stats.queue : phase == 1 ? stats.execute : stats.capture;
+            writer.histogram(name, new String[] {"command", entry.getKey()}, histogram,
+                MICROS_TO_SECONDS, LATENCY_EXPORT_MIN_EXPONENT, LATENCY_EXPORT_MAX_EXPONENT);
+        }
+    }
+
+    private Stats statsFor(String base) {
+        Stats stats = byCommand.get(base);
+        if (stats != null) {
+            return stats;
+        }
+        if (byCommand.size() >= MAX_COMMANDS) {
+            return byCommand.computeIfAbsent(OTHER, key -> new Stats());
+        }
+        return byCommand.computeIfAbsent(base, key -> new Stats());
+    }
+
+    /**
+     * Extracts the lowercase base command, without a leading slash.
+     *
+     * @param command The command
+     * @return The base command
+     */
+    static String baseCommand(String command) {
+        int end = command.length();
+        int start = 0;
+        while (start < end && Character.isWhitespace(command.charAt(start))) {
+            start++;
+        }
+        if (start < end && command.charAt(start) == '/') {
+            start++;
+        }
+        int tokenEnd = start;
+        while (tokenEnd < end && !Character.isWhitespace(command.charAt(tokenEnd))) {
+            tokenEnd++;
+        }
+        return command.substring(start, tokenEnd).toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Phase histograms of one base command, in microseconds.
+     */
+    public static final class Stats {
+        private final LogLinearHistogram queue = new LogLinearHistogram(LATENCY_MAX_EXPONENT);
+        private final LogLinearHistogram execute = new LogLinearHistogram(LATENCY_MAX_EXPONENT);
+        private final LogLinearHistogram capture = new LogLinearHistogram(LATENCY_MAX_EXPONENT);
+
+        public LogLinearHistogram getQueue() {
+            return queue;
+        }
+
+        public LogLinearHistogram getExecute() {
+            return execute;
+        }
+
+        public LogLinearHistogram getCapture() {
+            return capture;
+        }
+    }
+}
@@ -10,41 +10,104 @@ import org.bukkit.permissions.PermissionAttachment;
 import org.bukkit.permissions.PermissionAttachmentInfo;
 import org.bukkit.plugin.Plugin;
 
+import java.util.ArrayDeque;
 import java.util.Set;
+import java.util.function.Consumer;
 
 /**
  * A custom CommandSender implementation that captures command output.
  * 
  * This class wraps the console command sender and intercepts all messages
  * sent during command execution, allowing us to capture the output.
+ * 
+ * Captured output is bounded: once it exceeds the limit, the first half of
+ * the limit is kept as is, the most recent lines fill the second half, and the
+ * lines in between are dropped as they arrive. Alternatively every line can be
+ * handed to a listener as it is sent, in which case nothing is buffered.
  */
 public class CommandOutputCapture implements ConsoleCommandSender {
     
     private final ConsoleCommandSender delegate;
-    private final StringBuilder outputBuffer;
+    private final Consumer<String> listener;
+    private final int halfLimit;
+    private final StringBuilder head;
+    private final ArrayDeque<String> tail;
+    private int tailChars;
+    private long omittedLines;
+    private boolean truncated;
     
     /**
      * Creates a new command output capture wrapper.
      * 
      * @param delegate The console command sender to wrap
+     * @param maxChars Most characters of output to keep
+     * @param listener Receives each output line instead of the buffer, or null to buffer
      */
-    public CommandOutputCapture(ConsoleCommandSender delegate) {
+    public CommandOutputCapture(ConsoleCommandSender delegate, int maxChars, Consumer<String> listener) {
         this.delegate = delegate;
-        this.outputBuffer = new StringBuilder();
+        this.listener = listener;
+        this.halfLimit = Math.max(1, maxChars / 2);
+        this.head = new StringBuilder();
+        this.tail = new ArrayDeque<>();
     }
     
     /**
-     * Gets the captured output.
+     * Gets the captured output. Truncated output has a marker line in place
+     * of the dropped lines.
      * 
      * @return The captured command output
      */
     public String getOutput() {
-        return outputBuffer.toString().trim();
+        StringBuilder output = new StringBuilder(head.length() + tailChars + 64);
+        output.append(head);
+        if (omittedLines > 0) {
+            output.append("... [").append(omittedLines).append(" lines omitted] ...\n");
+        }
+        for (String line : tail) {
+            output.append(line).append('\n');
+        }
+        return output.toString().trim();
+    }
+    
+    /**
+     * Checks whether any output was dropped or shortened.
+     * 
+     * @return true if the output was truncated
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+    
+    private void capture(String message) {
+        if (listener != null) {
+            listener.accept(message);
+            return;
+        }
+        
+        String line = message;
+        if (line.length() > halfLimit) {
+            line = line.substring(0, halfLimit) + "...";
+            truncated = true;
+        }
+        
+        // Lines go to the head until the first one that does not fit, then to the tail
+        if (tail.isEmpty() && head.length() + line.length() + 1 <= halfLimit) {
+            head.append(line).append('\n');
+            return;
+        }
+        
+        tail.add(line);
+        tailChars += line.length() + 1;
+        while (tailChars > halfLimit && tail.size() > 1) {
+            tailChars -= tail.poll().length() + 1;
+            omittedLines++;
+            truncated = true;
+        }
     }
     
     @Override
     public void sendMessage(String message) {
-        outputBuffer.append(message).append("\n");
+        capture(message);
     }
     
     @Override
@@ -56,7 +119,7 @@ public class CommandOutputCapture implements ConsoleCommandSender {
     
     @Override
     public void sendMessage(java.util.UUID sender, String message) {
-        outputBuffer.append(message).append("\n");
+        capture(message);
     }
     
     @Override
@@ -170,12 +233,12 @@ public class CommandOutputCapture implements ConsoleCommandSender {
     
     @Override
     public void sendRawMessage(String message) {
-        outputBuffer.append(message).append("\n");
+        capture(message);
     }
     
     @Override
     public void sendRawMessage(java.util.UUID sender, String message) {
-        outputBuffer.append(message).append("\n");
+        capture(message);
     }
     
     @Override
@@ -0,0 +1,27 @@
+package com.smc.plugin.command;
+
+/**
+ * Receives the output of a command batch while it runs.
+ *
+ * Both methods are called on the main server thread and must not block;
+ * implementations hand the data to another thread.
+ */
+public interface CommandOutputListener {
+
+    /**
+     * Called for each line a command sends.
+     *
+     * @param index Position of the command in its batch
+     * @param line The output line
+     */
+    void onOutput(int index, String line);
+
+    /**
+     * Called when a command has run. Commands that are rejected, skipped or
+     * cancelled never run and are only reported in the batch results.
+     *
+     * @param index Position of the command in its batch
+     * @param result The command result
+     */
+    void onResult(int index, CommandExecutor.CommandResult result);
+}
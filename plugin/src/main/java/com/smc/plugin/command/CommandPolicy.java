@@ -0,0 +1,313 @@
+package com.smc.plugin.command;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Compiled allow and deny rules for commands sent through the API.
+ *
+ * A rule is a command prefix made of space-separated tokens, matched
+ * case-insensitively against the leading tokens of a command:
+ * <ul>
+ *   <li>{@code stop} matches {@code stop} and {@code stop now}</li>
+ *   <li>{@code gamerule doDaylightCycle} matches only that game rule</li>
+ *   <li>{@code *} matches any single token, e.g. {@code op *}</li>
+ *   <li>a token ending in {@code *} matches by prefix, e.g. {@code plugman*}</li>
+ * </ul>
+ * A rule without a namespace also matches namespaced forms of its base
+ * command, so {@code stop} covers {@code minecraft:stop} and
+ * {@code bukkit:stop}; a rule with a namespace matches only that form.
+ *
+ * Rules are compiled once into a token trie. Evaluation walks the command
+ * string in place: no regular expressions, no splitting and no allocation,
+ * so the cost depends on the length of the command rather than the number
+ * of rules.
+ */
+public final class CommandPolicy {
+
+    /**
+     * Outcome of evaluating a command.
+     */
+    public enum Verdict {
+        /** The command may run. */
+        ALLOWED,
+        /** The command matches a deny rule. */
+        DENIED,
+        /** An allowlist is configured and the command matches none of its rules. */
+        NOT_ALLOWED
+    }
+
+    private final Node deny;
+    private final Node allow;
+    private final int ruleCount;
+
+    private CommandPolicy(Node deny, Node allow, int ruleCount) {
+        this.deny = deny;
+        this.allow = allow;
+        this.ruleCount = ruleCount;
+    }
+
+    /**
+     * Compiles a policy.
+     *
+     * @param denyRules Rules for commands that may never run; deny wins over allow
+     * @param allowRules Rules for the only commands that may run, or an empty list to allow all others
+     * @return The compiled policy
+     * @throws IllegalArgumentException if a rule is empty
+     */
+    public static CommandPolicy compile(List<String> denyRules, List<String> allowRules) {
+        Node deny = new Node();
+        for (String rule : denyRules) {
+            add(deny, rule);
+        }
+        Node allow = null;
+        if (!allowRules.isEmpty()) {
+            allow = new Node();
+            for (String rule : allowRules) {
+                add(allow, rule);
+            }
+        }
+        return new CommandPolicy(deny, allow, denyRules.size() + allowRules.size());
+    }
+
+    /**
+     * Evaluates a command.
+     *
+     * @param command The command, with or without a leading slash
+     * @return The verdict
+     */
+    public Verdict evaluate(String command) {
+        if (matches(deny, command)) {
+            return Verdict.DENIED;
+        }
+        if (allow != null && !matches(allow, command)) {
+            return Verdict.NOT_ALLOWED;
+        }
+        return Verdict.ALLOWED;
+    }
+
+    /**
+     * Gets the number of rules the policy was compiled from.
+     *
+     * @return Rule count
+     */
+    public int getRuleCount() {
+        return ruleCount;
+    }
+
+    private static void add(Node root, String rule) {
+        List<String> tokens = new ArrayList<>();
+        String trimmed = rule == null ? "" : rule.trim();
+        if (trimmed.startsWith("/")) {
+            trimmed = trimmed.substring(1);
+        }
+        int i = 0;
+        while (i < trimmed.length()) {
+            int start = skipWhitespace(trimmed, i, trimmed.length());
+            int end = tokenEnd(trimmed, start, trimmed.length());
+            if (end > start) {
+                tokens.add(trimmed.substring(start, end).toLowerCase(Locale.ROOT));
+            }
+            i = end;
+        }
+        if (tokens.isEmpty()) {
+            throw new IllegalArgumentException("Command rule '" + rule + "' is empty");
+        }
+
+        Node node = root;
+        for (String token : tokens) {
+            node = node.child(token);
+        }
+        node.terminal = true;
+    }
+
+    private static boolean matches(Node root, String command) {
+        int end = command.length();
+        int start = skipWhitespace(command, 0, end);
+        if (start < end && command.charAt(start) == '/') {
+            start++;
+        }
+        int baseEnd = tokenEnd(command, start, end);
+        if (baseEnd == start) {
+            return false;
+        }
+
+        if (matchToken(root, command, start, baseEnd, end)) {
+            return true;
+        }
+        // Retry the base command without its namespace, e.g. minecraft:stop as stop
+        int colon = indexOf(command, ':', start, baseEnd);
+        return colon >= 0 && colon + 1 < baseEnd && matchToken(root, command, colon + 1, baseEnd, end);
+    }
+
+    /**
+     * Matches the token [start, tokenEnd) against the children of a node and
+     * the rest of the command below them.
+     */
+    private static boolean matchToken(Node node, String command, int start, int tokenEnd, int end) {
+        if (node.literals != null) {
+            Node child = node.literals.get(command, start, tokenEnd);
+            if (child != null && matchRest(child, command, tokenEnd, end)) {
+                return true;
+            }
+        }
+        if (node.prefixes != null) {
+            for (int i = 0; i < node.prefixes.length; i++) {
+                String prefix = node.prefixes[i];
+                if (tokenEnd - start >= prefix.length()
+                    && command.regionMatches(true, start, prefix, 0, prefix.length())
+                    && matchRest(node.prefixNodes[i], command, tokenEnd, end)) {
+                    return true;
+                }
+            }
+        }
+        return node.any != null && matchRest(node.any, command, tokenEnd, end);
+    }
+
+    private static boolean matchRest(Node node, String command, int position, int end) {
+        if (node.terminal) {
+            return true;
+        }
+        int start = skipWhitespace(command, position, end);
+        if (start >= end) {
+            return false;
+        }
+        return matchToken(node, command, start, tokenEnd(command, start, end), end);
+    }
+
+    private static int skipWhitespace(String s, int from, int end) {
+        while (from < end && Character.isWhitespace(s.charAt(from))) {
+            from++;
+        }
+        return from;
+    }
+
+    private static int tokenEnd(String s, int from, int end) {
+        while (from < end && !Character.isWhitespace(s.charAt(from))) {
+            from++;
+        }
+        return from;
+    }
+
+    private static int indexOf(String s, char c, int from, int end) {
+        for (int i = from; i < end; i++) {
+            if (s.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * One token position in the rule trie.
+     */
+    private static final class Node {
+        private TokenTable literals;
+        private String[] prefixes;
+        private Node[] prefixNodes;
+        private Node any;
+        private boolean terminal;
+
+        private Node child(String token) {
+            if (token.equals("*")) {
+                if (any == null) {
+                    any = new Node();
+                }
+                return any;
+            }
+            if (token.length() > 1 && token.endsWith("*")) {
+                String prefix = token.substring(0, token.length() - 1);
+                int count = prefixes == null ? 0 : prefixes.length;
+                for (int i = 0; i < count; i++) {
+                    if (prefixes[i].equals(prefix)) {
+                        return prefixNodes[i];
+                    }
+                }
+                String[] newPrefixes = new String[count + 1];
+                Node[] newNodes = new Node[count + 1];
+                if (count > 0) {
+                    System.arraycopy(prefixes, 0, newPrefixes, 0, count);
+                    System.arraycopy(prefixNodes, 0, newNodes, 0, count);
+                }
+                newPrefixes[count] = prefix;
+                newNodes[count] = new Node();
+                prefixes = newPrefixes;
+                prefixNodes = newNodes;
+                return newNodes[count];
+            }
+            if (literals == null) {
+                literals = new TokenTable();
+            }
+            return literals.getOrAdd(token);
+        }
+    }
+
+    /**
+     * Open-addressing table from lowercase tokens to nodes, looked up by a
+     * region of the command so no substring is created.
+     */
+    private static final class TokenTable {
+        private String[] keys = new String[8];
+        private Node[] values = new Node[8];
+        private int size;
+
+        private Node get(String s, int start, int end) {
+            int mask = keys.length - 1;
+            int slot = hash(s, start, end) & mask;
+            while (keys[slot] != null) {
+                String key = keys[slot];
+                if (key.length() == end - start && key.regionMatches(true, 0, s, start, end - start)) {
+                    return values[slot];
+                }
+                slot = (slot + 1) & mask;
+            }
+            return null;
+        }
+
+        private Node getOrAdd(String token) {
+            Node existing = get(token, 0, token.length());
+            if (existing != null) {
+                return existing;
+            }
+            if ((size + 1) * 2 > keys.length) {
+                resize();
+            }
+            Node node = new Node();
+            insert(token, node);
+            return node;
+        }
+
+        private void insert(String token, Node node) {
+            int mask = keys.length - 1;
+            int slot = hash(token, 0, token.length()) & mask;
+            while (keys[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = token;
+            values[slot] = node;
+            size++;
+        }
+
+        private void resize() {
+            String[] oldKeys = keys;
+            Node[] oldValues = values;
+            keys = new String[oldKeys.length * 2];
+            values = new Node[oldKeys.length * 2];
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != null) {
+                    insert(oldKeys[i], oldValues[i]);
+                }
+            }
+        }
+
+        private static int hash(String s, int start, int end) {
+            int h = 0;
+            for (int i = start; i < end; i++) {
+                h = 31 * h + Character.toLowerCase(s.charAt(i));
+            }
+            return h ^ (h >>> 16);
+        }
+    }
+}
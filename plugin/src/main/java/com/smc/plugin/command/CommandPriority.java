@@ -0,0 +1,62 @@
+package com.smc.plugin.command;
+
+import java.util.Locale;
+
+/**
+ * Scheduling lanes for API commands.
+ *
+ * When several lanes have work queued, each gets a share of main-thread steps
+ * proportional to its weight, so interactive commands overtake bulk work
+ * without starving it.
+ */
+public enum CommandPriority {
+    /** Latency-sensitive commands issued by a person, e.g. kick or ban. */
+    INTERACTIVE(8),
+    /** The default lane. */
+    NORMAL(4),
+    /** Large automated batches such as imports or world setup. */
+    BULK(1);
+
+    private final int weight;
+
+    CommandPriority(int weight) {
+        this.weight = weight;
+    }
+
+    /**
+     * Gets the number of commands this lane may run per scheduling round.
+     *
+     * @return The lane weight
+     */
+    public int getWeight() {
+        return weight;
+    }
+
+    /**
+     * Gets the lowercase name used in requests and metrics.
+     *
+     * @return The lane label
+     */
+    public String getLabel() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Parses a lane name.
+     *
+     * @param name The lane name (case-insensitive), or null for {@link #NORMAL}
+     * @return The lane
+     * @throws IllegalArgumentException if the name is not a lane
+     */
+    public static CommandPriority parse(String name) {
+        if (name == null) {
+            return NORMAL;
+        }
+        for (CommandPriority priority : values()) {
+            if (priority.name().equalsIgnoreCase(name.trim())) {
+                return priority;
+            }
+        }
+        throw new IllegalArgumentException("Unknown priority '" + name + "', expected interactive, normal or bulk");
+    }
+}
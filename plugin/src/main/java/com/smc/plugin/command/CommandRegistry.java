@@ -0,0 +1,376 @@
+package com.smc.plugin.command;
+
+import com.smc.plugin.SMCPlugin;
+import com.smc.plugin.version.ReflectionRegistry;
+import org.bukkit.Bukkit;
+import org.bukkit.command.Command;
+import org.bukkit.command.PluginIdentifiableCommand;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.server.PluginDisableEvent;
+import org.bukkit.event.server.PluginEnableEvent;
+import org.bukkit.plugin.Plugin;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+
+/**
+ * Deduplicated, searchable index of the server's registered commands.
+ *
+ * Walking the command map needs reflection and touches Bukkit state, so the index
+ * is built once on the main thread and rebuilt only when plugins are enabled or
+ * disabled. Readers on HTTP threads work on an immutable snapshot sorted by name,
+ * which supports prefix search with a binary search and plugin filtering through
+ * a precomputed per-plugin index.
+ */
+public class CommandRegistry implements Listener {
+
+    private final SMCPlugin plugin;
+    private final AtomicBoolean refreshScheduled;
+    private volatile Snapshot snapshot;
+
+    /**
+     * Creates a new, empty command registry.
+     * Call {@link #scheduleRefresh()} to populate it on the next tick.
+     *
+     * @param plugin The plugin instance
+     */
+    public CommandRegistry(SMCPlugin plugin) {
+        this.plugin = plugin;
+        this.refreshScheduled = new AtomicBoolean(false);
+        this.snapshot = new Snapshot(new CommandInfo[0]);
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPluginEnable(PluginEnableEvent event) {
+        scheduleRefresh();
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPluginDisable(PluginDisableEvent event) {
+        scheduleRefresh();
+    }
+
+    /**
+     * Schedules a rebuild of the index on the next server tick.
+     * Multiple requests before the rebuild runs (e.g. while every plugin enables
+     * during startup) collapse into a single rebuild.
+     */
+    public void scheduleRefresh() {
+        if (!plugin.isEnabled() || !refreshScheduled.compareAndSet(false, true)) {
+            return;
+        }
+
+        Bukkit.getScheduler().runTask(plugin, () -> {
+            refreshScheduled.set(false);
+            refresh();
+        });
+    }
+
+    /**
+     * Rebuilds the index from the server's command map.
+     * Must be called on the main server thread.
+     */
+    public void refresh() {
+        List<CommandInfo> commands = new ArrayList<>();
+
+        try {
+            Map<String, Command> knownCommands = plugin.getReflectionRegistry().getKnownCommands();
+
+            // Aliases and "plugin:name" labels map to the same Command instance
+            Set<Command> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (Command cmd : knownCommands.values()) {
+                if (cmd != null && seen.add(cmd)) {
+                    commands.add(describe(cmd, plugin.getReflectionRegistry()));
+                }
+            }
+        } catch (Exception e) {
+            plugin.getLogger().log(Level.WARNING, "Could not retrieve command map using reflection", e);
+            return;
+        }
+
+        CommandInfo[] sorted = commands.toArray(new CommandInfo[0]);
+        Arrays.sort(sorted, (a, b) -> a.sortKey.compareTo(b.sortKey));
+
+        Snapshot previous = snapshot;
+        snapshot = new Snapshot(sorted);
+
+        if (!Arrays.equals(previous.commands, sorted) && plugin.getGenerationTracker() != null) {
+            plugin.getGenerationTracker().markCommandsChanged();
+        }
+    }
+
+    /**
+     * Searches the index.
+     *
+     * @param prefix Optional name prefix (case-insensitive), null for all commands
+     * @param pluginName Optional owning plugin name (case-insensitive), null for all plugins
+     * @param offset Number of matches to skip
+     * @param limit Maximum number of matches to return
+     * @return The requested page of matches, sorted by name
+     */
+    public QueryResult query(String prefix, String pluginName, int offset, int limit) {
+        return query(prefix, pluginName, null, offset, limit);
+    }
+
+    /**
+     * Searches the index, continuing after a known command.
+     *
+     * @param prefix Optional name prefix (case-insensitive), null for all commands
+     * @param pluginName Optional owning plugin name (case-insensitive), null for all plugins
+     * @param after Sort key of the last command already seen, null to start at the first match
+     * @param offset Number of matches to skip
+     * @param limit Maximum number of matches to return
+     * @return The requested page of matches, sorted by name
+     * @see CommandInfo#getSortKey()
+     */
+    public QueryResult query(String prefix, String pluginName, String after, int offset, int limit) {
+        Snapshot current = snapshot;
+
+        CommandInfo[] candidates = current.commands;
+        int from = 0;
+        int to = candidates.length;
+
+        if (pluginName != null) {
+            candidates = current.byPlugin.get(pluginName.toLowerCase(Locale.ROOT));
+            if (candidates == null) {
+                return new QueryResult(Collections.emptyList(), 0);
+            }
+            to = candidates.length;
+        }
+
+        if (prefix != null && !prefix.isEmpty()) {
+            String key = prefix.toLowerCase(Locale.ROOT);
+            from = lowerBound(candidates, key);
+            to = from;
+            while (to < candidates.length && candidates[to].key.startsWith(key)) {
+                to++;
+            }
+        }
+
+        int total = to - from;
+        if (after != null) {
+            from = Math.max(from, upperBound(candidates, after));
+        }
+        int start = Math.min(from + Math.max(offset, 0), to);
+        int end = (int) Math.min((long) start + Math.max(limit, 0), to);
+
+        return new QueryResult(Collections.unmodifiableList(Arrays.asList(candidates).subList(start, end)), total);
+    }
+
+    /**
+     * Gets the number of distinct commands in the index.
+     *
+     * @return Command count
+     */
+    public int size() {
+        return snapshot.commands.length;
+    }
+
+    private static int lowerBound(CommandInfo[] commands, String key) {
+        int low = 0;
+        int high = commands.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (commands[mid].key.compareTo(key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static int upperBound(CommandInfo[] commands, String sortKey) {
+        int low = 0;
+        int high = commands.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (commands[mid].sortKey.compareTo(sortKey) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static CommandInfo describe(Command cmd, ReflectionRegistry reflection) {
+        return new CommandInfo(
+            cmd.getName(),
+            cmd.getDescription(),
+            cmd.getUsage(),
+            new ArrayList<>(cmd.getAliases()),
+            cmd.getPermission() != null ? cmd.getPermission() : "",
+            resolvePluginName(cmd, reflection)
+        );
+    }
+
+    private static String resolvePluginName(Command cmd, ReflectionRegistry reflection) {
+        if (cmd instanceof PluginIdentifiableCommand) {
+            Plugin owningPlugin = ((PluginIdentifiableCommand) cmd).getPlugin();
+            return owningPlugin != null ? owningPlugin.getName() : "Minecraft";
+        }
+
+        ReflectionRegistry.Accessor getPlugin = reflection.getCommandPluginAccessor(cmd.getClass());
+        if (!getPlugin.isPresent()) {
+            String className = cmd.getClass().getName();
+            if (className.startsWith("org.bukkit.command")) {
+                return "Minecraft";
+            }
+            String[] parts = className.split("\\.");
+            return parts.length > 2 ? parts[2] : "Unknown";
+        }
+        try {
+            Object owningPlugin = getPlugin.invoke(cmd);
+            if (owningPlugin instanceof Plugin) {
+                return ((Plugin) owningPlugin).getName();
+            }
+            return "Minecraft";
+        } catch (ReflectiveOperationException e) {
+            return "Unknown";
+        }
+    }
+
+    /**
+     * Immutable view of the index at one point in time.
+     */
+    private static final class Snapshot {
+        private final CommandInfo[] commands;
+        private final Map<String, CommandInfo[]> byPlugin;
+
+        private Snapshot(CommandInfo[] commands) {
+            this.commands = commands;
+
+            Map<String, List<CommandInfo>> grouped = new HashMap<>();
+            for (CommandInfo info : commands) {
+                grouped.computeIfAbsent(info.plugin.toLowerCase(Locale.ROOT), k -> new ArrayList<>()).add(info);
+            }
+
+            // Grouping preserves the sorted order, so each plugin's array is sorted too
+            Map<String, CommandInfo[]> index = new HashMap<>();
+            for (Map.Entry<String, List<CommandInfo>> entry : grouped.entrySet()) {
+                index.put(entry.getKey(), entry.getValue().toArray(new CommandInfo[0]));
+            }
+            this.byPlugin = index;
+        }
+    }
+
+    /**
+     * Describes a single registered command.
+     */
+    public static final class CommandInfo {
+        private final String key;
+        private final String sortKey;
+        private final String name;
+        private final String description;
+        private final String usage;
+        private final List<String> aliases;
+        private final String permission;
+        private final String plugin;
+
+        private CommandInfo(String name, String description, String usage, List<String> aliases,
+                            String permission, String plugin) {
+            this.key = name.toLowerCase(Locale.ROOT);
+            // Commands are ordered by name, then by owning plugin; NUL sorts before any name character
+            this.sortKey = key + '\0' + plugin;
+            this.name = name;
+            this.description = description;
+            this.usage = usage;
+            this.aliases = Collections.unmodifiableList(aliases);
+            this.permission = permission;
+            this.plugin = plugin;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+
+        public String getUsage() {
+            return usage;
+        }
+
+        public List<String> getAliases() {
+            return aliases;
+        }
+
+        public String getPermission() {
+            return permission;
+        }
+
+        public String getPlugin() {
+            return plugin;
+        }
+
+        /**
+         * Gets the key that orders this command in the index.
+         *
+         * @return The sort key
+         */
+        public String getSortKey() {
+            return sortKey;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof CommandInfo)) {
+                return false;
+            }
+            CommandInfo other = (CommandInfo) o;
+            return name.equals(other.name)
+                && java.util.Objects.equals(description, other.description)
+                && java.util.Objects.equals(usage, other.usage)
+                && aliases.equals(other.aliases)
+                && permission.equals(other.permission)
+                && plugin.equals(other.plugin);
+        }
+
+        @Override
+        public int hashCode() {
+            return java.util.Objects.hash(name, plugin);
+        }
+    }
+
+    /**
+     * A page of search results.
+     */
+    public static final class QueryResult {
+        private final List<CommandInfo> commands;
+        private final int total;
+
+        private QueryResult(List<CommandInfo> commands, int total) {
+            this.commands = commands;
+            this.total = total;
+        }
+
+        public List<CommandInfo> getCommands() {
+            return commands;
+        }
+
+        /**
+         * Gets the number of matches before paging was applied.
+         *
+         * @return Total match count
+         */
+        public int getTotal() {
+            return total;
+        }
+    }
+}
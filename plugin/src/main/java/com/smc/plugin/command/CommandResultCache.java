@@ -0,0 +1,179 @@
+package com.smc.plugin.command;
+
+import com.smc.plugin.SMCPlugin;
+import com.smc.plugin.metrics.PrometheusWriter;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Short-lived cache of results of read-only commands such as {@code list} or {@code tps}.
+ *
+ * Only commands whose base command is on the configured allowlist are cached,
+ * keyed by their normalized text, and only successful results are kept. A hit
+ * is answered on the HTTP thread without queuing anything. Identical commands
+ * that are already queued when the first of them runs are coalesced on the
+ * main thread: the first one is dispatched and the rest reuse its result.
+ * Running any command that is not on the allowlist clears the cache, since it
+ * may have changed what the cached commands report.
+ */
+public class CommandResultCache {
+
+    /**
+     * Upper bound on cached entries; argument variations of allowlisted
+     * commands could otherwise grow the map without limit.
+     */
+    private static final int MAX_ENTRIES = 256;
+
+    private final long ttlNanos;
+    private final Set<String> allowlist;
+    private final Map<String, Entry> entries;
+    private final LongAdder hits;
+    private final LongAdder misses;
+
+    /**
+     * Creates a new result cache.
+     *
+     * @param plugin The plugin instance
+     */
+    public CommandResultCache(SMCPlugin plugin) {
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(plugin.getConfigManager().getCommandCacheTtlMillis());
+        this.allowlist = new HashSet<>();
+        for (String command : plugin.getConfigManager().getCachedCommands()) {
+            allowlist.add(command.trim().toLowerCase(Locale.ROOT));
+        }
+        this.entries = new ConcurrentHashMap<>();
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+    }
+
+    /**
+     * Gets the cache key of a command.
+     *
+     * @param command The command as sent by the client
+     * @return The normalized command, or null if its result may not be cached
+     */
+    public String keyOf(String command) {
+        if (ttlNanos <= 0 || command == null) {
+            return null;
+        }
+        String key = normalize(command);
+        int space = key.indexOf(' ');
+        String base = space < 0 ? key : key.substring(0, space);
+        return allowlist.contains(base) ? key : null;
+    }
+
+    /**
+     * Looks up a fresh result.
+     *
+     * @param key A key returned by {@link #keyOf}
+     * @param command The command as sent, reported in the returned result
+     * @return The cached result, or null on a miss
+     */
+    public CommandExecutor.CommandResult get(String key, String command) {
+        Entry entry = entries.get(key);
+        if (entry == null || System.nanoTime() - entry.expiresAt >= 0) {
+            return null;
+        }
+        hits.increment();
+        return entry.result.cachedAs(command);
+    }
+
+    /**
+     * Records that a cacheable command was dispatched and stores its result if it succeeded.
+     *
+     * @param key A key returned by {@link #keyOf}
+     * @param result The result of running the command
+     */
+    public void put(String key, CommandExecutor.CommandResult result) {
+        misses.increment();
+        if (!result.isSuccess()) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (entries.size() >= MAX_ENTRIES && !entries.containsKey(key)) {
+            removeExpired(now);
+            if (entries.size() >= MAX_ENTRIES) {
+                return;
+            }
+        }
+        entries.put(key, new Entry(result, now + ttlNanos));
+    }
+
+    /**
+     * Drops every cached result.
+     */
+    public void invalidateAll() {
+        if (!entries.isEmpty()) {
+            entries.clear();
+        }
+    }
+
+    /**
+     * Renders the cache metrics in Prometheus text format.
+     *
+     * @return The exposition text
+     */
+    public String toPrometheus() {
+        return new PrometheusWriter()
+            .family("smc_command_cache_hits_total", "counter",
+                "Read-only commands answered from the result cache.")
+            .sample("smc_command_cache_hits_total", null, hits.sum())
+            .family("smc_command_cache_misses_total", "counter",
+                "Cacheable commands that had to be dispatched.")
+            .sample("smc_command_cache_misses_total", null, misses.sum())
+            .toString();
+    }
+
+    private void removeExpired(long now) {
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext()) {
+            if (now - it.next().expiresAt >= 0) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Strips a leading slash, collapses whitespace and lowercases the base command.
+     * Arguments keep their case, since plugins may treat them case-sensitively.
+     */
+    private static String normalize(String command) {
+        StringBuilder key = new StringBuilder(command.length());
+        boolean inBase = true;
+        boolean pendingSpace = false;
+        for (int i = 0; i < command.length(); i++) {
+            char c = command.charAt(i);
+            if (Character.isWhitespace(c)) {
+                pendingSpace = key.length() > 0;
+                continue;
+            }
+            if (c == '/' && key.length() == 0) {
+                continue;
+            }
+            if (pendingSpace) {
+                key.append(' ');
+                pendingSpace = false;
+                inBase = false;
+            }
+            key.append(inBase ? Character.toLowerCase(c) : c);
+        }
+        return key.toString();
+    }
+
+    private static final class Entry {
+        private final CommandExecutor.CommandResult result;
+        private final long expiresAt;
+
+        private Entry(CommandExecutor.CommandResult result, long expiresAt) {
+            this.result = result;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
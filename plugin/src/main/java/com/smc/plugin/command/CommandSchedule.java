@@ -0,0 +1,119 @@
+package com.smc.plugin.command;
+
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Definition of a recurring command batch, run either at a fixed interval or
+ * on a cron expression.
+ */
+public final class CommandSchedule {
+
+    private static final int MAX_ID_LENGTH = 64;
+
+    private final String id;
+    private final List<String> commands;
+    private final long intervalSeconds;
+    private final CronExpression cron;
+    private final CommandPriority priority;
+    private final boolean stopOnFailure;
+    private final boolean enabled;
+
+    private CommandSchedule(String id, List<String> commands, long intervalSeconds, CronExpression cron,
+                            CommandPriority priority, boolean stopOnFailure, boolean enabled) {
+        this.id = id;
+        this.commands = commands;
+        this.intervalSeconds = intervalSeconds;
+        this.cron = cron;
+        this.priority = priority;
+        this.stopOnFailure = stopOnFailure;
+        this.enabled = enabled;
+    }
+
+    /**
+     * Creates a schedule.
+     *
+     * @param id Name of the schedule: letters, digits, '-' and '_'
+     * @param commands The commands to run each time, in order
+     * @param intervalSeconds Seconds between runs, or 0 to use a cron expression
+     * @param cron Cron expression, or null to use the interval
+     * @param priority The scheduling lane
+     * @param stopOnFailure Skip the remaining commands once one fails
+     * @param enabled Whether the schedule runs
+     * @return The schedule
+     * @throws IllegalArgumentException if the definition is invalid
+     */
+    public static CommandSchedule of(String id, List<String> commands, long intervalSeconds, String cron,
+                                     CommandPriority priority, boolean stopOnFailure, boolean enabled) {
+        if (id == null || id.isEmpty() || id.length() > MAX_ID_LENGTH) {
+            throw new IllegalArgumentException("Schedule ID must be 1 to " + MAX_ID_LENGTH + " characters");
+        }
+        for (int i = 0; i < id.length(); i++) {
+            char c = id.charAt(i);
+            if (!(Character.isLetterOrDigit(c) && c < 128) && c != '-' && c != '_') {
+                throw new IllegalArgumentException("Schedule ID may only contain letters, digits, '-' and '_'");
+            }
+        }
+        if (commands == null || commands.isEmpty()) {
+            throw new IllegalArgumentException("Schedule must have at least one command");
+        }
+        boolean hasCron = cron != null && !cron.trim().isEmpty();
+        if (hasCron == (intervalSeconds > 0)) {
+            throw new IllegalArgumentException("Schedule needs either a positive interval or a cron expression");
+        }
+        if (intervalSeconds < 0) {
+            throw new IllegalArgumentException("Schedule interval cannot be negative");
+        }
+        CronExpression expression = null;
+        if (hasCron) {
+            expression = CronExpression.parse(cron);
+            try {
+                expression.next(System.currentTimeMillis(), ZoneId.systemDefault());
+            } catch (IllegalStateException e) {
+                throw new IllegalArgumentException(e.getMessage(), e);
+            }
+        }
+        return new CommandSchedule(id, Collections.unmodifiableList(new ArrayList<>(commands)), intervalSeconds,
+            expression, priority, stopOnFailure, enabled);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public List<String> getCommands() {
+        return commands;
+    }
+
+    /**
+     * Gets the seconds between runs.
+     *
+     * @return The interval, or 0 for a cron schedule
+     */
+    public long getIntervalSeconds() {
+        return intervalSeconds;
+    }
+
+    /**
+     * Gets the cron expression.
+     *
+     * @return The expression, or null for an interval schedule
+     */
+    public CronExpression getCron() {
+        return cron;
+    }
+
+    public CommandPriority getPriority() {
+        return priority;
+    }
+
+    public boolean isStopOnFailure() {
+        return stopOnFailure;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+}
@@ -0,0 +1,304 @@
+package com.smc.plugin.command;
+
+import com.smc.plugin.SMCPlugin;
+import com.smc.plugin.metrics.PrometheusWriter;
+import org.bukkit.Bukkit;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+/**
+ * Runs recurring command batches on the server itself.
+ *
+ * A repeating task checks once per tick which schedules are due and submits
+ * them through the {@link CommandExecutor} like any API command, in the lane
+ * of the schedule and as client {@code schedule:<id>}. Each schedule gets a
+ * fixed offset derived from its ID within the configured jitter window, so
+ * schedules with the same interval or cron expression do not all fall due in
+ * the same tick; at most a configured number of schedules start per tick and
+ * the rest start on the following ticks. A run is skipped if the previous run
+ * of the same schedule has not finished yet.
+ *
+ * Interval schedules are aligned to multiples of their interval since the
+ * epoch, so a five-minute schedule runs at :00, :05 and so on (plus its
+ * offset), regardless of when the server started.
+ *
+ * Schedules are persisted in the config file, so they survive restarts.
+ */
+public class CommandScheduleManager {
+
+    private static final String CLIENT_PREFIX = "schedule:";
+    private static final long CRON_JITTER_LIMIT_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private final SMCPlugin plugin;
+    private final long jitterMillis;
+    private final int maxPerTick;
+    private final ZoneId zone;
+    private final Map<String, State> states;
+    private BukkitTask task;
+
+    /**
+     * Creates a new schedule manager with the schedules from the config.
+     *
+     * @param plugin The plugin instance
+     */
+    public CommandScheduleManager(SMCPlugin plugin) {
+        this.plugin = plugin;
+        this.jitterMillis = plugin.getConfigManager().getScheduleJitterMillis();
+        this.maxPerTick = plugin.getConfigManager().getSchedulesPerTick();
+        this.zone = ZoneId.systemDefault();
+        this.states = new ConcurrentHashMap<>();
+        long now = System.currentTimeMillis();
+        for (CommandSchedule schedule : plugin.getConfigManager().getCommandSchedules()) {
+            states.put(schedule.getId(), new State(schedule, nextRun(schedule, now)));
+        }
+    }
+
+    /**
+     * Starts checking for due schedules every tick.
+     */
+    public void start() {
+        if (task == null) {
+            task = Bukkit.getScheduler().runTaskTimer(plugin, this::tick, 1L, 1L);
+        }
+    }
+
+    /**
+     * Stops running schedules. Runs already submitted are left to the command executor.
+     */
+    public void shutdown() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+    }
+
+    /**
+     * Creates or replaces a schedule and saves it to the config.
+     * A replaced schedule keeps its run history, and a run still in flight
+     * holds off the next run of the new definition like any other overlap.
+     *
+     * @param schedule The schedule
+     * @return The state of the schedule
+     */
+    public State put(CommandSchedule schedule) {
+        plugin.getConfigManager().saveCommandSchedule(schedule);
+        long nextRunAt = nextRun(schedule, System.currentTimeMillis());
+        return states.compute(schedule.getId(), (id, existing) -> {
+            if (existing == null) {
+                return new State(schedule, nextRunAt);
+            }
+            existing.replace(schedule, nextRunAt);
+            return existing;
+        });
+    }
+
+    /**
+     * Deletes a schedule and removes it from the config.
+     *
+     * @param id The schedule ID
+     * @return The state of the removed schedule, or null if there was none
+     */
+    public State remove(String id) {
+        State state = states.remove(id);
+        if (state != null) {
+            plugin.getConfigManager().removeCommandSchedule(id);
+        }
+        return state;
+    }
+
+    /**
+     * Gets a schedule.
+     *
+     * @param id The schedule ID
+     * @return The state of the schedule, or null if there is none
+     */
+    public State get(String id) {
+        return states.get(id);
+    }
+
+    /**
+     * Gets all schedules ordered by ID.
+     *
+     * @return The schedule states
+     */
+    public List<State> list() {
+        List<State> list = new ArrayList<>(states.values());
+        Collections.sort(list, (a, b) -> a.schedule.getId().compareTo(b.schedule.getId()));
+        return list;
+    }
+
+    /**
+     * Renders the schedule metrics in Prometheus text format.
+     *
+     * @return The exposition text
+     */
+    public String toPrometheus() {
+        PrometheusWriter writer = new PrometheusWriter();
+        writer.family("smc_schedule_runs_total", "counter", "Runs started by command schedules.");
+        for (State state : list()) {
+            writer.sample("smc_schedule_runs_total", new String[] {"schedule", state.schedule.getId()}, state.runs);
+        }
+        writer.family("smc_schedule_overlaps_total", "counter",
+            "Schedule runs skipped because the previous run had not finished.");
+        for (State state : list()) {
+            writer.sample("smc_schedule_overlaps_total", new String[] {"schedule", state.schedule.getId()},
+                state.overlaps);
+        }
+        return writer.toString();
+    }
+
+    /**
+     * Starts the most overdue schedules. Runs on the main thread.
+     */
+    private void tick() {
+        long now = System.currentTimeMillis();
+        for (int started = 0; started < maxPerTick; started++) {
+            State due = null;
+            for (State state : states.values()) {
+                if (state.schedule.isEnabled() && state.nextRunAt <= now
+                    && (due == null || state.nextRunAt < due.nextRunAt)) {
+                    due = state;
+                }
+            }
+            if (due == null) {
+                return;
+            }
+            run(due, now);
+        }
+    }
+
+    private void run(State state, long now) {
+        CommandSchedule schedule;
+        synchronized (state) {
+            // A concurrent put must not have its next run overwritten from the old definition
+            schedule = state.schedule;
+            state.nextRunAt = nextRun(schedule, now);
+        }
+        if (state.running) {
+            state.overlaps++;
+            plugin.getLogger().warning("Schedule '" + schedule.getId() + "' is still running, skipping this run");
+            return;
+        }
+
+        state.running = true;
+        state.runs++;
+        state.lastRunAt = now;
+        try {
+            plugin.getCommandExecutor()
+                .submitCommands(schedule.getCommands(), schedule.isStopOnFailure(),
+                    CLIENT_PREFIX + schedule.getId(), schedule.getPriority())
+                .getResults()
+                .whenComplete((results, error) -> {
+                    boolean success = error == null;
+                    if (results != null) {
+                        for (CommandExecutor.CommandResult result : results) {
+                            success &= result.isSuccess();
+                        }
+                    }
+                    state.lastSuccess = success;
+                    state.running = false;
+                });
+        } catch (RuntimeException e) {
+            state.running = false;
+            state.lastSuccess = false;
+            plugin.getLogger().log(Level.WARNING, "Failed to start schedule '" + schedule.getId() + "'", e);
+        }
+    }
+
+    /**
+     * Computes when a schedule next falls due, including its offset.
+     */
+    private long nextRun(CommandSchedule schedule, long now) {
+        long offset = offset(schedule);
+        if (schedule.getCron() != null) {
+            // The offset may push the previous occurrence past now; it must not run twice
+            return schedule.getCron().next(now - offset, zone) + offset;
+        }
+        long interval = TimeUnit.SECONDS.toMillis(schedule.getIntervalSeconds());
+        return (now - offset) / interval * interval + interval + offset;
+    }
+
+    /**
+     * Gets the fixed delay of a schedule within the jitter window. It is
+     * derived from the ID so a schedule keeps its slot across restarts.
+     */
+    private long offset(CommandSchedule schedule) {
+        long period = schedule.getCron() != null
+            ? CRON_JITTER_LIMIT_MILLIS
+            : TimeUnit.SECONDS.toMillis(schedule.getIntervalSeconds());
+        long window = Math.min(jitterMillis, period - 1);
+        if (window <= 0) {
+            return 0L;
+        }
+        return (schedule.getId().hashCode() & 0x7fffffffL) % (window + 1);
+    }
+
+    /**
+     * A schedule and its run history.
+     */
+    public static final class State {
+        private volatile CommandSchedule schedule;
+        private volatile long nextRunAt;
+        private volatile long lastRunAt;
+        private volatile boolean lastSuccess;
+        private volatile boolean running;
+        private volatile long runs;
+        private volatile long overlaps;
+
+        private State(CommandSchedule schedule, long nextRunAt) {
+            this.schedule = schedule;
+            this.nextRunAt = nextRunAt;
+        }
+
+        private synchronized void replace(CommandSchedule schedule, long nextRunAt) {
+            this.schedule = schedule;
+            this.nextRunAt = nextRunAt;
+        }
+
+        public CommandSchedule getSchedule() {
+            return schedule;
+        }
+
+        public long getNextRunAt() {
+            return nextRunAt;
+        }
+
+        /**
+         * Gets when the schedule last started a run.
+         *
+         * @return Unix time in ms, or 0 if it has not run since the server started
+         */
+        public long getLastRunAt() {
+            return lastRunAt;
+        }
+
+        /**
+         * Checks whether every command of the last finished run succeeded.
+         *
+         * @return The outcome of the last run; false if none has finished
+         */
+        public boolean isLastSuccess() {
+            return lastSuccess;
+        }
+
+        public boolean isRunning() {
+            return running;
+        }
+
+        public long getRuns() {
+            return runs;
+        }
+
+        public long getOverlaps() {
+            return overlaps;
+        }
+    }
+}
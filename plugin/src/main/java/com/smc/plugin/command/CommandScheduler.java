@@ -0,0 +1,565 @@
+package com.smc.plugin.command;
+
+import com.smc.plugin.SMCPlugin;
+import com.smc.plugin.metrics.LogLinearHistogram;
+import com.smc.plugin.metrics.PrometheusWriter;
+import org.bukkit.Bukkit;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+
+/**
+ * Main-thread queue for API commands with a per-tick time budget.
+ *
+ * A repeating task drains the queue once per tick and stops as soon as the
+ * configured budget is used up, leaving the rest for the following ticks. At
+ * least one command runs per tick so the queue always makes progress.
+ *
+ * Commands are queued in priority lanes. Lanes share the main thread by
+ * weighted round robin (see {@link CommandPriority}), and within a lane API
+ * clients take turns one command at a time, so a bulk import from one key
+ * cannot hold back another key's commands. A client's batches in the same
+ * lane run in submission order, and a batch that fits the budget still
+ * completes in one tick.
+ *
+ * Commands that have not started can be cancelled from any thread. A command
+ * is claimed by the main thread before it runs, so a cancelled command never
+ * runs and a running command is never reported as cancelled.
+ */
+public class CommandScheduler {
+
+    // 2^27 us is a little over two minutes, longer than any command timeout
+    private static final int LATENCY_MAX_EXPONENT = 27;
+    private static final int LATENCY_EXPORT_MIN_EXPONENT = 6;
+    private static final int LATENCY_EXPORT_MAX_EXPONENT = 26;
+    private static final double MICROS_TO_SECONDS = 1e-6;
+    private static final CommandPriority[] PRIORITIES = CommandPriority.values();
+
+    // Per-command states; only PENDING commands can be claimed, skipped or cancelled
+    private static final int PENDING = 0;
+    private static final int RUNNING = 1;
+    private static final int DONE = 2;
+    private static final int SKIPPED = 3;
+    private static final int CANCELLED = 4;
+
+    private final SMCPlugin plugin;
+    private final BiFunction<String, Consumer<String>, CommandExecutor.CommandResult> runner;
+    private final long budgetNanos;
+    private final Queue<Batch> inbox;
+    private final Lane[] lanes;
+    private final AtomicInteger queuedBatches;
+    private final AtomicInteger[] pendingCommands;
+    private final LogLinearHistogram[] queueWait;
+    private final LogLinearHistogram tickTime;
+    private final LongAdder deferredTicks;
+    private final CommandLatencyStats latencyStats;
+    private BukkitTask task;
+    private volatile boolean stopped;
+
+    /**
+     * Creates a new scheduler.
+     *
+     * @param plugin The plugin instance
+     * @param runner Runs a single validated command on the main thread, passing its
+     *               output lines to the given consumer if there is one
+     */
+    public CommandScheduler(SMCPlugin plugin,
+                            BiFunction<String, Consumer<String>, CommandExecutor.CommandResult> runner) {
+        this.plugin = plugin;
+        this.runner = runner;
+        this.budgetNanos = plugin.getConfigManager().getCommandTickBudgetMillis() * 1_000_000L;
+        this.inbox = new ConcurrentLinkedQueue<>();
+        this.lanes = new Lane[PRIORITIES.length];
+        this.queuedBatches = new AtomicInteger();
+        this.pendingCommands = new AtomicInteger[PRIORITIES.length];
+        this.queueWait = new LogLinearHistogram[PRIORITIES.length];
+        for (CommandPriority priority : PRIORITIES) {
+            lanes[priority.ordinal()] = new Lane(priority);
+            pendingCommands[priority.ordinal()] = new AtomicInteger();
+            queueWait[priority.ordinal()] = new LogLinearHistogram(LATENCY_MAX_EXPONENT);
+        }
+        this.tickTime = new LogLinearHistogram(LATENCY_MAX_EXPONENT);
+        this.deferredTicks = new LongAdder();
+        this.latencyStats = new CommandLatencyStats();
+    }
+
+    /**
+     * Starts draining the queue every tick.
+     */
+    public void start() {
+        if (task == null) {
+            task = Bukkit.getScheduler().runTaskTimer(plugin, this::drain, 1L, 1L);
+        }
+    }
+
+    /**
+     * Stops the drain task and fails every command that has not run yet.
+     * Must be called on the main thread.
+     */
+    public void shutdown() {
+        stopped = true;
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+
+        Batch batch;
+        while ((batch = inbox.poll()) != null) {
+            batch.cancel("Server is shutting down");
+        }
+        for (Lane lane : lanes) {
+            for (ArrayDeque<Batch> batches : lane.byClient.values()) {
+                for (Batch queued : batches) {
+                    queued.cancel("Server is shutting down");
+                }
+            }
+            lane.byClient.clear();
+            lane.rotation.clear();
+        }
+        queuedBatches.set(0);
+    }
+
+    /**
+     * Queues a batch of commands.
+     *
+     * @param client Name of the API client the batch belongs to
+     * @param priority The lane to queue the batch in
+     * @param commands The commands, in execution order
+     * @param results Results decided before scheduling (e.g. validation failures),
+     *                with null for each command that should run
+     * @param stopOnFailure Skip the remaining commands once one fails
+     * @param listener Receives output as the commands run, or null to only collect results
+     * @return The queued batch; already complete if no command needs to run
+     */
+    Batch submit(String client, CommandPriority priority, List<String> commands,
+                 CommandExecutor.CommandResult[] results, boolean stopOnFailure,
+                 CommandOutputListener listener) {
+        Batch batch = new Batch(client, priority, commands, results, stopOnFailure, listener);
+        if (batch.isFinished()) {
+            batch.complete();
+            return batch;
+        }
+        pendingCommands[priority.ordinal()].addAndGet(countPending(results));
+        if (stopped) {
+            batch.cancel("Server is shutting down");
+            return batch;
+        }
+        queuedBatches.incrementAndGet();
+        inbox.add(batch);
+        return batch;
+    }
+
+    private static int countPending(CommandExecutor.CommandResult[] results) {
+        int count = 0;
+        for (CommandExecutor.CommandResult result : results) {
+            if (result == null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Runs queued commands until the tick budget is used up.
+     */
+    private void drain() {
+        Batch incoming;
+        while ((incoming = inbox.poll()) != null) {
+            lanes[incoming.priority.ordinal()].add(incoming);
+        }
+
+        long start = System.nanoTime();
+        long deadline = start + budgetNanos;
+        boolean ranAny = false;
+
+        Lane lane;
+        while ((lane = nextLane()) != null) {
+            long now = System.nanoTime();
+            if (ranAny && now - deadline >= 0) {
+                deferredTicks.increment();
+                break;
+            }
+
+            Batch batch = lane.head();
+            if (!batch.started) {
+                batch.started = true;
+                queueWait[lane.priority.ordinal()].record((now - batch.enqueuedAt) / 1000L);
+            }
+
+            if (batch.step()) {
+                lane.credits--;
+                ranAny = true;
+            }
+
+            // Cancelled batches are dropped here without using any of the budget
+            boolean finished = batch.isFinished();
+            if (finished) {
+                queuedBatches.decrementAndGet();
+                batch.complete();
+            }
+            lane.rotate(finished);
+        }
+
+        if (ranAny) {
+            tickTime.record((System.nanoTime() - start) / 1000L);
+        }
+    }
+
+    /**
+     * Picks the lane to run the next command from by weighted round robin.
+     * Lanes are tried in priority order; once every lane with work has used
+     * its share, all shares are renewed.
+     *
+     * @return The lane, or null if nothing is queued
+     */
+    private Lane nextLane() {
+        for (int round = 0; round < 2; round++) {
+            boolean anyWork = false;
+            for (Lane lane : lanes) {
+                if (lane.rotation.isEmpty()) {
+                    continue;
+                }
+                anyWork = true;
+                if (lane.credits > 0) {
+                    return lane;
+                }
+            }
+            if (!anyWork) {
+                return null;
+            }
+            for (Lane lane : lanes) {
+                lane.credits = lane.priority.getWeight();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets the number of queued commands that have not run yet.
+     *
+     * @return Pending command count across all lanes
+     */
+    public int getPendingCommands() {
+        int total = 0;
+        for (AtomicInteger pending : pendingCommands) {
+            total += pending.get();
+        }
+        return total;
+    }
+
+    /**
+     * Gets the number of queued commands in one lane that have not run yet.
+     *
+     * @param priority The lane
+     * @return Pending command count
+     */
+    public int getPendingCommands(CommandPriority priority) {
+        return pendingCommands[priority.ordinal()].get();
+    }
+
+    /**
+     * Gets the number of queued batches, including those being run.
+     *
+     * @return Queue depth in batches
+     */
+    public int getQueueDepth() {
+        return queuedBatches.get();
+    }
+
+    /**
+     * Gets the per-tick time budget.
+     *
+     * @return Budget in milliseconds
+     */
+    public long getBudgetMillis() {
+        return budgetNanos / 1_000_000L;
+    }
+
+    /**
+     * Gets the number of ticks that ended with commands left over because the budget ran out.
+     *
+     * @return Deferred tick count
+     */
+    public long getDeferredTicks() {
+        return deferredTicks.sum();
+    }
+
+    /**
+     * Gets the time batches in a lane waited before their first command ran.
+     *
+     * @param priority The lane
+     * @return Wait histogram in microseconds
+     */
+    public LogLinearHistogram getQueueWait(CommandPriority priority) {
+        return queueWait[priority.ordinal()];
+    }
+
+    /**
+     * Gets the per-command latency breakdown of commands run by this scheduler.
+     *
+     * @return The latency stats
+     */
+    public CommandLatencyStats getLatencyStats() {
+        return latencyStats;
+    }
+
+    /**
+     * Renders the scheduler metrics in Prometheus text format.
+     *
+     * @return The exposition text
+     */
+    public String toPrometheus() {
+        PrometheusWriter writer = new PrometheusWriter();
+
+        writer.family("smc_command_main_thread_wait_seconds", "histogram",
+            "Time API commands waited for the main server thread.");
+        for (CommandPriority priority : PRIORITIES) {
+            writer.histogram("smc_command_main_thread_wait_seconds", new String[] {"lane", priority.getLabel()},
+                queueWait[priority.ordinal()], MICROS_TO_SECONDS,
+                LATENCY_EXPORT_MIN_EXPONENT, LATENCY_EXPORT_MAX_EXPONENT);
+        }
+
+        writer.family("smc_command_tick_seconds", "histogram",
+            "Main-thread time spent running API commands per tick.");
+        writer.histogram("smc_command_tick_seconds", null, tickTime,
+            MICROS_TO_SECONDS, LATENCY_EXPORT_MIN_EXPONENT, LATENCY_EXPORT_MAX_EXPONENT);
+
+        writer.family("smc_command_queue_pending", "gauge",
+            "API commands queued for the main server thread.");
+        for (CommandPriority priority : PRIORITIES) {
+            writer.sample("smc_command_queue_pending", new String[] {"lane", priority.getLabel()},
+                pendingCommands[priority.ordinal()].get());
+        }
+
+        writer.family("smc_command_queue_deferred_ticks_total", "counter",
+            "Ticks that left queued commands for later because the tick budget was used up.");
+        writer.sample("smc_command_queue_deferred_ticks_total", null, deferredTicks.sum());
+
+        return writer.toString() + latencyStats.toPrometheus();
+    }
+
+    /**
+     * One priority lane: per-client FIFO queues served in rotation.
+     * Only touched on the main thread.
+     */
+    private static final class Lane {
+        private final CommandPriority priority;
+        private final Map<String, ArrayDeque<Batch>> byClient;
+        private final ArrayDeque<String> rotation;
+        private int credits;
+
+        private Lane(CommandPriority priority) {
+            this.priority = priority;
+            this.byClient = new HashMap<>();
+            this.rotation = new ArrayDeque<>();
+        }
+
+        private void add(Batch batch) {
+            ArrayDeque<Batch> batches = byClient.get(batch.client);
+            if (batches == null) {
+                batches = new ArrayDeque<>();
+                byClient.put(batch.client, batches);
+                rotation.add(batch.client);
+            }
+            batches.add(batch);
+        }
+
+        private Batch head() {
+            return byClient.get(rotation.peek()).peek();
+        }
+
+        /**
+         * Passes the turn to the next client.
+         *
+         * @param finished Whether the current client's head batch is done
+         */
+        private void rotate(boolean finished) {
+            String client = rotation.poll();
+            ArrayDeque<Batch> batches = byClient.get(client);
+            if (finished) {
+                batches.poll();
+            }
+            if (batches.isEmpty()) {
+                byClient.remove(client);
+            } else {
+                rotation.add(client);
+            }
+        }
+    }
+
+    /**
+     * A queued batch of commands and its progress.
+     *
+     * The main thread moves each command from pending to running before it
+     * runs it; any thread may move pending commands to cancelled. Results are
+     * published through the state array, so a command's result is visible to
+     * every thread that sees it as done.
+     */
+    public final class Batch {
+        private final String client;
+        private final CommandPriority priority;
+        private final List<String> commands;
+        private final CommandExecutor.CommandResult[] results;
+        private final AtomicIntegerArray states;
+        private final boolean stopOnFailure;
+        private final CommandOutputListener listener;
+        private final long enqueuedAt;
+        private final CompletableFuture<List<CommandExecutor.CommandResult>> future;
+        private volatile String cancelReason;
+        // Main thread only
+        private int next;
+        private boolean started;
+
+        private Batch(String client, CommandPriority priority, List<String> commands,
+                      CommandExecutor.CommandResult[] results, boolean stopOnFailure,
+                      CommandOutputListener listener) {
+            this.client = client;
+            this.priority = priority;
+            this.commands = commands;
+            this.results = results;
+            this.states = new AtomicIntegerArray(results.length);
+            this.stopOnFailure = stopOnFailure;
+            this.listener = listener;
+            this.enqueuedAt = System.nanoTime();
+            this.future = new CompletableFuture<>();
+            for (int i = 0; i < results.length; i++) {
+                if (results[i] != null) {
+                    states.set(i, DONE);
+                }
+            }
+        }
+
+        /**
+         * Gets the results once every command has run, been skipped or been cancelled.
+         *
+         * @return A future completed with the results in input order
+         */
+        public CompletableFuture<List<CommandExecutor.CommandResult>> getResults() {
+            return future;
+        }
+
+        /**
+         * Cancels every command that has not started yet. A command already
+         * running finishes normally.
+         *
+         * @param reason Error reported for the cancelled commands
+         * @return The number of commands cancelled
+         */
+        public int cancel(String reason) {
+            cancelReason = reason;
+            int cancelled = 0;
+            for (int i = 0; i < results.length; i++) {
+                if (states.compareAndSet(i, PENDING, CANCELLED)) {
+                    cancelled++;
+                }
+            }
+            if (cancelled > 0) {
+                pendingCommands[priority.ordinal()].addAndGet(-cancelled);
+            }
+
+            boolean running = false;
+            for (int i = 0; i < results.length; i++) {
+                if (states.get(i) == RUNNING) {
+                    running = true;
+                    break;
+                }
+            }
+            if (!running) {
+                // Otherwise the main thread completes the batch once the running command returns
+                complete();
+            }
+            return cancelled;
+        }
+
+        /**
+         * Reports the batch as it stands, without waiting for it.
+         *
+         * @param unfinishedError Error reported for commands that are still queued or running
+         * @return One result per command, in input order
+         */
+        public List<CommandExecutor.CommandResult> snapshot(String unfinishedError) {
+            List<CommandExecutor.CommandResult> list = new ArrayList<>(results.length);
+            for (int i = 0; i < results.length; i++) {
+                String command = commands.get(i);
+                switch (states.get(i)) {
+                    case DONE:
+                        list.add(results[i]);
+                        break;
+                    case SKIPPED:
+                        list.add(CommandExecutor.CommandResult.skipped(command));
+                        break;
+                    case CANCELLED:
+                        list.add(CommandExecutor.CommandResult.cancelled(command, cancelReason));
+                        break;
+                    default:
+                        list.add(CommandExecutor.CommandResult.failure(command, unfinishedError));
+                        break;
+                }
+            }
+            return list;
+        }
+
+        private void complete() {
+            if (!future.isDone()) {
+                future.complete(snapshot("Command did not run"));
+            }
+        }
+
+        /**
+         * Runs the next pending command of the batch. Main thread only.
+         *
+         * @return true if a command was run
+         */
+        private boolean step() {
+            if (isFinished() || !states.compareAndSet(next, PENDING, RUNNING)) {
+                return false;
+            }
+            pendingCommands[priority.ordinal()].decrementAndGet();
+
+            int index = next++;
+            Consumer<String> output = listener != null ? line -> listener.onOutput(index, line) : null;
+            long startedAt = System.nanoTime();
+            CommandExecutor.CommandResult result = runner.apply(commands.get(index), output);
+            if (!result.isCached()) {
+                result = result.withTimings(startedAt - enqueuedAt, result.getExecuteNanos(), result.getCaptureNanos());
+                latencyStats.record(result);
+            }
+            results[index] = result;
+            states.set(index, DONE);
+            if (listener != null) {
+                listener.onResult(index, result);
+            }
+
+            if (stopOnFailure && !result.isSuccess()) {
+                int skipped = 0;
+                for (int i = next; i < results.length; i++) {
+                    if (states.compareAndSet(i, PENDING, SKIPPED)) {
+                        skipped++;
+                    }
+                }
+                pendingCommands[priority.ordinal()].addAndGet(-skipped);
+                next = results.length;
+            }
+            return true;
+        }
+
+        private boolean isFinished() {
+            while (next < results.length && states.get(next) != PENDING) {
+                next++;
+            }
+            return next >= results.length;
+        }
+    }
+}
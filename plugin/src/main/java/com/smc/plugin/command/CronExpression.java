@@ -0,0 +1,166 @@
+package com.smc.plugin.command;
+
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * A five-field cron expression: minute, hour, day of month, month and day of
+ * week, e.g. {@code *}{@code /5 * * * *} for every five minutes.
+ *
+ * Each field accepts {@code *}, numbers, ranges ({@code 1-5}), steps
+ * ({@code *}{@code /15}, {@code 0-30/10}) and comma-separated lists. Day of
+ * week runs from 0 (Sunday) to 7 (also Sunday). As in classic cron, when both
+ * day fields are restricted a day matches if either of them does.
+ */
+public final class CronExpression {
+
+    // Bit i is set if value i matches
+    private final long minutes;
+    private final long hours;
+    private final long daysOfMonth;
+    private final long months;
+    private final long daysOfWeek;
+    private final boolean dayOfMonthRestricted;
+    private final boolean dayOfWeekRestricted;
+    private final String source;
+
+    private CronExpression(String source, long minutes, long hours, long daysOfMonth, long months,
+                           long daysOfWeek, boolean dayOfMonthRestricted, boolean dayOfWeekRestricted) {
+        this.source = source;
+        this.minutes = minutes;
+        this.hours = hours;
+        this.daysOfMonth = daysOfMonth;
+        this.months = months;
+        this.daysOfWeek = daysOfWeek;
+        this.dayOfMonthRestricted = dayOfMonthRestricted;
+        this.dayOfWeekRestricted = dayOfWeekRestricted;
+    }
+
+    /**
+     * Parses a cron expression.
+     *
+     * @param expression Five whitespace-separated fields
+     * @return The parsed expression
+     * @throws IllegalArgumentException if the expression is invalid
+     */
+    public static CronExpression parse(String expression) {
+        String[] fields = expression == null ? new String[0] : expression.trim().split("\\s+");
+        if (fields.length != 5) {
+            throw new IllegalArgumentException("Cron expression '" + expression
+                + "' must have 5 fields: minute hour day-of-month month day-of-week");
+        }
+        long daysOfWeek = parseField(fields[4], 0, 7, "day of week");
+        if ((daysOfWeek & (1L << 7)) != 0) {
+            daysOfWeek |= 1L;
+        }
+        return new CronExpression(expression.trim(),
+            parseField(fields[0], 0, 59, "minute"),
+            parseField(fields[1], 0, 23, "hour"),
+            parseField(fields[2], 1, 31, "day of month"),
+            parseField(fields[3], 1, 12, "month"),
+            daysOfWeek,
+            !fields[2].equals("*"),
+            !fields[4].equals("*"));
+    }
+
+    /**
+     * Finds the next matching minute.
+     *
+     * @param afterMillis Time after which to search (Unix ms)
+     * @param zone Time zone the fields are interpreted in
+     * @return Start of the first matching minute strictly after the given time
+     * @throws IllegalStateException if nothing matches within five years, e.g. for 31 February
+     */
+    public long next(long afterMillis, ZoneId zone) {
+        ZonedDateTime time = ZonedDateTime.ofInstant(java.time.Instant.ofEpochMilli(afterMillis), zone)
+            .truncatedTo(ChronoUnit.MINUTES)
+            .plusMinutes(1);
+        ZonedDateTime limit = time.plusYears(5);
+
+        while (time.isBefore(limit)) {
+            if (!matches(months, time.getMonthValue())) {
+                time = time.withDayOfMonth(1).truncatedTo(ChronoUnit.DAYS).plusMonths(1);
+            } else if (!matchesDay(time)) {
+                time = time.truncatedTo(ChronoUnit.DAYS).plusDays(1);
+            } else if (!matches(hours, time.getHour())) {
+                time = time.truncatedTo(ChronoUnit.HOURS).plusHours(1);
+            } else if (!matches(minutes, time.getMinute())) {
+                time = time.plusMinutes(1);
+            } else {
+                return time.toInstant().toEpochMilli();
+            }
+        }
+        throw new IllegalStateException("Cron expression '" + source + "' never matches");
+    }
+
+    @Override
+    public String toString() {
+        return source;
+    }
+
+    private boolean matchesDay(ZonedDateTime time) {
+        boolean dayOfMonth = matches(daysOfMonth, time.getDayOfMonth());
+        // DayOfWeek numbers Monday 1 to Sunday 7; cron numbers Sunday 0
+        boolean dayOfWeek = matches(daysOfWeek, time.getDayOfWeek().getValue() % 7);
+        if (dayOfMonthRestricted && dayOfWeekRestricted) {
+            return dayOfMonth || dayOfWeek;
+        }
+        return dayOfMonth && dayOfWeek;
+    }
+
+    private static boolean matches(long bits, int value) {
+        return (bits & (1L << value)) != 0;
+    }
+
+    private static long parseField(String field, int min, int max, String name) {
+        long bits = 0L;
+        for (String part : field.split(",", -1)) {
+            int step = 1;
+            int slash = part.indexOf('/');
+            String range = part;
+            if (slash >= 0) {
+                step = parseNumber(part.substring(slash + 1), 1, max, name, field);
+                range = part.substring(0, slash);
+            }
+
+            int from;
+            int to;
+            if (range.equals("*")) {
+                from = min;
+                to = max;
+            } else {
+                int dash = range.indexOf('-');
+                if (dash >= 0) {
+                    from = parseNumber(range.substring(0, dash), min, max, name, field);
+                    to = parseNumber(range.substring(dash + 1), min, max, name, field);
+                    if (from > to) {
+                        throw new IllegalArgumentException("Invalid " + name + " range '" + range + "'");
+                    }
+                } else {
+                    from = parseNumber(range, min, max, name, field);
+                    // 5/15 means from 5 to the end in steps of 15
+                    to = slash >= 0 ? max : from;
+                }
+            }
+            for (int value = from; value <= to; value += step) {
+                bits |= 1L << value;
+            }
+        }
+        return bits;
+    }
+
+    private static int parseNumber(String text, int min, int max, String name, String field) {
+        int value;
+        try {
+            value = Integer.parseInt(text);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + name + " field '" + field + "'");
+        }
+        if (value < min || value > max) {
+            throw new IllegalArgumentException("The " + name + " must be between " + min + " and " + max
+                + ", got " + value);
+        }
+        return value;
+    }
+}
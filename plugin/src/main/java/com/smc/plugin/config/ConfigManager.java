@@ -1,11 +1,20 @@
 package com.smc.plugin.config;
 
 import com.smc.plugin.SMCPlugin;
+import com.smc.plugin.command.CommandPolicy;
+import com.smc.plugin.command.CommandPriority;
+import com.smc.plugin.command.CommandSchedule;
+import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.configuration.file.FileConfiguration;
 
 import java.security.SecureRandom;
+import java.util.ArrayList;
 import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Manages plugin configuration loading, validation, and hot-reloading.
@@ -26,6 +35,17 @@ public class ConfigManager {
     private String httpHost;
     private int httpPort;
     private String apiKey;
+    private Map<String, String> apiKeyNames;
+    private long maxBodyBytes;
+    
+    // Player Configuration
+    private int playerRefreshTicks;
+    
+    // Hotspot Configuration
+    private boolean hotspotsEnabled;
+    private int hotspotIntervalSeconds;
+    private int hotspotTickBudgetMillis;
+    private int hotspotMaxChunks;
     
     // Logging Configuration
     private int logBufferSize;
@@ -34,6 +54,35 @@ public class ConfigManager {
     // Command Configuration
     private int commandTimeoutSeconds;
     private List<String> commandBlacklist;
+    private int maxCommandJobs;
+    private int commandJobTtlSeconds;
+    private int commandTickBudgetMillis;
+    private int maxCommandOutputChars;
+    private int commandCacheTtlMillis;
+    private List<String> cachedCommands;
+    private CommandPolicy commandPolicy;
+    
+    // Schedule Configuration
+    private int scheduleJitterMillis;
+    private int schedulesPerTick;
+    private Map<String, CommandSchedule> commandSchedules;
+    
+    // Audit Configuration
+    private boolean auditEnabled;
+    private long auditSegmentBytes;
+    private int auditMaxSegments;
+    private int auditFlushIntervalMillis;
+    
+    // Profiling Configuration
+    private boolean listenerProfilingEnabled;
+    private int cpuProfileMaxSeconds;
+    
+    // Rate Limit Configuration
+    private boolean rateLimitEnabled;
+    private int readRateCapacity;
+    private double readRateRefillPerSecond;
+    private int commandRateCapacity;
+    private double commandRateRefillPerSecond;
     
     /**
      * Creates a new configuration manager.
@@ -63,8 +112,14 @@ public class ConfigManager {
         
         // Load and validate all configuration values
         loadHttpConfig();
+        loadPlayerConfig();
+        loadHotspotConfig();
         loadLoggingConfig();
         loadCommandConfig();
+        loadScheduleConfig();
+        loadAuditConfig();
+        loadProfilingConfig();
+        loadRateLimitConfig();
         
         // Validate the configuration
         validateConfig();
@@ -133,6 +188,37 @@ public class ConfigManager {
         httpHost = config.getString("http.host", "127.0.0.1");
         httpPort = config.getInt("http.port", 8080);
         apiKey = config.getString("http.api-key", "change-me-to-a-secure-key");
+        maxBodyBytes = config.getLong("http.max-body-bytes", 1048576L);
+        
+        // Map every accepted key to the client name it authenticates as
+        apiKeyNames = new HashMap<>();
+        ConfigurationSection extraKeys = config.getConfigurationSection("http.api-keys");
+        if (extraKeys != null) {
+            for (String name : extraKeys.getKeys(false)) {
+                String key = extraKeys.getString(name);
+                if (key != null && !key.trim().isEmpty()) {
+                    apiKeyNames.put(key, name);
+                }
+            }
+        }
+        apiKeyNames.put(apiKey, "default");
+    }
+    
+    /**
+     * Loads player snapshot configuration.
+     */
+    private void loadPlayerConfig() {
+        playerRefreshTicks = config.getInt("players.refresh-ticks", 20);
+    }
+    
+    /**
+     * Loads entity and chunk hotspot scan configuration.
+     */
+    private void loadHotspotConfig() {
+        hotspotsEnabled = config.getBoolean("hotspots.enabled", true);
+        hotspotIntervalSeconds = config.getInt("hotspots.interval-seconds", 60);
+        hotspotTickBudgetMillis = config.getInt("hotspots.tick-budget-ms", 1);
+        hotspotMaxChunks = config.getInt("hotspots.max-chunks", 256);
     }
     
     /**
@@ -149,11 +235,92 @@ public class ConfigManager {
     private void loadCommandConfig() {
         commandTimeoutSeconds = config.getInt("commands.timeout-seconds", 30);
         commandBlacklist = config.getStringList("commands.blacklist");
+        maxCommandJobs = config.getInt("commands.jobs.max-jobs", 1000);
+        commandJobTtlSeconds = config.getInt("commands.jobs.ttl-seconds", 300);
+        commandTickBudgetMillis = config.getInt("commands.tick-budget-ms", 10);
+        maxCommandOutputChars = config.getInt("commands.max-output-chars", 65536);
+        commandCacheTtlMillis = config.getInt("commands.cache.ttl-ms", 1000);
+        cachedCommands = config.isList("commands.cache.commands")
+            ? config.getStringList("commands.cache.commands")
+            : java.util.Arrays.asList("list", "tps", "version", "plugins");
         
         // Ensure blacklist is never null
         if (commandBlacklist == null) {
             commandBlacklist = java.util.Arrays.asList("stop", "restart");
         }
+        
+        // Blacklisted base commands are deny rules of their own
+        List<String> denyRules = new java.util.ArrayList<>(commandBlacklist);
+        denyRules.addAll(config.getStringList("commands.policy.deny"));
+        try {
+            commandPolicy = CommandPolicy.compile(denyRules, config.getStringList("commands.policy.allow"));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalStateException("Invalid command policy: " + e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * Loads scheduled command configuration.
+     * 
+     * @throws IllegalStateException if a schedule is invalid
+     */
+    private void loadScheduleConfig() {
+        scheduleJitterMillis = config.getInt("schedules.jitter-ms", 2000);
+        schedulesPerTick = config.getInt("schedules.max-per-tick", 1);
+        
+        commandSchedules = new LinkedHashMap<>();
+        ConfigurationSection entries = config.getConfigurationSection("schedules.entries");
+        if (entries == null) {
+            return;
+        }
+        for (String id : entries.getKeys(false)) {
+            ConfigurationSection entry = entries.getConfigurationSection(id);
+            if (entry == null) {
+                throw new IllegalStateException("Invalid schedule '" + id + "': expected a section");
+            }
+            List<String> commands = entry.isList("commands")
+                ? entry.getStringList("commands")
+                : entry.isString("commands") ? Collections.singletonList(entry.getString("commands")) : null;
+            try {
+                commandSchedules.put(id, CommandSchedule.of(id, commands,
+                    entry.getLong("interval-seconds", 0L),
+                    entry.getString("cron"),
+                    CommandPriority.parse(entry.getString("priority", "bulk")),
+                    entry.getBoolean("stop-on-failure", false),
+                    entry.getBoolean("enabled", true)));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalStateException("Invalid schedule '" + id + "': " + e.getMessage(), e);
+            }
+        }
+    }
+    
+    /**
+     * Loads command audit journal configuration.
+     */
+    private void loadAuditConfig() {
+        auditEnabled = config.getBoolean("audit.enabled", true);
+        auditSegmentBytes = config.getLong("audit.segment-bytes", 16777216L);
+        auditMaxSegments = config.getInt("audit.max-segments", 8);
+        auditFlushIntervalMillis = config.getInt("audit.flush-interval-ms", 1000);
+    }
+    
+    /**
+     * Loads profiling configuration.
+     */
+    private void loadProfilingConfig() {
+        listenerProfilingEnabled = config.getBoolean("profiling.listeners.enabled", false);
+        cpuProfileMaxSeconds = config.getInt("profiling.cpu.max-duration-seconds", 60);
+    }
+    
+    /**
+     * Loads rate limit configuration.
+     */
+    private void loadRateLimitConfig() {
+        rateLimitEnabled = config.getBoolean("rate-limit.enabled", true);
+        readRateCapacity = config.getInt("rate-limit.read.capacity", 60);
+        readRateRefillPerSecond = config.getDouble("rate-limit.read.refill-per-second", 20.0);
+        commandRateCapacity = config.getInt("rate-limit.command.capacity", 10);
+        commandRateRefillPerSecond = config.getDouble("rate-limit.command.refill-per-second", 2.0);
     }
     
     /**
@@ -183,6 +350,32 @@ public class ConfigManager {
             plugin.getLogger().warning("=================================");
         }
         
+        if (maxBodyBytes < 1024) {
+            throw new IllegalStateException("HTTP max body size must be at least 1024 bytes. Current: " + maxBodyBytes);
+        }
+        
+        // Validate player configuration
+        if (playerRefreshTicks < 1) {
+            throw new IllegalStateException("Player refresh interval must be at least 1 tick. Current: " + playerRefreshTicks);
+        }
+        
+        // Validate hotspot configuration
+        if (hotspotIntervalSeconds < 1) {
+            throw new IllegalStateException("Hotspot scan interval must be at least 1 second. Current: " + hotspotIntervalSeconds);
+        }
+        
+        if (hotspotTickBudgetMillis < 1) {
+            throw new IllegalStateException("Hotspot tick budget must be at least 1 ms. Current: " + hotspotTickBudgetMillis);
+        }
+        
+        if (hotspotTickBudgetMillis > 10) {
+            plugin.getLogger().warning("Hotspot tick budget is very large (" + hotspotTickBudgetMillis + " ms). A tick only lasts 50 ms.");
+        }
+        
+        if (hotspotMaxChunks < 1) {
+            throw new IllegalStateException("Hotspot chunk count must be at least 1. Current: " + hotspotMaxChunks);
+        }
+        
         // Validate logging configuration
         if (logBufferSize < 100) {
             throw new IllegalStateException("Log buffer size must be at least 100. Current: " + logBufferSize);
@@ -204,6 +397,70 @@ public class ConfigManager {
         if (commandTimeoutSeconds > 300) {
             plugin.getLogger().warning("Command timeout is very long (" + commandTimeoutSeconds + " seconds). Consider reducing it.");
         }
+        
+        if (commandTickBudgetMillis < 1) {
+            throw new IllegalStateException("Command tick budget must be at least 1 ms. Current: " + commandTickBudgetMillis);
+        }
+        
+        if (commandTickBudgetMillis > 40) {
+            plugin.getLogger().warning("Command tick budget is very large (" + commandTickBudgetMillis + " ms). A tick only lasts 50 ms.");
+        }
+        
+        if (maxCommandOutputChars < 1024) {
+            throw new IllegalStateException("Command output limit must be at least 1024 characters. Current: " + maxCommandOutputChars);
+        }
+        
+        if (commandCacheTtlMillis < 0) {
+            throw new IllegalStateException("Command cache TTL cannot be negative. Current: " + commandCacheTtlMillis);
+        }
+        
+        if (commandCacheTtlMillis > 60000) {
+            plugin.getLogger().warning("Command cache TTL is very long (" + commandCacheTtlMillis + " ms). Cached output may be stale.");
+        }
+        
+        if (maxCommandJobs < 1) {
+            throw new IllegalStateException("Command job table size must be at least 1. Current: " + maxCommandJobs);
+        }
+        
+        if (commandJobTtlSeconds < 1) {
+            throw new IllegalStateException("Command job TTL must be at least 1 second. Current: " + commandJobTtlSeconds);
+        }
+        
+        // Validate schedule configuration
+        if (scheduleJitterMillis < 0) {
+            throw new IllegalStateException("Schedule jitter cannot be negative. Current: " + scheduleJitterMillis);
+        }
+        
+        if (schedulesPerTick < 1) {
+            throw new IllegalStateException("Schedules per tick must be at least 1. Current: " + schedulesPerTick);
+        }
+        
+        // Validate audit configuration
+        if (auditSegmentBytes < 1048576L || auditSegmentBytes > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Audit segment size must be between 1 MiB and 2 GiB. Current: " + auditSegmentBytes);
+        }
+        
+        if (auditMaxSegments < 1) {
+            throw new IllegalStateException("Audit segment count must be at least 1. Current: " + auditMaxSegments);
+        }
+        
+        if (auditFlushIntervalMillis < 1) {
+            throw new IllegalStateException("Audit flush interval must be at least 1 ms. Current: " + auditFlushIntervalMillis);
+        }
+        
+        // Validate profiling configuration
+        if (cpuProfileMaxSeconds < 1 || cpuProfileMaxSeconds > 600) {
+            throw new IllegalStateException("CPU profile duration limit must be between 1 and 600 seconds. Current: " + cpuProfileMaxSeconds);
+        }
+        
+        // Validate rate limit configuration
+        if (readRateCapacity < 1 || commandRateCapacity < 1) {
+            throw new IllegalStateException("Rate limit capacity must be at least 1");
+        }
+        
+        if (readRateRefillPerSecond <= 0 || commandRateRefillPerSecond <= 0) {
+            throw new IllegalStateException("Rate limit refill-per-second must be greater than 0");
+        }
     }
     
     // Getters for HTTP configuration
@@ -224,6 +481,44 @@ public class ConfigManager {
         return apiKey;
     }
     
+    public long getMaxBodyBytes() {
+        return maxBodyBytes;
+    }
+    
+    /**
+     * Resolves an API key to the name of the client it belongs to.
+     * 
+     * @param key The API key presented by the client
+     * @return The client name ("default" for the primary key), or null if the key is unknown
+     */
+    public String getApiKeyName(String key) {
+        return key != null ? apiKeyNames.get(key) : null;
+    }
+    
+    // Getters for player configuration
+    
+    public int getPlayerRefreshTicks() {
+        return playerRefreshTicks;
+    }
+    
+    // Getters for hotspot configuration
+    
+    public boolean isHotspotsEnabled() {
+        return hotspotsEnabled;
+    }
+    
+    public int getHotspotIntervalSeconds() {
+        return hotspotIntervalSeconds;
+    }
+    
+    public int getHotspotTickBudgetMillis() {
+        return hotspotTickBudgetMillis;
+    }
+    
+    public int getHotspotMaxChunks() {
+        return hotspotMaxChunks;
+    }
+    
     // Getters for logging configuration
     
     public int getLogBufferSize() {
@@ -244,33 +539,131 @@ public class ConfigManager {
         return commandBlacklist;
     }
     
+    public int getCommandTickBudgetMillis() {
+        return commandTickBudgetMillis;
+    }
+    
+    public int getMaxCommandOutputChars() {
+        return maxCommandOutputChars;
+    }
+    
+    public int getCommandCacheTtlMillis() {
+        return commandCacheTtlMillis;
+    }
+    
+    public List<String> getCachedCommands() {
+        return cachedCommands;
+    }
+    
+    public int getMaxCommandJobs() {
+        return maxCommandJobs;
+    }
+    
+    public int getCommandJobTtlSeconds() {
+        return commandJobTtlSeconds;
+    }
+    
+    // Getters for schedule configuration
+    
+    public int getScheduleJitterMillis() {
+        return scheduleJitterMillis;
+    }
+    
+    public int getSchedulesPerTick() {
+        return schedulesPerTick;
+    }
+    
+    public synchronized List<CommandSchedule> getCommandSchedules() {
+        return new ArrayList<>(commandSchedules.values());
+    }
+    
     /**
-     * Checks if a command is blacklisted.
+     * Adds or replaces a schedule and writes it to config.yml.
      * 
-     * @param command The command to check (without leading slash)
-     * @return true if the command is blacklisted, false otherwise
+     * @param schedule The schedule
      */
-    public boolean isCommandBlacklisted(String command) {
-        if (command == null || command.trim().isEmpty()) {
-            return false;
-        }
-        
-        // Remove leading slash if present
-        String cleanCommand = command.trim();
-        if (cleanCommand.startsWith("/")) {
-            cleanCommand = cleanCommand.substring(1);
+    public synchronized void saveCommandSchedule(CommandSchedule schedule) {
+        ConfigurationSection entry = config.createSection("schedules.entries." + schedule.getId());
+        entry.set("commands", schedule.getCommands());
+        if (schedule.getCron() != null) {
+            entry.set("cron", schedule.getCron().toString());
+        } else {
+            entry.set("interval-seconds", schedule.getIntervalSeconds());
         }
-        
-        // Extract the base command (first word)
-        String baseCommand = cleanCommand.split("\\s+")[0].toLowerCase();
-        
-        // Check if it's in the blacklist
-        for (String blacklisted : commandBlacklist) {
-            if (blacklisted.equalsIgnoreCase(baseCommand)) {
-                return true;
-            }
-        }
-        
-        return false;
+        entry.set("priority", schedule.getPriority().getLabel());
+        entry.set("stop-on-failure", schedule.isStopOnFailure());
+        entry.set("enabled", schedule.isEnabled());
+        commandSchedules.put(schedule.getId(), schedule);
+        plugin.saveConfig();
+    }
+    
+    /**
+     * Removes a schedule from config.yml.
+     * 
+     * @param id The schedule ID
+     */
+    public synchronized void removeCommandSchedule(String id) {
+        config.set("schedules.entries." + id, null);
+        commandSchedules.remove(id);
+        plugin.saveConfig();
+    }
+    
+    // Getters for profiling configuration
+    
+    public boolean isListenerProfilingEnabled() {
+        return listenerProfilingEnabled;
+    }
+    
+    public int getCpuProfileMaxSeconds() {
+        return cpuProfileMaxSeconds;
+    }
+    
+    // Getters for audit configuration
+    
+    public boolean isAuditEnabled() {
+        return auditEnabled;
+    }
+    
+    public int getAuditSegmentBytes() {
+        return (int) auditSegmentBytes;
+    }
+    
+    public int getAuditMaxSegments() {
+        return auditMaxSegments;
+    }
+    
+    public int getAuditFlushIntervalMillis() {
+        return auditFlushIntervalMillis;
+    }
+    
+    // Getters for rate limit configuration
+    
+    public boolean isRateLimitEnabled() {
+        return rateLimitEnabled;
+    }
+    
+    public int getReadRateCapacity() {
+        return readRateCapacity;
+    }
+    
+    public double getReadRateRefillPerSecond() {
+        return readRateRefillPerSecond;
+    }
+    
+    public int getCommandRateCapacity() {
+        return commandRateCapacity;
+    }
+    
+    public double getCommandRateRefillPerSecond() {
+        return commandRateRefillPerSecond;
+    }
+    
+    /**
+     * Gets the compiled command policy built from the blacklist and the policy rules.
+     * 
+     * @return The command policy
+     */
+    public CommandPolicy getCommandPolicy() {
+        return commandPolicy;
     }
 }
@@ -0,0 +1,461 @@
+package com.smc.plugin.health;
+
+import com.smc.plugin.SMCPlugin;
+import com.smc.plugin.metrics.PrometheusWriter;
+import org.bukkit.Bukkit;
+import org.bukkit.Chunk;
+import org.bukkit.World;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.EntityType;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counts entities and tile entities per loaded chunk to find lag hotspots.
+ *
+ * A scan walks every loaded chunk of every world, but only for a configured
+ * amount of main-thread time per tick, continuing where it stopped on the next
+ * tick, so a scan never stalls the server however many chunks are loaded. When
+ * a scan has visited every world, its per-world totals and busiest chunks are
+ * published as an immutable snapshot that the HTTP threads read without
+ * touching the server. A new scan starts at a fixed interval.
+ *
+ * Chunks that unload while a scan is in progress are skipped, never loaded
+ * again, so counts describe a scan period rather than a single instant.
+ */
+public class HotspotSampler {
+
+    private static final EntityType[] ENTITY_TYPES = EntityType.values();
+    private static final Comparator<ChunkStats> BY_ENTITIES = (a, b) -> Integer.compare(b.entities, a.entities);
+    private static final Comparator<ChunkStats> BY_TILE_ENTITIES =
+        (a, b) -> Integer.compare(b.tileEntities, a.tileEntities);
+
+    private final SMCPlugin plugin;
+    private final long intervalNanos;
+    private final long budgetNanos;
+    private final int maxChunks;
+    private volatile Snapshot snapshot;
+    private BukkitTask task;
+    // Main thread only
+    private Scan scan;
+    private long nextScanAt;
+    private long scans;
+
+    /**
+     * Creates a new hotspot sampler.
+     *
+     * @param plugin The plugin instance
+     */
+    public HotspotSampler(SMCPlugin plugin) {
+        this.plugin = plugin;
+        this.intervalNanos = TimeUnit.SECONDS.toNanos(plugin.getConfigManager().getHotspotIntervalSeconds());
+        this.budgetNanos = TimeUnit.MILLISECONDS.toNanos(plugin.getConfigManager().getHotspotTickBudgetMillis());
+        this.maxChunks = plugin.getConfigManager().getHotspotMaxChunks();
+    }
+
+    /**
+     * Starts the first scan on the next tick.
+     */
+    public void start() {
+        if (task == null) {
+            nextScanAt = System.nanoTime();
+            task = Bukkit.getScheduler().runTaskTimer(plugin, this::tick, 1L, 1L);
+        }
+    }
+
+    /**
+     * Stops scanning. A scan in progress is abandoned; the last snapshot is kept.
+     */
+    public void shutdown() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+        scan = null;
+    }
+
+    /**
+     * Gets the result of the last completed scan. Safe to call from any thread.
+     *
+     * @return The snapshot, or null if no scan has completed yet
+     */
+    public Snapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Renders the hotspot metrics in Prometheus text format.
+     *
+     * @return The exposition text
+     */
+    public String toPrometheus() {
+        Snapshot current = snapshot;
+        PrometheusWriter writer = new PrometheusWriter();
+        if (current == null) {
+            return writer.toString();
+        }
+        writer.family("smc_world_loaded_chunks", "gauge", "Loaded chunks per world at the last hotspot scan.");
+        for (WorldStats world : current.worlds) {
+            writer.sample("smc_world_loaded_chunks", new String[] {"world", world.name}, world.loadedChunks);
+        }
+        writer.family("smc_world_entities", "gauge", "Entities per world at the last hotspot scan.");
+        for (WorldStats world : current.worlds) {
+            writer.sample("smc_world_entities", new String[] {"world", world.name}, world.entities);
+        }
+        writer.family("smc_world_tile_entities", "gauge", "Tile entities per world at the last hotspot scan.");
+        for (WorldStats world : current.worlds) {
+            writer.sample("smc_world_tile_entities", new String[] {"world", world.name}, world.tileEntities);
+        }
+        writer.family("smc_hotspot_scan_busy_seconds", "gauge", "Main-thread time used by the last hotspot scan.")
+            .sample("smc_hotspot_scan_busy_seconds", null, current.busyNanos / 1e9);
+        return writer.toString();
+    }
+
+    /**
+     * Continues the current scan, or starts one when it is due. Runs on the main thread.
+     */
+    private void tick() {
+        long start = System.nanoTime();
+        if (scan == null) {
+            if (start - nextScanAt < 0) {
+                return;
+            }
+            scan = new Scan(Bukkit.getWorlds());
+            nextScanAt = start + intervalNanos;
+        }
+
+        long deadline = start + budgetNanos;
+        boolean done;
+        do {
+            done = !scan.step();
+        } while (!done && System.nanoTime() - deadline < 0);
+        scan.ticks++;
+        scan.busyNanos += System.nanoTime() - start;
+
+        if (done) {
+            snapshot = scan.finish(++scans, maxChunks);
+            scan = null;
+        }
+    }
+
+    /**
+     * State of a scan in progress.
+     */
+    private static final class Scan {
+        private final List<World> worlds;
+        private final long startedAt;
+        private final List<WorldStats> worldStats;
+        private final List<ChunkStats> chunks;
+        private final int[] typeCounts;
+        private int worldIndex;
+        private Chunk[] worldChunks;
+        private int chunkIndex;
+        private int[] worldTypeCounts;
+        private WorldStats current;
+        private int ticks;
+        private long busyNanos;
+
+        private Scan(List<World> worlds) {
+            this.worlds = new ArrayList<>(worlds);
+            this.startedAt = System.currentTimeMillis();
+            this.worldStats = new ArrayList<>();
+            this.chunks = new ArrayList<>();
+            this.typeCounts = new int[ENTITY_TYPES.length];
+        }
+
+        /**
+         * Visits the next chunk.
+         *
+         * @return false once every world has been visited
+         */
+        private boolean step() {
+            if (worldChunks == null || chunkIndex == worldChunks.length) {
+                if (current != null) {
+                    current.entityTypes = topTypes(worldTypeCounts);
+                    worldStats.add(current);
+                    current = null;
+                }
+                if (worldIndex == worlds.size()) {
+                    return false;
+                }
+                World world = worlds.get(worldIndex++);
+                worldChunks = world.getLoadedChunks();
+                chunkIndex = 0;
+                worldTypeCounts = new int[ENTITY_TYPES.length];
+                current = new WorldStats(world.getName());
+                return true;
+            }
+
+            Chunk chunk = worldChunks[chunkIndex++];
+            // Reading an unloaded chunk would load it again
+            if (!chunk.isLoaded()) {
+                return true;
+            }
+            Entity[] entities = chunk.getEntities();
+            int tileEntities = chunk.getTileEntities().length;
+
+            EntityType topType = null;
+            int topCount = 0;
+            for (Entity entity : entities) {
+                int type = entity.getType().ordinal();
+                worldTypeCounts[type]++;
+                if (++typeCounts[type] > topCount) {
+                    topCount = typeCounts[type];
+                    topType = ENTITY_TYPES[type];
+                }
+            }
+            for (Entity entity : entities) {
+                typeCounts[entity.getType().ordinal()] = 0;
+            }
+
+            current.loadedChunks++;
+            current.entities += entities.length;
+            current.tileEntities += tileEntities;
+            if (entities.length > 0 || tileEntities > 0) {
+                chunks.add(new ChunkStats(current.name, chunk.getX(), chunk.getZ(), entities.length, tileEntities,
+                    topType != null ? topType.name() : null, topCount));
+            }
+            return true;
+        }
+
+        private Snapshot finish(long generation, int maxChunks) {
+            List<ChunkStats> byEntities = top(chunks, BY_ENTITIES, maxChunks);
+            List<ChunkStats> byTileEntities = top(chunks, BY_TILE_ENTITIES, maxChunks);
+            return new Snapshot(generation, startedAt, System.currentTimeMillis(), ticks, busyNanos,
+                Collections.unmodifiableList(worldStats), byEntities, byTileEntities);
+        }
+
+        private static List<ChunkStats> top(List<ChunkStats> chunks, Comparator<ChunkStats> order, int limit) {
+            List<ChunkStats> sorted = new ArrayList<>(chunks);
+            Collections.sort(sorted, order);
+            return Collections.unmodifiableList(new ArrayList<>(sorted.subList(0, Math.min(limit, sorted.size()))));
+        }
+
+        private static Map<String, Integer> topTypes(int[] counts) {
+            List<Integer> types = new ArrayList<>();
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] > 0) {
+                    types.add(i);
+                }
+            }
+            Collections.sort(types, (a, b) -> Integer.compare(counts[b], counts[a]));
+            Map<String, Integer> result = new LinkedHashMap<>();
+            for (int type : types) {
+                result.put(ENTITY_TYPES[type].name(), counts[type]);
+            }
+            return Collections.unmodifiableMap(result);
+        }
+    }
+
+    /**
+     * Result of one completed scan.
+     */
+    public static final class Snapshot {
+        private final long generation;
+        private final long startedAt;
+        private final long completedAt;
+        private final int ticks;
+        private final long busyNanos;
+        private final List<WorldStats> worlds;
+        private final List<ChunkStats> byEntities;
+        private final List<ChunkStats> byTileEntities;
+
+        private Snapshot(long generation, long startedAt, long completedAt, int ticks, long busyNanos,
+                         List<WorldStats> worlds, List<ChunkStats> byEntities, List<ChunkStats> byTileEntities) {
+            this.generation = generation;
+            this.startedAt = startedAt;
+            this.completedAt = completedAt;
+            this.ticks = ticks;
+            this.busyNanos = busyNanos;
+            this.worlds = worlds;
+            this.byEntities = byEntities;
+            this.byTileEntities = byTileEntities;
+        }
+
+        /**
+         * Gets the number of the scan, for use in ETags.
+         *
+         * @return The scan number, starting at 1
+         */
+        public long getGeneration() {
+            return generation;
+        }
+
+        /**
+         * Gets when the scan started.
+         *
+         * @return Unix time in ms
+         */
+        public long getStartedAt() {
+            return startedAt;
+        }
+
+        /**
+         * Gets when the scan completed.
+         *
+         * @return Unix time in ms
+         */
+        public long getCompletedAt() {
+            return completedAt;
+        }
+
+        /**
+         * Gets the number of ticks the scan was spread over.
+         *
+         * @return The tick count
+         */
+        public int getTicks() {
+            return ticks;
+        }
+
+        /**
+         * Gets the main-thread time the scan used in total.
+         *
+         * @return The time in ns
+         */
+        public long getBusyNanos() {
+            return busyNanos;
+        }
+
+        public List<WorldStats> getWorlds() {
+            return worlds;
+        }
+
+        /**
+         * Gets the chunks with the most entities, busiest first.
+         *
+         * @return Up to the configured number of chunks
+         */
+        public List<ChunkStats> getByEntities() {
+            return byEntities;
+        }
+
+        /**
+         * Gets the chunks with the most tile entities, busiest first.
+         *
+         * @return Up to the configured number of chunks
+         */
+        public List<ChunkStats> getByTileEntities() {
+            return byTileEntities;
+        }
+    }
+
+    /**
+     * Totals of one world.
+     */
+    public static final class WorldStats {
+        private final String name;
+        private int loadedChunks;
+        private long entities;
+        private long tileEntities;
+        private Map<String, Integer> entityTypes;
+
+        private WorldStats(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Gets the number of chunks that were still loaded when the scan reached them.
+         *
+         * @return The chunk count
+         */
+        public int getLoadedChunks() {
+            return loadedChunks;
+        }
+
+        public long getEntities() {
+            return entities;
+        }
+
+        public long getTileEntities() {
+            return tileEntities;
+        }
+
+        /**
+         * Gets the entity count per entity type.
+         *
+         * @return Counts keyed by type name, most common first
+         */
+        public Map<String, Integer> getEntityTypes() {
+            return entityTypes;
+        }
+    }
+
+    /**
+     * Counts of one chunk.
+     */
+    public static final class ChunkStats {
+        private final String world;
+        private final int x;
+        private final int z;
+        private final int entities;
+        private final int tileEntities;
+        private final String topEntityType;
+        private final int topEntityCount;
+
+        private ChunkStats(String world, int x, int z, int entities, int tileEntities, String topEntityType,
+                           int topEntityCount) {
+            this.world = world;
+            this.x = x;
+            this.z = z;
+            this.entities = entities;
+            this.tileEntities = tileEntities;
+            this.topEntityType = topEntityType;
+            this.topEntityCount = topEntityCount;
+        }
+
+        public String getWorld() {
+            return world;
+        }
+
+        /**
+         * Gets the chunk X coordinate; the chunk covers blocks x * 16 to x * 16 + 15.
+         *
+         * @return The chunk X
+         */
+        public int getX() {
+            return x;
+        }
+
+        /**
+         * Gets the chunk Z coordinate; the chunk covers blocks z * 16 to z * 16 + 15.
+         *
+         * @return The chunk Z
+         */
+        public int getZ() {
+            return z;
+        }
+
+        public int getEntities() {
+            return entities;
+        }
+
+        public int getTileEntities() {
+            return tileEntities;
+        }
+
+        /**
+         * Gets the most common entity type in the chunk.
+         *
+         * @return The type name, or null if the chunk has no entities
+         */
+        public String getTopEntityType() {
+            return topEntityType;
+        }
+
+        public int getTopEntityCount() {
+            return topEntityCount;
+        }
+    }
+}
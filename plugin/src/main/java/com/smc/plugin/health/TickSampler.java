@@ -0,0 +1,380 @@
+package com.smc.plugin.health;
+
+import com.smc.plugin.SMCPlugin;
+import com.smc.plugin.metrics.PrometheusWriter;
+import com.smc.plugin.version.ReflectionRegistry;
+import org.bukkit.Bukkit;
+import org.bukkit.event.Event;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.HandlerList;
+import org.bukkit.event.Listener;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records the duration of every server tick and derives TPS and MSPT from them.
+ *
+ * On Paper the sampler listens to the tick end event, which reports how long
+ * the tick took. Elsewhere a task that runs once per tick measures the time
+ * between consecutive ticks instead; that equals the tick duration while the
+ * server is falling behind and is 50 ms while it keeps up.
+ *
+ * The main thread writes each tick's end time and duration into a fixed ring
+ * large enough for the longest window. Summaries are computed by readers from a
+ * copy of the ring, at most once per second, and cached until the next second.
+ */
+public class TickSampler implements Listener {
+
+    /** Holds more than five minutes of ticks at 20 TPS. */
+    private static final int CAPACITY = 8192;
+    private static final int MASK = CAPACITY - 1;
+    private static final long SUMMARY_PERIOD_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final double MAX_TPS = 20.0;
+    private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    /**
+     * The rolling windows TPS and MSPT are reported over.
+     */
+    public enum Window {
+        FIVE_SECONDS("5s", 5),
+        ONE_MINUTE("1m", 60),
+        FIVE_MINUTES("5m", 300);
+
+        private final String label;
+        private final long nanos;
+
+        Window(String label, long seconds) {
+            this.label = label;
+            this.nanos = TimeUnit.SECONDS.toNanos(seconds);
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    private final SMCPlugin plugin;
+    private final long[] endNanos;
+    private final long[] durationNanos;
+    private final long origin;
+    // Written by the main thread only; the volatile write publishes the ring slot
+    private volatile long ticks;
+    private volatile Summary summary;
+    private volatile String source;
+    private long lastTickNanos;
+    private BukkitTask task;
+
+    /**
+     * Creates a new tick sampler.
+     *
+     * @param plugin The plugin instance
+     */
+    public TickSampler(SMCPlugin plugin) {
+        this.plugin = plugin;
+        this.endNanos = new long[CAPACITY];
+        this.durationNanos = new long[CAPACITY];
+        this.origin = System.nanoTime();
+        this.source = "none";
+    }
+
+    /**
+     * Starts recording ticks, from Paper's tick end event if the server has it.
+     */
+    public void start() {
+        if (task != null || !"none".equals(source)) {
+            return;
+        }
+
+        ReflectionRegistry reflection = plugin.getReflectionRegistry();
+        Class<? extends Event> tickEndEvent = reflection.getTickEndEvent();
+        if (tickEndEvent != null) {
+            Bukkit.getPluginManager().registerEvent(tickEndEvent, this, EventPriority.MONITOR, (listener, event) -> {
+                // Executors are also called for subclasses of the event
+                if (tickEndEvent.isInstance(event)) {
+                    double millis = reflection.getTickDuration(event);
+                    if (millis >= 0.0) {
+                        record(System.nanoTime(), (long) (millis * 1_000_000.0));
+                    }
+                }
+            }, plugin);
+            source = "paper";
+        } else {
+            lastTickNanos = 0L;
+            task = Bukkit.getScheduler().runTaskTimer(plugin, this::onTick, 1L, 1L);
+            source = "scheduler";
+        }
+    }
+
+    /**
+     * Stops recording ticks. The recorded history is kept.
+     */
+    public void shutdown() {
+        HandlerList.unregisterAll(this);
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+        source = "none";
+    }
+
+    /**
+     * Gets how tick durations are measured.
+     *
+     * @return "paper", "scheduler", or "none" while stopped
+     */
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * Gets a number that changes whenever {@link #getSummary()} may return a
+     * new summary, for use in ETags.
+     *
+     * @return The summary generation
+     */
+    public long getGeneration() {
+        return (System.nanoTime() - origin) / SUMMARY_PERIOD_NANOS;
+    }
+
+    /**
+     * Gets the TPS and MSPT summary. Safe to call from any thread.
+     *
+     * @return The summary of the current second
+     */
+    public Summary getSummary() {
+        long generation = getGeneration();
+        Summary current = summary;
+        if (current == null || current.generation != generation) {
+            // Concurrent readers may both compute it; either result is valid for this second
+            current = compute(generation);
+            summary = current;
+        }
+        return current;
+    }
+
+    /**
+     * Renders the tick metrics in Prometheus text format.
+     *
+     * @return The exposition text
+     */
+    public String toPrometheus() {
+        Summary current = getSummary();
+        PrometheusWriter writer = new PrometheusWriter();
+        writer.family("smc_ticks_total", "counter", "Server ticks recorded by the tick sampler.")
+            .sample("smc_ticks_total", null, current.getTicks());
+        writer.family("smc_tps", "gauge", "Ticks per second over a rolling window.");
+        for (Window window : Window.values()) {
+            writer.sample("smc_tps", new String[] {"window", window.getLabel()}, current.get(window).getTps());
+        }
+        writer.family("smc_mspt_milliseconds", "gauge", "Tick duration percentiles over a rolling window.");
+        for (Window window : Window.values()) {
+            WindowStats stats = current.get(window);
+            String label = window.getLabel();
+            writer.sample("smc_mspt_milliseconds", new String[] {"window", label, "quantile", "0.5"}, stats.getP50())
+                .sample("smc_mspt_milliseconds", new String[] {"window", label, "quantile", "0.95"}, stats.getP95())
+                .sample("smc_mspt_milliseconds", new String[] {"window", label, "quantile", "0.99"}, stats.getP99())
+                .sample("smc_mspt_milliseconds", new String[] {"window", label, "quantile", "1"}, stats.getMax());
+        }
+        return writer.toString();
+    }
+
+    /**
+     * Measures the time since the previous tick. Runs on the main thread.
+     */
+    private void onTick() {
+        long now = System.nanoTime();
+        if (lastTickNanos != 0L) {
+            record(now, now - lastTickNanos);
+        }
+        lastTickNanos = now;
+    }
+
+    /**
+     * Appends one tick to the ring. Runs on the main thread.
+     */
+    private void record(long end, long duration) {
+        long tick = ticks;
+        int slot = (int) (tick & MASK);
+        endNanos[slot] = end;
+        durationNanos[slot] = duration;
+        ticks = tick + 1;
+    }
+
+    private Summary compute(long generation) {
+        long now = System.nanoTime();
+        long recorded = ticks;
+        int count = (int) Math.min(recorded, CAPACITY);
+        long first = recorded - count;
+        long[] ends = new long[count];
+        long[] durations = new long[count];
+        for (int i = 0; i < count; i++) {
+            int slot = (int) ((first + i) & MASK);
+            ends[i] = endNanos[slot];
+            durations[i] = durationNanos[slot];
+        }
+
+        // Drop the oldest entries if the main thread overwrote them while they were copied;
+        // the slot of the tick being written counts as overwritten too
+        int overwritten = (int) Math.min(count, Math.max(0L, ticks + 1 - CAPACITY - first));
+        boolean truncated = first > 0 || overwritten > 0;
+        int start = overwritten;
+
+        WindowStats[] windows = new WindowStats[Window.values().length];
+        for (Window window : Window.values()) {
+            int from = firstAfter(ends, start, count, now - window.nanos);
+            long span = Math.min(window.nanos, now - origin);
+            if (truncated && from == start && count > start) {
+                // The ring does not reach back to the start of the window
+                span = now - ends[start];
+                from = start + 1;
+            }
+            windows[window.ordinal()] = WindowStats.of(durations, from, count, span);
+        }
+        return new Summary(generation, recorded, windows);
+    }
+
+    /**
+     * Finds the first index in [from, to) whose end time is after the cutoff.
+     */
+    private static int firstAfter(long[] ends, int from, int to, long cutoff) {
+        int low = from;
+        int high = to;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (ends[mid] - cutoff <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * TPS and MSPT over every window, as of one second.
+     */
+    public static final class Summary {
+        private final long generation;
+        private final long ticks;
+        private final WindowStats[] windows;
+
+        private Summary(long generation, long ticks, WindowStats[] windows) {
+            this.generation = generation;
+            this.ticks = ticks;
+            this.windows = windows;
+        }
+
+        /**
+         * Gets the number of ticks recorded since the sampler started.
+         *
+         * @return The tick count
+         */
+        public long getTicks() {
+            return ticks;
+        }
+
+        public WindowStats get(Window window) {
+            return windows[window.ordinal()];
+        }
+    }
+
+    /**
+     * TPS and tick duration percentiles over one window.
+     */
+    public static final class WindowStats {
+        private final int ticks;
+        private final double tps;
+        private final double p50;
+        private final double p95;
+        private final double p99;
+        private final double max;
+        private final double mean;
+
+        private WindowStats(int ticks, double tps, double p50, double p95, double p99, double max, double mean) {
+            this.ticks = ticks;
+            this.tps = tps;
+            this.p50 = p50;
+            this.p95 = p95;
+            this.p99 = p99;
+            this.max = max;
+            this.mean = mean;
+        }
+
+        private static WindowStats of(long[] durations, int from, int to, long spanNanos) {
+            int count = to - from;
+            // Less than a tick of history says nothing about the rate yet
+            double tps = spanNanos < TICK_NANOS
+                ? MAX_TPS
+                : Math.min(MAX_TPS, count * (double) TimeUnit.SECONDS.toNanos(1) / spanNanos);
+            if (count == 0) {
+                return new WindowStats(0, round(tps), 0.0, 0.0, 0.0, 0.0, 0.0);
+            }
+
+            long[] sorted = Arrays.copyOfRange(durations, from, to);
+            Arrays.sort(sorted);
+            long sum = 0L;
+            for (long duration : sorted) {
+                sum += duration;
+            }
+            return new WindowStats(count, round(tps), millis(percentile(sorted, 50.0)),
+                millis(percentile(sorted, 95.0)), millis(percentile(sorted, 99.0)),
+                millis(sorted[count - 1]), millis(sum / count));
+        }
+
+        /**
+         * Nearest-rank percentile of sorted values.
+         */
+        private static long percentile(long[] sorted, double percentile) {
+            int rank = (int) Math.ceil(percentile / 100.0 * sorted.length);
+            return sorted[Math.max(0, rank - 1)];
+        }
+
+        private static double millis(long nanos) {
+            return round(nanos / 1_000_000.0);
+        }
+
+        private static double round(double value) {
+            return Math.round(value * 100.0) / 100.0;
+        }
+
+        /**
+         * Gets the number of ticks that ended within the window.
+         *
+         * @return The tick count
+         */
+        public int getTicks() {
+            return ticks;
+        }
+
+        /**
+         * Gets the ticks per second, capped at 20.
+         *
+         * @return The TPS
+         */
+        public double getTps() {
+            return tps;
+        }
+
+        public double getP50() {
+            return p50;
+        }
+
+        public double getP95() {
+            return p95;
+        }
+
+        public double getP99() {
+            return p99;
+        }
+
+        public double getMax() {
+            return max;
+        }
+
+        public double getMean() {
+            return mean;
+        }
+    }
+}
@@ -4,6 +4,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.logging.Level;
@@ -18,9 +19,10 @@ import java.util.logging.Level;
 public class LogCollector {
     
     /**
-     * Represents a single log entry with timestamp, level, logger name, and message.
+     * Represents a single log entry with sequence number, timestamp, level, logger name, and message.
      */
     public static class LogEntry {
+        private final long sequence;
         private final long timestamp;
         private final String level;
         private final String logger;
@@ -35,12 +37,30 @@ public class LogCollector {
          * @param message Log message content
          */
         public LogEntry(long timestamp, String level, String logger, String message) {
+            this(0L, timestamp, level, logger, message);
+        }
+        
+        /**
+         * Creates a new log entry with a collector-assigned sequence number.
+         * 
+         * @param sequence Monotonically increasing sequence number
+         * @param timestamp Unix timestamp in milliseconds
+         * @param level Log level (INFO, WARN, ERROR, etc.)
+         * @param logger Logger name (often the plugin or class name)
+         * @param message Log message content
+         */
+        public LogEntry(long sequence, long timestamp, String level, String logger, String message) {
+            this.sequence = sequence;
             this.timestamp = timestamp;
             this.level = level;
             this.logger = logger;
             this.message = message;
         }
         
+        public long getSequence() {
+            return sequence;
+        }
+        
         public long getTimestamp() {
             return timestamp;
         }
@@ -63,10 +83,43 @@ public class LogCollector {
         }
     }
     
+    /**
+     * The views of the buffer served by the log endpoints.
+     */
+    public enum Stream {
+        /** Every entry. */
+        ALL,
+        /** ERROR entries, as returned by {@link #getErrors(String, int)}. */
+        ERRORS,
+        /** WARN and WARNING entries, as returned by {@link #getWarnings(String, int)}. */
+        WARNINGS;
+        
+        /**
+         * Gets the stream an entry of the given level belongs to besides {@link #ALL}.
+         * 
+         * @param level Log level
+         * @return The level stream, or null if the level has none
+         */
+        static Stream ofLevel(String level) {
+            String upper = level.toUpperCase();
+            if (upper.equals("ERROR")) {
+                return ERRORS;
+            }
+            if (upper.equals("WARN") || upper.equals("WARNING")) {
+                return WARNINGS;
+            }
+            return null;
+        }
+    }
+    
     private final int maxSize;
     private final ConcurrentLinkedQueue<LogEntry> logBuffer;
     private final ReadWriteLock lock;
     private final long retentionMillis;
+    private final AtomicLong sequence;
+    private final AtomicLong[] streamSequences;
+    private final AtomicLong[] streamEvictions;
+    private final AtomicLong removals;
     
     /**
      * Creates a new LogCollector with the specified buffer size and retention period.
@@ -79,6 +132,14 @@ public class LogCollector {
         this.logBuffer = new ConcurrentLinkedQueue<>();
         this.lock = new ReentrantReadWriteLock();
         this.retentionMillis = retentionHours * 60L * 60L * 1000L;
+        this.sequence = new AtomicLong();
+        this.streamSequences = new AtomicLong[Stream.values().length];
+        this.streamEvictions = new AtomicLong[Stream.values().length];
+        for (int i = 0; i < streamSequences.length; i++) {
+            streamSequences[i] = new AtomicLong();
+            streamEvictions[i] = new AtomicLong();
+        }
+        this.removals = new AtomicLong();
     }
     
     /**
@@ -99,17 +160,31 @@ public class LogCollector {
      */
     public void addLog(String level, String logger, String message) {
         long timestamp = System.currentTimeMillis();
-        LogEntry entry = new LogEntry(timestamp, level, logger, message);
         
         lock.writeLock().lock();
         try {
+            // Assign the sequence under the lock so buffer order matches sequence order
+            LogEntry entry = new LogEntry(sequence.get() + 1, timestamp, level, logger, message);
+            
             // Add the new entry
             logBuffer.offer(entry);
             
             // Remove oldest entries if buffer is full
             while (logBuffer.size() > maxSize) {
-                logBuffer.poll();
+                LogEntry evicted = logBuffer.poll();
+                // Entries of any level push out the oldest, which may belong to a stream with no new entries
+                Stream evictedStream = Stream.ofLevel(evicted.getLevel());
+                if (evictedStream != null) {
+                    streamEvictions[evictedStream.ordinal()].incrementAndGet();
+                }
             }
+            
+            // Publish the sequence only once the entry is visible to readers
+            Stream stream = Stream.ofLevel(level);
+            if (stream != null) {
+                streamSequences[stream.ordinal()].set(entry.getSequence());
+            }
+            sequence.set(entry.getSequence());
         } finally {
             lock.writeLock().unlock();
         }
@@ -144,6 +219,33 @@ public class LogCollector {
      * @return List of filtered log entries (newest first)
      */
     public List<LogEntry> getLogs(int limit, Long startTime, Long endTime) {
+        return getLogs(limit, startTime, endTime, null);
+    }
+    
+    /**
+     * Retrieves log entries with optional filtering, including a sequence cursor.
+     * 
+     * @param limit Maximum number of entries to return (most recent)
+     * @param startTime Start of time range (Unix timestamp in ms), null for no lower bound
+     * @param endTime End of time range (Unix timestamp in ms), null for no upper bound
+     * @param sinceSequence Only return entries with a greater sequence number, null for all
+     * @return List of filtered log entries (newest first)
+     */
+    public List<LogEntry> getLogs(int limit, Long startTime, Long endTime, Long sinceSequence) {
+        return getLogs(limit, startTime, endTime, sinceSequence, null);
+    }
+    
+    /**
+     * Retrieves log entries with optional filtering within a sequence range.
+     * 
+     * @param limit Maximum number of entries to return (most recent)
+     * @param startTime Start of time range (Unix timestamp in ms), null for no lower bound
+     * @param endTime End of time range (Unix timestamp in ms), null for no upper bound
+     * @param sinceSequence Only return entries with a greater sequence number, null for all
+     * @param beforeSequence Only return entries with a smaller sequence number, null for all
+     * @return List of filtered log entries (newest first)
+     */
+    public List<LogEntry> getLogs(int limit, Long startTime, Long endTime, Long sinceSequence, Long beforeSequence) {
         lock.readLock().lock();
         try {
             List<LogEntry> result = new ArrayList<>();
@@ -160,6 +262,15 @@ public class LogCollector {
                     break;
                 }
                 
+                // Entries are newest first, so everything past the cursor is already known
+                if (sinceSequence != null && entry.getSequence() <= sinceSequence) {
+                    break;
+                }
+                
+                if (beforeSequence != null && entry.getSequence() >= beforeSequence) {
+                    continue;
+                }
+                
                 // Check time range
                 if (startTime != null && entry.getTimestamp() < startTime) {
                     continue;
@@ -186,6 +297,34 @@ public class LogCollector {
      * @return List of filtered log entries (newest first)
      */
     public List<LogEntry> getLogsByLevel(String level, String pluginName, int limit) {
+        return getLogsByLevel(level, pluginName, limit, null);
+    }
+    
+    /**
+     * Retrieves log entries filtered by log level, including a sequence cursor.
+     * 
+     * @param level Log level to filter by (e.g., "ERROR", "WARN")
+     * @param pluginName Optional plugin name to filter by (null for all plugins)
+     * @param limit Maximum number of entries to return
+     * @param sinceSequence Only return entries with a greater sequence number, null for all
+     * @return List of filtered log entries (newest first)
+     */
+    public List<LogEntry> getLogsByLevel(String level, String pluginName, int limit, Long sinceSequence) {
+        return getLogsByLevel(level, pluginName, limit, sinceSequence, null);
+    }
+    
+    /**
+     * Retrieves log entries filtered by log level within a sequence range.
+     * 
+     * @param level Log level to filter by (e.g., "ERROR", "WARN")
+     * @param pluginName Optional plugin name to filter by (null for all plugins)
+     * @param limit Maximum number of entries to return
+     * @param sinceSequence Only return entries with a greater sequence number, null for all
+     * @param beforeSequence Only return entries with a smaller sequence number, null for all
+     * @return List of filtered log entries (newest first)
+     */
+    public List<LogEntry> getLogsByLevel(String level, String pluginName, int limit, Long sinceSequence,
+                                         Long beforeSequence) {
         lock.readLock().lock();
         try {
             List<LogEntry> result = new ArrayList<>();
@@ -202,6 +341,14 @@ public class LogCollector {
                     break;
                 }
                 
+                if (sinceSequence != null && entry.getSequence() <= sinceSequence) {
+                    break;
+                }
+                
+                if (beforeSequence != null && entry.getSequence() >= beforeSequence) {
+                    continue;
+                }
+                
                 // Check level (case-insensitive)
                 if (!entry.getLevel().equalsIgnoreCase(level)) {
                     continue;
@@ -229,7 +376,32 @@ public class LogCollector {
      * @return List of error log entries (newest first)
      */
     public List<LogEntry> getErrors(String pluginName, int limit) {
-        return getLogsByLevel("ERROR", pluginName, limit);
+        return getLogsByLevel("ERROR", pluginName, limit, null);
+    }
+    
+    /**
+     * Retrieves error logs (ERROR level) newer than a sequence number.
+     * 
+     * @param pluginName Optional plugin name to filter by
+     * @param limit Maximum number of entries to return
+     * @param sinceSequence Only return entries with a greater sequence number, null for all
+     * @return List of error log entries (newest first)
+     */
+    public List<LogEntry> getErrors(String pluginName, int limit, Long sinceSequence) {
+        return getLogsByLevel("ERROR", pluginName, limit, sinceSequence, null);
+    }
+    
+    /**
+     * Retrieves error logs (ERROR level) within a sequence range.
+     * 
+     * @param pluginName Optional plugin name to filter by
+     * @param limit Maximum number of entries to return
+     * @param sinceSequence Only return entries with a greater sequence number, null for all
+     * @param beforeSequence Only return entries with a smaller sequence number, null for all
+     * @return List of error log entries (newest first)
+     */
+    public List<LogEntry> getErrors(String pluginName, int limit, Long sinceSequence, Long beforeSequence) {
+        return getLogsByLevel("ERROR", pluginName, limit, sinceSequence, beforeSequence);
     }
     
     /**
@@ -240,6 +412,31 @@ public class LogCollector {
      * @return List of warning log entries (newest first)
      */
     public List<LogEntry> getWarnings(String pluginName, int limit) {
+        return getWarnings(pluginName, limit, null);
+    }
+    
+    /**
+     * Retrieves warning logs (WARN or WARNING level) newer than a sequence number.
+     * 
+     * @param pluginName Optional plugin name to filter by
+     * @param limit Maximum number of entries to return
+     * @param sinceSequence Only return entries with a greater sequence number, null for all
+     * @return List of warning log entries (newest first)
+     */
+    public List<LogEntry> getWarnings(String pluginName, int limit, Long sinceSequence) {
+        return getWarnings(pluginName, limit, sinceSequence, null);
+    }
+    
+    /**
+     * Retrieves warning logs (WARN or WARNING level) within a sequence range.
+     * 
+     * @param pluginName Optional plugin name to filter by
+     * @param limit Maximum number of entries to return
+     * @param sinceSequence Only return entries with a greater sequence number, null for all
+     * @param beforeSequence Only return entries with a smaller sequence number, null for all
+     * @return List of warning log entries (newest first)
+     */
+    public List<LogEntry> getWarnings(String pluginName, int limit, Long sinceSequence, Long beforeSequence) {
         lock.readLock().lock();
         try {
             List<LogEntry> result = new ArrayList<>();
@@ -256,6 +453,14 @@ public class LogCollector {
                     break;
                 }
                 
+                if (sinceSequence != null && entry.getSequence() <= sinceSequence) {
+                    break;
+                }
+                
+                if (beforeSequence != null && entry.getSequence() >= beforeSequence) {
+                    continue;
+                }
+                
                 // Check level (WARN or WARNING)
                 String entryLevel = entry.getLevel().toUpperCase();
                 if (!entryLevel.equals("WARN") && !entryLevel.equals("WARNING")) {
@@ -286,7 +491,9 @@ public class LogCollector {
         lock.writeLock().lock();
         try {
             // Remove entries older than cutoff time
-            logBuffer.removeIf(entry -> entry.getTimestamp() < cutoffTime);
+            if (logBuffer.removeIf(entry -> entry.getTimestamp() < cutoffTime)) {
+                removals.incrementAndGet();
+            }
         } finally {
             lock.writeLock().unlock();
         }
@@ -299,6 +506,7 @@ public class LogCollector {
         lock.writeLock().lock();
         try {
             logBuffer.clear();
+            removals.incrementAndGet();
         } finally {
             lock.writeLock().unlock();
         }
@@ -312,4 +520,47 @@ public class LogCollector {
     public int size() {
         return logBuffer.size();
     }
+    
+    /**
+     * Gets the sequence number of the newest log entry.
+     * 
+     * @return Latest sequence number, or 0 if nothing has been logged yet
+     */
+    public long getLatestSequence() {
+        return sequence.get();
+    }
+    
+    /**
+     * Gets the sequence number of the newest log entry in one stream.
+     * Entries of other levels leave it unchanged.
+     * 
+     * @param stream The stream
+     * @return Latest sequence number in the stream, or 0 if it has no entries yet
+     */
+    public long getLatestSequence(Stream stream) {
+        return stream == Stream.ALL ? sequence.get() : streamSequences[stream.ordinal()].get();
+    }
+    
+    /**
+     * Gets a counter that advances whenever entries of one stream leave the buffer:
+     * removal passes, and for the level streams also entries of that level pushed
+     * out by newer entries of any level. Together with the latest sequence of the
+     * stream this identifies the stream's contents.
+     * 
+     * @param stream The stream
+     * @return Removal counter of the stream
+     */
+    public long getRemovalCount(Stream stream) {
+        return removals.get() + streamEvictions[stream.ordinal()].get();
+    }
+    
+    /**
+     * Gets the number of removal passes (retention cleanup or clear) that changed the buffer.
+     * Together with the latest sequence this identifies the buffer contents.
+     * 
+     * @return Removal counter
+     */
+    public long getRemovalCount() {
+        return removals.get();
+    }
 }
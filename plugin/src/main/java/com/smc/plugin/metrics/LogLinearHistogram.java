@@ -0,0 +1,167 @@
+package com.smc.plugin.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free, fixed-memory histogram with log-linear buckets.
+ *
+ * Every power-of-two range is split into four equally sized sub-buckets, which
+ * bounds the relative error of any reported value to 25% while needing only a
+ * few hundred bytes per histogram. Recording is a single atomic increment, so
+ * histograms can be updated from any number of threads without locking.
+ */
+public class LogLinearHistogram {
+
+    private static final int SUB_BUCKET_BITS = 2;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private final int maxExponent;
+    private final AtomicLongArray counts;
+    private final LongAdder count;
+    private final LongAdder sum;
+
+    /**
+     * Creates a new histogram.
+     *
+     * @param maxExponent Values of 2^maxExponent and above are clamped into the last bucket
+     */
+    public LogLinearHistogram(int maxExponent) {
+        if (maxExponent < SUB_BUCKET_BITS + 1 || maxExponent > 62) {
+            throw new IllegalArgumentException("maxExponent must be between 3 and 62: " + maxExponent);
+        }
+        this.maxExponent = maxExponent;
+        this.counts = new AtomicLongArray((maxExponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS);
+        this.count = new LongAdder();
+        this.sum = new LongAdder();
+    }
+
+    /**
+     * Records a single value. Negative values are recorded as zero.
+     *
+     * @param value The value to record
+     */
+    public void record(long value) {
+        long v = Math.max(value, 0L);
+        counts.incrementAndGet(bucketIndex(v));
+        count.increment();
+        sum.add(v);
+    }
+
+    /**
+     * Gets the number of recorded values.
+     *
+     * @return Total count
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Gets the sum of all recorded values.
+     *
+     * @return Sum of values
+     */
+    public long getSum() {
+        return sum.sum();
+    }
+
+    /**
+     * Gets the number of recorded values strictly below 2^exponent.
+     * Power-of-two boundaries always coincide with bucket boundaries, so the
+     * result is exact.
+     *
+     * @param exponent Boundary exponent
+     * @return Cumulative count below the boundary
+     */
+    public long countBelowPowerOfTwo(int exponent) {
+        if (exponent <= 0) {
+            return 0L;
+        }
+        int end = exponent <= SUB_BUCKET_BITS
+            ? (1 << exponent)
+            : Math.min((exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS, counts.length());
+
+        long cumulative = 0L;
+        for (int i = 0; i < end; i++) {
+            cumulative += counts.get(i);
+        }
+        return cumulative;
+    }
+
+    /**
+     * Estimates a percentile from the bucket counts.
+     *
+     * @param percentile Percentile between 0 and 100
+     * @return Upper bound of the bucket containing the percentile, or 0 if empty
+     */
+    public long getPercentile(double percentile) {
+        long[] snapshot = new long[counts.length()];
+        long total = 0L;
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0L) {
+            return 0L;
+        }
+
+        long rank = (long) Math.ceil(total * Math.min(Math.max(percentile, 0.0), 100.0) / 100.0);
+        rank = Math.max(rank, 1L);
+
+        long cumulative = 0L;
+        for (int i = 0; i < snapshot.length; i++) {
+            cumulative += snapshot[i];
+            if (cumulative >= rank) {
+                return bucketUpperBound(i);
+            }
+        }
+        return bucketUpperBound(snapshot.length - 1);
+    }
+
+    /**
+     * Gets the largest exponent this histogram resolves.
+     *
+     * @return The configured maximum exponent
+     */
+    public int getMaxExponent() {
+        return maxExponent;
+    }
+
+    /**
+     * Clears all recorded values.
+     * Not atomic with respect to concurrent recording.
+     */
+    public void reset() {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0L);
+        }
+        count.reset();
+        sum.reset();
+    }
+
+    private int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int index;
+        if (exponent >= maxExponent) {
+            index = counts.length() - 1;
+        } else {
+            int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+            index = (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+        }
+        return Math.min(index, counts.length() - 1);
+    }
+
+    private static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index + 1L;
+        }
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        int sub = index % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        return (1L << exponent) + (sub + 1) * width;
+    }
+}
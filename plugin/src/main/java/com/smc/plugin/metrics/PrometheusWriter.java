@@ -0,0 +1,134 @@
+package com.smc.plugin.metrics;
+
+/**
+ * Minimal writer for the Prometheus text exposition format (version 0.0.4).
+ */
+public class PrometheusWriter {
+
+    /**
+     * Content type expected by Prometheus scrapers.
+     */
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final StringBuilder out;
+
+    public PrometheusWriter() {
+        this.out = new StringBuilder(4096);
+    }
+
+    /**
+     * Writes the HELP and TYPE lines for a metric family.
+     *
+     * @param name Metric name
+     * @param type Metric type (counter, gauge, histogram)
+     * @param help Help text
+     * @return This writer
+     */
+    public PrometheusWriter family(String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        return this;
+    }
+
+    /**
+     * Writes a single sample.
+     *
+     * @param name Metric name
+     * @param labels Label names and values, alternating
+     * @param value Sample value
+     * @return This writer
+     */
+    public PrometheusWriter sample(String name, String[] labels, double value) {
+        out.append(name);
+        appendLabels(labels, null, null);
+        out.append(' ').append(formatValue(value)).append('\n');
+        return this;
+    }
+
+    /**
+     * Writes the bucket, sum and count samples of a histogram.
+     * Buckets are emitted at every power of two between the given exponents.
+     *
+     * @param name Metric family name
+     * @param labels Label names and values, alternating
+     * @param histogram The histogram to export
+     * @param scale Factor converting recorded values to the exported unit
+     * @param minExponent Smallest bucket boundary exponent
+     * @param maxExponent Largest bucket boundary exponent
+     * @return This writer
+     */
+    public PrometheusWriter histogram(String name, String[] labels, LogLinearHistogram histogram,
+                                      double scale, int minExponent, int maxExponent) {
+        for (int exponent = minExponent; exponent <= maxExponent; exponent++) {
+            out.append(name).append("_bucket");
+            appendLabels(labels, "le", formatValue((1L << exponent) * scale));
+            out.append(' ').append(histogram.countBelowPowerOfTwo(exponent)).append('\n');
+        }
+        long count = histogram.getCount();
+        out.append(name).append("_bucket");
+        appendLabels(labels, "le", "+Inf");
+        out.append(' ').append(count).append('\n');
+
+        out.append(name).append("_sum");
+        appendLabels(labels, null, null);
+        out.append(' ').append(formatValue(histogram.getSum() * scale)).append('\n');
+
+        out.append(name).append("_count");
+        appendLabels(labels, null, null);
+        out.append(' ').append(count).append('\n');
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return out.toString();
+    }
+
+    private void appendLabels(String[] labels, String extraName, String extraValue) {
+        boolean hasLabels = labels != null && labels.length > 0;
+        if (!hasLabels && extraName == null) {
+            return;
+        }
+
+        out.append('{');
+        boolean first = true;
+        if (hasLabels) {
+            for (int i = 0; i + 1 < labels.length; i += 2) {
+                if (!first) {
+                    out.append(',');
+                }
+                appendLabel(labels[i], labels[i + 1]);
+                first = false;
+            }
+        }
+        if (extraName != null) {
+            if (!first) {
+                out.append(',');
+            }
+            appendLabel(extraName, extraValue);
+        }
+        out.append('}');
+    }
+
+    private void appendLabel(String name, String value) {
+        out.append(name).append("=\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' || c == '"') {
+                out.append('\\').append(c);
+            } else if (c == '\n') {
+                out.append("\\n");
+            } else {
+                out.append(c);
+            }
+        }
+        out.append('"');
+    }
+
+    private static String formatValue(double value) {
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+}
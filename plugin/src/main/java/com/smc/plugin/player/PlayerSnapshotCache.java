@@ -0,0 +1,304 @@
+package com.smc.plugin.player;
+
+import com.smc.plugin.SMCPlugin;
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * Immutable snapshot of the online players, rebuilt on the main thread.
+ *
+ * Player objects must not be touched from HTTP threads, so a repeating task
+ * copies what the API reports (name, UUID, ping, world and position) into an
+ * immutable array sorted by name every few ticks, and joins and quits patch the
+ * snapshot straight away. Readers only dereference a volatile field: fetching
+ * the snapshot is O(1) and continuing after a cursor is a binary search.
+ */
+public class PlayerSnapshotCache implements Listener {
+
+    private final SMCPlugin plugin;
+    private final long refreshTicks;
+    private volatile Snapshot snapshot;
+    private BukkitTask task;
+
+    /**
+     * Creates a new, empty player snapshot.
+     *
+     * @param plugin The plugin instance
+     */
+    public PlayerSnapshotCache(SMCPlugin plugin) {
+        this.plugin = plugin;
+        this.refreshTicks = plugin.getConfigManager().getPlayerRefreshTicks();
+        this.snapshot = new Snapshot(new PlayerInfo[0], System.currentTimeMillis());
+    }
+
+    /**
+     * Builds the first snapshot on the next tick and keeps refreshing it.
+     */
+    public void start() {
+        if (task == null) {
+            task = Bukkit.getScheduler().runTaskTimer(plugin, this::refresh, 1L, refreshTicks);
+        }
+    }
+
+    /**
+     * Stops refreshing the snapshot.
+     */
+    public void shutdown() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerJoin(PlayerJoinEvent event) {
+        PlayerInfo joined = describe(event.getPlayer());
+        PlayerInfo[] players = snapshot.players;
+        int index = Arrays.binarySearch(players, joined, (a, b) -> a.sortKey.compareTo(b.sortKey));
+        PlayerInfo[] updated;
+        if (index >= 0) {
+            updated = players.clone();
+            updated[index] = joined;
+        } else {
+            int insertAt = -index - 1;
+            updated = new PlayerInfo[players.length + 1];
+            System.arraycopy(players, 0, updated, 0, insertAt);
+            updated[insertAt] = joined;
+            System.arraycopy(players, insertAt, updated, insertAt + 1, players.length - insertAt);
+        }
+        publish(updated);
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerQuit(PlayerQuitEvent event) {
+        UUID uuid = event.getPlayer().getUniqueId();
+        PlayerInfo[] players = snapshot.players;
+        for (int i = 0; i < players.length; i++) {
+            if (players[i].uuid.equals(uuid)) {
+                PlayerInfo[] updated = new PlayerInfo[players.length - 1];
+                System.arraycopy(players, 0, updated, 0, i);
+                System.arraycopy(players, i + 1, updated, i, players.length - i - 1);
+                publish(updated);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Rebuilds the snapshot from the online players.
+     * Must be called on the main server thread.
+     */
+    public void refresh() {
+        List<Player> online = plugin.getVersionAdapter().getOnlinePlayers();
+        PlayerInfo[] players = new PlayerInfo[online.size()];
+        for (int i = 0; i < players.length; i++) {
+            players[i] = describe(online.get(i));
+        }
+        Arrays.sort(players, (a, b) -> a.sortKey.compareTo(b.sortKey));
+        publish(players);
+    }
+
+    /**
+     * Gets the current snapshot. Safe to call from any thread.
+     *
+     * @return The snapshot
+     */
+    public Snapshot getSnapshot() {
+        return snapshot;
+    }
+
+    private void publish(PlayerInfo[] players) {
+        Snapshot previous = snapshot;
+        snapshot = new Snapshot(players, System.currentTimeMillis());
+
+        if (!Arrays.equals(previous.players, players) && plugin.getGenerationTracker() != null) {
+            plugin.getGenerationTracker().markPlayersChanged();
+        }
+    }
+
+    private PlayerInfo describe(Player player) {
+        Location location = player.getLocation();
+        World world = location != null ? location.getWorld() : null;
+        return new PlayerInfo(
+            player.getName(),
+            player.getUniqueId(),
+            plugin.getReflectionRegistry().getPing(player),
+            world != null ? world.getName() : null,
+            location != null ? round(location.getX()) : 0.0,
+            location != null ? round(location.getY()) : 0.0,
+            location != null ? round(location.getZ()) : 0.0
+        );
+    }
+
+    /**
+     * Rounds a coordinate to centimetres, so standing still does not count as a change.
+     */
+    private static double round(double coordinate) {
+        return Math.round(coordinate * 100.0) / 100.0;
+    }
+
+    /**
+     * Immutable view of the online players at one point in time.
+     */
+    public static final class Snapshot {
+        private final PlayerInfo[] players;
+        private final long builtAt;
+
+        private Snapshot(PlayerInfo[] players, long builtAt) {
+            this.players = players;
+            this.builtAt = builtAt;
+        }
+
+        /**
+         * Gets the players ordered by sort key.
+         *
+         * @return The players
+         */
+        public List<PlayerInfo> getPlayers() {
+            return Collections.unmodifiableList(Arrays.asList(players));
+        }
+
+        /**
+         * Gets the players after a sort key.
+         *
+         * @param after Sort key of the last player already seen, null to start at the first
+         * @return The following players in order
+         * @see PlayerInfo#getSortKey()
+         */
+        public List<PlayerInfo> after(String after) {
+            int from = 0;
+            if (after != null) {
+                int low = 0;
+                int high = players.length;
+                while (low < high) {
+                    int mid = (low + high) >>> 1;
+                    if (players[mid].sortKey.compareTo(after) <= 0) {
+                        low = mid + 1;
+                    } else {
+                        high = mid;
+                    }
+                }
+                from = low;
+            }
+            return Collections.unmodifiableList(Arrays.asList(players).subList(from, players.length));
+        }
+
+        public int size() {
+            return players.length;
+        }
+
+        /**
+         * Gets when the snapshot was taken.
+         *
+         * @return Unix time in ms
+         */
+        public long getBuiltAt() {
+            return builtAt;
+        }
+    }
+
+    /**
+     * What the API reports about one online player.
+     */
+    public static final class PlayerInfo {
+        private final String name;
+        private final UUID uuid;
+        private final String sortKey;
+        private final int ping;
+        private final String world;
+        private final double x;
+        private final double y;
+        private final double z;
+
+        private PlayerInfo(String name, UUID uuid, int ping, String world, double x, double y, double z) {
+            this.name = name;
+            this.uuid = uuid;
+            // Ordered by name, with the UUID breaking ties between names differing only in case
+            this.sortKey = name.toLowerCase(Locale.ROOT) + '\0' + uuid;
+            this.ping = ping;
+            this.world = world;
+            this.x = x;
+            this.y = y;
+            this.z = z;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public UUID getUniqueId() {
+            return uuid;
+        }
+
+        /**
+         * Gets the key that orders this player in the snapshot.
+         *
+         * @return The sort key
+         */
+        public String getSortKey() {
+            return sortKey;
+        }
+
+        /**
+         * Gets the ping.
+         *
+         * @return The ping in ms, or -1 if the server does not expose it
+         */
+        public int getPing() {
+            return ping;
+        }
+
+        public String getWorld() {
+            return world;
+        }
+
+        public double getX() {
+            return x;
+        }
+
+        public double getY() {
+            return y;
+        }
+
+        public double getZ() {
+            return z;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof PlayerInfo)) {
+                return false;
+            }
+            PlayerInfo other = (PlayerInfo) o;
+            return sortKey.equals(other.sortKey)
+                && ping == other.ping
+                && Objects.equals(world, other.world)
+                && x == other.x
+                && y == other.y
+                && z == other.z;
+        }
+
+        @Override
+        public int hashCode() {
+            return sortKey.hashCode();
+        }
+    }
+}
@@ -0,0 +1,451 @@
+package com.smc.plugin.profiler;
+
+import com.smc.plugin.SMCPlugin;
+import com.smc.plugin.metrics.PrometheusWriter;
+import org.bukkit.Bukkit;
+import org.bukkit.event.Event;
+import org.bukkit.event.EventException;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.HandlerList;
+import org.bukkit.event.Listener;
+import org.bukkit.event.server.PluginEnableEvent;
+import org.bukkit.plugin.EventExecutor;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.plugin.RegisteredListener;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures how much main-thread time each plugin's event listeners take.
+ *
+ * Every registered listener is replaced in its {@link HandlerList} by a
+ * wrapper that times the original with two {@link System#nanoTime()} reads and
+ * adds the result to striped counters kept per plugin and event type, so the
+ * hot path never takes a lock or allocates. Wrappers take the place of the
+ * listeners they wrap, so the order in which listeners are called is unchanged.
+ * Asynchronous events do not hold up the tick and are not timed.
+ *
+ * Every ten seconds the counters are flushed into a ring of buckets covering
+ * the last five minutes, which reports are summed from. Listeners registered
+ * later are wrapped when the buckets are flushed and whenever a plugin is
+ * enabled; on shutdown every wrapper is replaced by its listener again.
+ */
+public class ListenerProfiler implements Listener {
+
+    private static final long BUCKET_NANOS = TimeUnit.SECONDS.toNanos(10);
+    private static final int BUCKETS = 30;
+
+    /** Longest window a report can cover. */
+    public static final long MAX_WINDOW_SECONDS = TimeUnit.NANOSECONDS.toSeconds(BUCKET_NANOS) * BUCKETS;
+
+    private static final EventExecutor UNUSED_EXECUTOR = (listener, event) -> {
+    };
+
+    private final SMCPlugin plugin;
+    private final Map<String, Stats> stats;
+    private final Bucket[] buckets;
+    private int newestBucket;
+    private long currentStart;
+    private volatile int wrappedListeners;
+    private ScheduledExecutorService flusher;
+
+    /**
+     * Creates a new listener profiler.
+     *
+     * @param plugin The plugin instance
+     */
+    public ListenerProfiler(SMCPlugin plugin) {
+        this.plugin = plugin;
+        this.stats = new ConcurrentHashMap<>();
+        this.buckets = new Bucket[BUCKETS];
+        this.newestBucket = -1;
+    }
+
+    /**
+     * Wraps every registered listener and starts flushing counters.
+     * Must be called on the main server thread.
+     */
+    public void start() {
+        if (flusher != null) {
+            return;
+        }
+        Bukkit.getPluginManager().registerEvents(this, plugin);
+        synchronized (buckets) {
+            currentStart = System.nanoTime();
+        }
+        wrapAll();
+
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "SMC-Listener-Profiler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleAtFixedRate(this::flush, BUCKET_NANOS, BUCKET_NANOS, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Restores the original listeners. Must be called on the main server thread.
+     */
+    public void shutdown() {
+        if (flusher == null) {
+            return;
+        }
+        flusher.shutdown();
+        flusher = null;
+        HandlerList.unregisterAll(this);
+        rewrapAll(false);
+    }
+
+    /**
+     * Gets the number of listeners currently timed.
+     *
+     * @return The listener count
+     */
+    public int getWrappedListeners() {
+        return wrappedListeners;
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPluginEnable(PluginEnableEvent event) {
+        // Listeners registered right after onEnable are picked up as well
+        Bukkit.getScheduler().runTask(plugin, this::wrapAll);
+    }
+
+    /**
+     * Reports listener time over a recent window, busiest first.
+     *
+     * @param windowSeconds Window length; rounded to whole ten-second buckets
+     * @return The report
+     */
+    public Report report(long windowSeconds) {
+        long windowNanos = TimeUnit.SECONDS.toNanos(Math.min(windowSeconds, MAX_WINDOW_SECONDS));
+        Map<Stats, long[]> totals = new HashMap<>();
+        long now = System.nanoTime();
+        long from;
+        synchronized (buckets) {
+            from = currentStart;
+            for (Stats entry : stats.values()) {
+                long calls = entry.calls.sum();
+                if (calls > 0) {
+                    totals.put(entry, new long[] {calls, entry.nanos.sum(), entry.max.get()});
+                }
+            }
+            for (int i = 0; i < BUCKETS && newestBucket >= 0; i++) {
+                Bucket bucket = buckets[Math.floorMod(newestBucket - i, BUCKETS)];
+                if (bucket == null || now - bucket.start > windowNanos) {
+                    break;
+                }
+                from = bucket.start;
+                for (Map.Entry<Stats, long[]> sample : bucket.samples.entrySet()) {
+                    long[] total = totals.computeIfAbsent(sample.getKey(), k -> new long[3]);
+                    total[0] += sample.getValue()[0];
+                    total[1] += sample.getValue()[1];
+                    total[2] = Math.max(total[2], sample.getValue()[2]);
+                }
+            }
+        }
+
+        List<Entry> entries = new ArrayList<>(totals.size());
+        for (Map.Entry<Stats, long[]> total : totals.entrySet()) {
+            Stats key = total.getKey();
+            long[] value = total.getValue();
+            entries.add(new Entry(key.plugin, key.event, value[0], value[1], value[2]));
+        }
+        Collections.sort(entries, (a, b) -> Long.compare(b.nanos, a.nanos));
+        return new Report(now - from, Collections.unmodifiableList(entries));
+    }
+
+    /**
+     * Renders the listener metrics in Prometheus text format, summed per plugin.
+     *
+     * @return The exposition text
+     */
+    public String toPrometheus() {
+        Map<String, long[]> perPlugin = new HashMap<>();
+        synchronized (buckets) {
+            for (Stats entry : stats.values()) {
+                long[] total = perPlugin.computeIfAbsent(entry.plugin, k -> new long[2]);
+                total[0] += entry.flushedCalls + entry.calls.sum();
+                total[1] += entry.flushedNanos + entry.nanos.sum();
+            }
+        }
+        List<String> plugins = new ArrayList<>(perPlugin.keySet());
+        Collections.sort(plugins);
+
+        PrometheusWriter writer = new PrometheusWriter();
+        writer.family("smc_listener_calls_total", "counter", "Synchronous event listener calls per plugin.");
+        for (String name : plugins) {
+            writer.sample("smc_listener_calls_total", new String[] {"plugin", name}, perPlugin.get(name)[0]);
+        }
+        writer.family("smc_listener_seconds_total", "counter",
+            "Main-thread time spent in event listeners per plugin.");
+        for (String name : plugins) {
+            writer.sample("smc_listener_seconds_total", new String[] {"plugin", name}, perPlugin.get(name)[1] / 1e9);
+        }
+        return writer.toString();
+    }
+
+    /**
+     * Moves the counters into a new bucket. Runs on the flusher thread.
+     */
+    private void flush() {
+        long now = System.nanoTime();
+        Map<Stats, long[]> samples = new HashMap<>();
+        synchronized (buckets) {
+            for (Stats entry : stats.values()) {
+                long calls = entry.calls.sumThenReset();
+                if (calls == 0) {
+                    continue;
+                }
+                long nanos = entry.nanos.sumThenReset();
+                samples.put(entry, new long[] {calls, nanos, entry.max.getThenReset()});
+                entry.flushedCalls += calls;
+                entry.flushedNanos += nanos;
+            }
+            newestBucket = (newestBucket + 1) % BUCKETS;
+            buckets[newestBucket] = new Bucket(currentStart, samples);
+            currentStart = now;
+        }
+        Bukkit.getScheduler().runTask(plugin, this::wrapAll);
+    }
+
+    private void wrapAll() {
+        if (flusher != null) {
+            rewrapAll(true);
+        }
+    }
+
+    /**
+     * Wraps or unwraps the listeners of every handler list. Runs on the main thread.
+     */
+    private void rewrapAll(boolean wrap) {
+        ArrayList<HandlerList> lists = HandlerList.getHandlerLists();
+        List<HandlerList> copy;
+        synchronized (lists) {
+            copy = new ArrayList<>(lists);
+        }
+        int wrapped = 0;
+        for (HandlerList list : copy) {
+            wrapped += rewrap(list, wrap);
+        }
+        wrappedListeners = wrapped;
+    }
+
+    /**
+     * Replaces the listeners of one handler list, keeping their order.
+     *
+     * @return The number of wrapped listeners in the list afterwards
+     */
+    private int rewrap(HandlerList list, boolean wrap) {
+        // bake() synchronizes on the list, so events never see it half replaced
+        synchronized (list) {
+            RegisteredListener[] current = list.getRegisteredListeners();
+            List<RegisteredListener> replacements = new ArrayList<>(current.length);
+            boolean changed = false;
+            for (RegisteredListener listener : current) {
+                RegisteredListener replacement = listener;
+                if (wrap && !(listener instanceof TimedListener)) {
+                    replacement = new TimedListener(this, listener);
+                } else if (!wrap && listener instanceof TimedListener) {
+                    replacement = ((TimedListener) listener).delegate;
+                }
+                changed |= replacement != listener;
+                replacements.add(replacement);
+            }
+            if (changed) {
+                for (RegisteredListener listener : current) {
+                    list.unregister(listener);
+                }
+                list.registerAll(replacements);
+            }
+            return wrap ? current.length : 0;
+        }
+    }
+
+    private void record(TimedListener listener, Event event, long nanos) {
+        Class<? extends Event> type = event.getClass();
+        Binding binding = listener.binding;
+        if (binding == null || binding.type != type) {
+            Plugin owner = listener.getPlugin();
+            String pluginName = owner != null ? owner.getName() : "unknown";
+            Stats entry = stats.computeIfAbsent(pluginName + '\0' + type.getName(),
+                k -> new Stats(pluginName, type.getSimpleName()));
+            binding = new Binding(type, entry);
+            listener.binding = binding;
+        }
+        Stats entry = binding.stats;
+        entry.calls.increment();
+        entry.nanos.add(nanos);
+        entry.max.accumulate(nanos);
+    }
+
+    /**
+     * Times a registered listener.
+     */
+    private static final class TimedListener extends RegisteredListener {
+        private final ListenerProfiler profiler;
+        private final RegisteredListener delegate;
+        // Racy but safe: a stale binding is just looked up again
+        private Binding binding;
+
+        private TimedListener(ListenerProfiler profiler, RegisteredListener delegate) {
+            super(delegate.getListener(), UNUSED_EXECUTOR, delegate.getPriority(), delegate.getPlugin(),
+                delegate.isIgnoringCancelled());
+            this.profiler = profiler;
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void callEvent(Event event) throws EventException {
+            if (event.isAsynchronous()) {
+                delegate.callEvent(event);
+                return;
+            }
+            long start = System.nanoTime();
+            try {
+                delegate.callEvent(event);
+            } finally {
+                profiler.record(this, event, System.nanoTime() - start);
+            }
+        }
+    }
+
+    /**
+     * The counters a listener last reported an event type to.
+     */
+    private static final class Binding {
+        private final Class<? extends Event> type;
+        private final Stats stats;
+
+        private Binding(Class<? extends Event> type, Stats stats) {
+            this.type = type;
+            this.stats = stats;
+        }
+    }
+
+    /**
+     * Counters of one plugin and event type since the last flush.
+     */
+    private static final class Stats {
+        private final String plugin;
+        private final String event;
+        private final LongAdder calls;
+        private final LongAdder nanos;
+        private final LongAccumulator max;
+        // Guarded by the bucket ring
+        private long flushedCalls;
+        private long flushedNanos;
+
+        private Stats(String plugin, String event) {
+            this.plugin = plugin;
+            this.event = event;
+            this.calls = new LongAdder();
+            this.nanos = new LongAdder();
+            this.max = new LongAccumulator(Math::max, 0L);
+        }
+    }
+
+    /**
+     * Counters flushed at the end of one ten-second interval.
+     */
+    private static final class Bucket {
+        private final long start;
+        private final Map<Stats, long[]> samples;
+
+        private Bucket(long start, Map<Stats, long[]> samples) {
+            this.start = start;
+            this.samples = samples;
+        }
+    }
+
+    /**
+     * Listener time over a window, busiest first.
+     */
+    public static final class Report {
+        private final long windowNanos;
+        private final List<Entry> entries;
+
+        private Report(long windowNanos, List<Entry> entries) {
+            this.windowNanos = windowNanos;
+            this.entries = entries;
+        }
+
+        /**
+         * Gets the time the report actually covers.
+         *
+         * @return The window in ns
+         */
+        public long getWindowNanos() {
+            return windowNanos;
+        }
+
+        public List<Entry> getEntries() {
+            return entries;
+        }
+    }
+
+    /**
+     * Listener time of one plugin and event type.
+     */
+    public static final class Entry {
+        private final String plugin;
+        private final String event;
+        private final long calls;
+        private final long nanos;
+        private final long maxNanos;
+
+        private Entry(String plugin, String event, long calls, long nanos, long maxNanos) {
+            this.plugin = plugin;
+            this.event = event;
+            this.calls = calls;
+            this.nanos = nanos;
+            this.maxNanos = maxNanos;
+        }
+
+        public String getPlugin() {
+            return plugin;
+        }
+
+        /**
+         * Gets the simple class name of the event.
+         *
+         * @return The event name
+         */
+        public String getEvent() {
+            return event;
+        }
+
+        public long getCalls() {
+            return calls;
+        }
+
+        /**
+         * Gets the time spent in the plugin's listeners for this event.
+         *
+         * @return The total in ns
+         */
+        public long getNanos() {
+            return nanos;
+        }
+
+        /**
+         * Gets the longest single listener call.
+         *
+         * @return The maximum in ns
+         */
+        public long getMaxNanos() {
+            return maxNanos;
+        }
+    }
+}
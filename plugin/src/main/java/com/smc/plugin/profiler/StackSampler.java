@@ -0,0 +1,295 @@
+package com.smc.plugin.profiler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Samples the stack of the server thread to show where tick time goes.
+ *
+ * A profile runs on a thread of its own, which reads the server thread's stack
+ * at a fixed rate for a bounded duration and merges each stack into a call
+ * tree. Frame names are interned, so repeated stacks only add to counters.
+ * Reading a stack briefly pauses the server thread; samples that overrun
+ * their slot are not caught up, so a profile never takes more samples than
+ * its duration divided by its interval, and only one profile runs at a time.
+ *
+ * The result is rendered in the collapsed stack format, one line per distinct
+ * stack with its frames from the outermost in, separated by ';', followed by
+ * its sample count. Flame graph tools read this format directly.
+ */
+public class StackSampler {
+
+    private final Thread target;
+    private final long maxDurationMillis;
+    private final AtomicBoolean running;
+    private volatile Thread sampler;
+
+    /**
+     * Creates a new stack sampler.
+     *
+     * @param target The thread to sample, normally the server thread
+     * @param maxDurationMillis Longest profile that may be requested
+     */
+    public StackSampler(Thread target, long maxDurationMillis) {
+        this.target = target;
+        this.maxDurationMillis = maxDurationMillis;
+        this.running = new AtomicBoolean();
+    }
+
+    /**
+     * Gets the longest profile that may be requested.
+     *
+     * @return The limit in ms
+     */
+    public long getMaxDurationMillis() {
+        return maxDurationMillis;
+    }
+
+    /**
+     * Samples the target thread and waits for the profile to finish.
+     *
+     * @param durationMillis How long to sample, at most {@link #getMaxDurationMillis()}
+     * @param intervalMillis Time between samples
+     * @return The profile
+     * @throws IllegalArgumentException if the duration or interval is out of range
+     * @throws IllegalStateException if another profile is running
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public Profile profile(long durationMillis, long intervalMillis) throws InterruptedException {
+        if (durationMillis < 1 || durationMillis > maxDurationMillis) {
+            throw new IllegalArgumentException("Duration must be between 1 and " + maxDurationMillis + " ms");
+        }
+        if (intervalMillis < 1 || intervalMillis > durationMillis) {
+            throw new IllegalArgumentException("Interval must be between 1 ms and the duration");
+        }
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("A profile is already running");
+        }
+
+        Recorder recorder = new Recorder(durationMillis, intervalMillis);
+        Thread thread = new Thread(() -> {
+            try {
+                recorder.run();
+            } finally {
+                // Only a finished sampler lets the next profile start
+                sampler = null;
+                running.set(false);
+            }
+        }, "SMC-Stack-Sampler");
+        thread.setDaemon(true);
+        sampler = thread;
+        try {
+            thread.start();
+            thread.join();
+        } catch (InterruptedException e) {
+            thread.interrupt();
+            throw e;
+        }
+        return recorder.toProfile();
+    }
+
+    /**
+     * Stops a running profile early; it returns what was sampled so far.
+     */
+    public void shutdown() {
+        Thread thread = sampler;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    /**
+     * Takes the samples of one profile on the sampler thread.
+     */
+    private final class Recorder implements Runnable {
+        private final long durationNanos;
+        private final long intervalNanos;
+        private final Map<StackTraceElement, String> frames;
+        private final Map<String, String> names;
+        private final Node root;
+        private int samples;
+        private long samplingNanos;
+        private long elapsedNanos;
+
+        private Recorder(long durationMillis, long intervalMillis) {
+            this.durationNanos = TimeUnit.MILLISECONDS.toNanos(durationMillis);
+            this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+            this.frames = new HashMap<>();
+            this.names = new HashMap<>();
+            this.root = new Node(null);
+        }
+
+        @Override
+        public void run() {
+            long start = System.nanoTime();
+            long next = start;
+            try {
+                while (next - start < durationNanos && target.isAlive()) {
+                    long before = System.nanoTime();
+                    StackTraceElement[] stack = target.getStackTrace();
+                    long after = System.nanoTime();
+                    samplingNanos += after - before;
+                    add(stack);
+
+                    // Skip the slots a slow sample overran instead of sampling back to back
+                    next += intervalNanos;
+                    if (next - after < 0) {
+                        next += (after - next) / intervalNanos * intervalNanos + intervalNanos;
+                    }
+                    long sleep = next - System.nanoTime();
+                    if (sleep > 0) {
+                        TimeUnit.NANOSECONDS.sleep(sleep);
+                    }
+                }
+            } catch (InterruptedException e) {
+                // Stopped early; keep what was sampled
+            }
+            elapsedNanos = System.nanoTime() - start;
+        }
+
+        private void add(StackTraceElement[] stack) {
+            if (stack.length == 0) {
+                return;
+            }
+            samples++;
+            Node node = root;
+            // Stack traces list the innermost frame first
+            for (int i = stack.length - 1; i >= 0; i--) {
+                node = node.child(frame(stack[i]));
+            }
+            node.self++;
+        }
+
+        private String frame(StackTraceElement element) {
+            String name = frames.get(element);
+            if (name == null) {
+                // Elements differ per line number; frames are named per method
+                String method = element.getClassName() + "." + element.getMethodName();
+                name = names.computeIfAbsent(method, k -> k);
+                frames.put(element, name);
+            }
+            return name;
+        }
+
+        private Profile toProfile() {
+            StringBuilder collapsed = new StringBuilder();
+            root.collapse(new StringBuilder(), collapsed);
+            return new Profile(samples, elapsedNanos, samplingNanos, names.size(), collapsed.toString());
+        }
+    }
+
+    /**
+     * A frame in the call tree. Children are keyed by interned frame name.
+     */
+    private static final class Node {
+        private final String frame;
+        private Map<String, Node> children;
+        private int self;
+
+        private Node(String frame) {
+            this.frame = frame;
+        }
+
+        private Node child(String name) {
+            if (children == null) {
+                children = new HashMap<>();
+            }
+            Node child = children.get(name);
+            if (child == null) {
+                child = new Node(name);
+                children.put(name, child);
+            }
+            return child;
+        }
+
+        /**
+         * Appends a line for every stack ending in this node or below it.
+         */
+        private void collapse(StringBuilder path, StringBuilder out) {
+            int length = path.length();
+            if (frame != null) {
+                if (length > 0) {
+                    path.append(';');
+                }
+                path.append(frame);
+            }
+            if (self > 0) {
+                out.append(path).append(' ').append(self).append('\n');
+            }
+            if (children != null) {
+                List<String> names = new ArrayList<>(children.keySet());
+                Collections.sort(names);
+                for (String name : names) {
+                    children.get(name).collapse(path, out);
+                }
+            }
+            path.setLength(length);
+        }
+    }
+
+    /**
+     * Result of one profile.
+     */
+    public static final class Profile {
+        private final int samples;
+        private final long elapsedNanos;
+        private final long samplingNanos;
+        private final int frames;
+        private final String collapsed;
+
+        private Profile(int samples, long elapsedNanos, long samplingNanos, int frames, String collapsed) {
+            this.samples = samples;
+            this.elapsedNanos = elapsedNanos;
+            this.samplingNanos = samplingNanos;
+            this.frames = frames;
+            this.collapsed = collapsed;
+        }
+
+        public int getSamples() {
+            return samples;
+        }
+
+        /**
+         * Gets how long the profile ran.
+         *
+         * @return The time in ns
+         */
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        /**
+         * Gets the time spent reading stacks. This includes waiting for the
+         * server thread to reach a safepoint, so it is an upper bound on how
+         * long the profile held the server thread up.
+         *
+         * @return The time in ns
+         */
+        public long getSamplingNanos() {
+            return samplingNanos;
+        }
+
+        /**
+         * Gets the number of distinct frames seen.
+         *
+         * @return The frame count
+         */
+        public int getFrames() {
+            return frames;
+        }
+
+        /**
+         * Gets the samples in collapsed stack format.
+         *
+         * @return One line per distinct stack
+         */
+        public String getCollapsed() {
+            return collapsed;
+        }
+    }
+}
@@ -2,14 +2,10 @@ package com.smc.plugin.version;
 
 import org.bukkit.Bukkit;
 import org.bukkit.Server;
-import org.bukkit.command.CommandSender;
 import org.bukkit.command.ConsoleCommandSender;
 import org.bukkit.entity.Player;
 import org.bukkit.plugin.Plugin;
 
-import java.lang.reflect.Method;
-import java.util.ArrayList;
-import java.util.Collection;
 import java.util.List;
 
 /**
@@ -18,6 +14,17 @@ import java.util.List;
  */
 public class LegacyAdapter implements VersionAdapter {
     
+    private final ReflectionRegistry reflection;
+    
+    /**
+     * Creates a legacy adapter.
+     * 
+     * @param reflection Resolved reflective access for this server
+     */
+    public LegacyAdapter(ReflectionRegistry reflection) {
+        this.reflection = reflection;
+    }
+    
     @Override
     public String getServerVersion() {
         return Bukkit.getServer().getBukkitVersion();
@@ -25,39 +32,8 @@ public class LegacyAdapter implements VersionAdapter {
     
     @Override
     public List<Player> getOnlinePlayers() {
-        Server server = Bukkit.getServer();
-        
-        try {
-            // Try the modern API first (1.13+)
-            Method getOnlinePlayersMethod = server.getClass().getMethod("getOnlinePlayers");
-            Object result = getOnlinePlayersMethod.invoke(server);
-            
-            // Check if it returns a Collection (1.13+) or array (1.8-1.12)
-            if (result instanceof Collection) {
-                @SuppressWarnings("unchecked")
-                Collection<? extends Player> players = (Collection<? extends Player>) result;
-                return new ArrayList<>(players);
-            } else if (result instanceof Player[]) {
-                // 1.8-1.12 returns Player[]
-                Player[] players = (Player[]) result;
-                List<Player> playerList = new ArrayList<>();
-                for (Player player : players) {
-                    playerList.add(player);
-                }
-                return playerList;
-            }
-        } catch (Exception e) {
-            // Fallback: try direct cast
-            try {
-                Collection<? extends Player> players = server.getOnlinePlayers();
-                return new ArrayList<>(players);
-            } catch (Exception ex) {
-                // Last resort: return empty list
-                return new ArrayList<>();
-            }
-        }
-        
-        return new ArrayList<>();
+        // getOnlinePlayers returns an array before 1.8 and a collection since
+        return reflection.getOnlinePlayers();
     }
     
     @Override
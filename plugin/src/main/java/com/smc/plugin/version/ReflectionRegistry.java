@@ -0,0 +1,268 @@
+package com.smc.plugin.version;
+
+import org.bukkit.Server;
+import org.bukkit.command.Command;
+import org.bukkit.entity.Player;
+import org.bukkit.event.Event;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Version-dependent reflective access, resolved once.
+ *
+ * Every method the plugin calls by name is looked up a single time, at startup
+ * for the server-wide ones and once per runtime class for the others, and
+ * kept as a {@link MethodHandle}. Methods that do not exist on this server are
+ * cached as absent too, so hot paths never repeat a failed lookup.
+ */
+public final class ReflectionRegistry {
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+    private static final MethodType ACCESSOR_TYPE = MethodType.methodType(Object.class, Object.class);
+    private static final String PAPER_TICK_END_EVENT = "com.destroystokyo.paper.event.server.ServerTickEndEvent";
+
+    private final Server server;
+    private final Accessor onlinePlayers;
+    private final Accessor commandMap;
+    private final Accessor knownCommands;
+    private final Class<? extends Event> tickEndEvent;
+    private final Accessor tickDuration;
+    private final ClassValue<Accessor> pingByClass;
+    private final ClassValue<Accessor> pluginByClass;
+
+    private ReflectionRegistry(Server server, Accessor onlinePlayers, Accessor commandMap, Accessor knownCommands,
+                               Accessor interfacePing, Class<? extends Event> tickEndEvent, Accessor tickDuration) {
+        this.server = server;
+        this.onlinePlayers = onlinePlayers;
+        this.commandMap = commandMap;
+        this.knownCommands = knownCommands;
+        this.tickEndEvent = tickEndEvent;
+        this.tickDuration = tickDuration;
+        this.pingByClass = new ClassValue<Accessor>() {
+            @Override
+            protected Accessor computeValue(Class<?> type) {
+                // Since 1.17 Player declares getPing; before that only the implementation class may have it
+                return interfacePing.isPresent() ? interfacePing : accessor(type, "getPing");
+            }
+        };
+        this.pluginByClass = new ClassValue<Accessor>() {
+            @Override
+            protected Accessor computeValue(Class<?> type) {
+                return accessor(type, "getPlugin");
+            }
+        };
+    }
+
+    /**
+     * Resolves the server-wide accessors.
+     *
+     * @param server The running server
+     * @param logger Logger for the resolution summary
+     * @return The registry
+     */
+    public static ReflectionRegistry resolve(Server server, Logger logger) {
+        Accessor onlinePlayers = accessor(server.getClass(), "getOnlinePlayers");
+        Accessor commandMap = accessor(server.getClass(), "getCommandMap");
+        Accessor knownCommands = Accessor.ABSENT;
+        if (commandMap.isPresent()) {
+            try {
+                Object map = commandMap.invoke(server);
+                if (map != null) {
+                    knownCommands = accessor(map.getClass(), "getKnownCommands");
+                }
+            } catch (ReflectiveOperationException e) {
+                logger.warning("Could not read the server command map: " + e.getMessage());
+            }
+        }
+        Accessor interfacePing = accessor(Player.class, "getPing");
+
+        Class<? extends Event> tickEndEvent = null;
+        Accessor tickDuration = Accessor.ABSENT;
+        try {
+            Class<? extends Event> type = Class.forName(PAPER_TICK_END_EVENT).asSubclass(Event.class);
+            tickDuration = accessor(type, "getTickDuration");
+            if (tickDuration.isPresent()) {
+                tickEndEvent = type;
+            }
+        } catch (ClassNotFoundException | ClassCastException e) {
+            // Not a Paper server
+        }
+
+        logger.info("Reflective access resolved (getOnlinePlayers: " + onlinePlayers
+            + ", getCommandMap: " + commandMap + ", getKnownCommands: " + knownCommands
+            + ", Player.getPing: " + interfacePing + ", tick end event: " + tickDuration + ")");
+        return new ReflectionRegistry(server, onlinePlayers, commandMap, knownCommands, interfacePing,
+            tickEndEvent, tickDuration);
+    }
+
+    /**
+     * Gets the online players through whichever getOnlinePlayers the server
+     * has: a collection since 1.8, an array on older builds.
+     *
+     * @return The online players; empty if they cannot be read
+     */
+    public List<Player> getOnlinePlayers() {
+        try {
+            Object result = onlinePlayers.isPresent() ? onlinePlayers.invoke(server) : server.getOnlinePlayers();
+            if (result instanceof Collection) {
+                @SuppressWarnings("unchecked")
+                Collection<? extends Player> players = (Collection<? extends Player>) result;
+                return new ArrayList<>(players);
+            }
+            if (result instanceof Player[]) {
+                return new ArrayList<>(Arrays.asList((Player[]) result));
+            }
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Fall through to an empty list
+        }
+        return new ArrayList<>();
+    }
+
+    /**
+     * Gets the server's command table, keyed by label.
+     *
+     * @return The known commands
+     * @throws ReflectiveOperationException if the server does not expose them
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, Command> getKnownCommands() throws ReflectiveOperationException {
+        if (!knownCommands.isPresent()) {
+            throw new NoSuchMethodException("getKnownCommands");
+        }
+        return (Map<String, Command>) knownCommands.invoke(commandMap.invoke(server));
+    }
+
+    /**
+     * Gets a player's ping.
+     *
+     * @param player The player
+     * @return The ping in ms, or -1 if the server does not expose it
+     */
+    public int getPing(Player player) {
+        Accessor ping = pingByClass.get(player.getClass());
+        if (!ping.isPresent()) {
+            return -1;
+        }
+        try {
+            Object value = ping.invoke(player);
+            return value instanceof Integer ? (Integer) value : -1;
+        } catch (ReflectiveOperationException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Gets Paper's tick end event, which reports how long each tick took.
+     *
+     * @return The event class, or null if the server does not have it
+     */
+    public Class<? extends Event> getTickEndEvent() {
+        return tickEndEvent;
+    }
+
+    /**
+     * Reads the duration of the tick a tick end event was fired for.
+     *
+     * @param event An instance of {@link #getTickEndEvent()}
+     * @return The tick duration in ms, or -1 if it cannot be read
+     */
+    public double getTickDuration(Event event) {
+        try {
+            Object value = tickDuration.invoke(event);
+            return value instanceof Double ? (Double) value : -1.0;
+        } catch (ReflectiveOperationException e) {
+            return -1.0;
+        }
+    }
+
+    /**
+     * Gets the getPlugin accessor of a command class that does not implement
+     * {@code PluginIdentifiableCommand}.
+     *
+     * @param type The command class
+     * @return The accessor, absent if the class has no getPlugin method
+     */
+    public Accessor getCommandPluginAccessor(Class<? extends Command> type) {
+        return pluginByClass.get(type);
+    }
+
+    /**
+     * Looks up a public no-argument method.
+     *
+     * @return The accessor, or {@link Accessor#ABSENT}
+     */
+    private static Accessor accessor(Class<?> type, String name) {
+        Method method;
+        try {
+            method = type.getMethod(name);
+        } catch (NoSuchMethodException | SecurityException e) {
+            return Accessor.ABSENT;
+        }
+        try {
+            // Public methods of non-public classes, e.g. anonymous commands, need setAccessible
+            if (!Modifier.isPublic(method.getDeclaringClass().getModifiers())) {
+                method.setAccessible(true);
+            }
+            return new Accessor(LOOKUP.unreflect(method).asType(ACCESSOR_TYPE),
+                method.getDeclaringClass().getSimpleName() + "." + name);
+        } catch (IllegalAccessException | RuntimeException e) {
+            return Accessor.ABSENT;
+        }
+    }
+
+    /**
+     * A resolved no-argument method, or the cached absence of one.
+     */
+    public static final class Accessor {
+        static final Accessor ABSENT = new Accessor(null, "absent");
+
+        private final MethodHandle handle;
+        private final String description;
+
+        private Accessor(MethodHandle handle, String description) {
+            this.handle = handle;
+            this.description = description;
+        }
+
+        public boolean isPresent() {
+            return handle != null;
+        }
+
+        /**
+         * Calls the method.
+         *
+         * @param target The receiver
+         * @return The return value, boxed
+         * @throws NoSuchMethodException if the method is absent
+         * @throws InvocationTargetException if the method threw
+         */
+        public Object invoke(Object target) throws ReflectiveOperationException {
+            if (handle == null) {
+                throw new NoSuchMethodException(description);
+            }
+            try {
+                return (Object) handle.invokeExact(target);
+            } catch (Error e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new InvocationTargetException(t);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return description;
+        }
+    }
+}
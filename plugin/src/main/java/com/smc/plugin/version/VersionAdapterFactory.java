@@ -12,10 +12,11 @@ public class VersionAdapterFactory {
     /**
      * Creates a version adapter based on the current server version.
      * 
+     * @param reflection Resolved reflective access for this server
      * @return The appropriate VersionAdapter implementation
      * @throws UnsupportedVersionException if the version is not supported
      */
-    public static VersionAdapter createAdapter() throws UnsupportedVersionException {
+    public static VersionAdapter createAdapter(ReflectionRegistry reflection) throws UnsupportedVersionException {
         String version = detectServerVersion();
         
         // Reject 1.17.x versions explicitly
@@ -27,7 +28,7 @@ public class VersionAdapterFactory {
         
         // Determine which adapter to use based on version
         if (isLegacyVersion(version)) {
-            return new LegacyAdapter();
+            return new LegacyAdapter(reflection);
         } else if (isModernVersion(version)) {
             return new ModernAdapter();
         } else {
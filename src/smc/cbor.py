@@ -0,0 +1,85 @@
+"""Minimal CBOR (RFC 8949) decoder for plugin API responses."""
+
+import struct
+from typing import Any, Tuple
+
+CONTENT_TYPE = "application/cbor"
+
+
+class CBORDecodeError(ValueError):
+    """Raised when a payload is not valid CBOR."""
+
+
+def loads(data: bytes) -> Any:
+    """Decode a single CBOR data item."""
+    value, offset = _decode(memoryview(data), 0)
+    if offset != len(data):
+        raise CBORDecodeError(f"Trailing bytes after CBOR item at offset {offset}")
+    return value
+
+
+def _read_argument(data: memoryview, offset: int, info: int) -> Tuple[int, int]:
+    if info < 24:
+        return info, offset
+    if info == 24:
+        return data[offset], offset + 1
+    if info == 25:
+        return struct.unpack_from(">H", data, offset)[0], offset + 2
+    if info == 26:
+        return struct.unpack_from(">I", data, offset)[0], offset + 4
+    if info == 27:
+        return struct.unpack_from(">Q", data, offset)[0], offset + 8
+    raise CBORDecodeError(f"Unsupported additional information {info}")
+
+
+def _decode(data: memoryview, offset: int) -> Tuple[Any, int]:
+    try:
+        initial = data[offset]
+    except IndexError:
+        raise CBORDecodeError("Unexpected end of CBOR data") from None
+    offset += 1
+    major, info = initial >> 5, initial & 0x1F
+
+    if major == 7:
+        if info == 20:
+            return False, offset
+        if info == 21:
+            return True, offset
+        if info in (22, 23):
+            return None, offset
+        if info == 25:
+            return struct.unpack_from(">e", data, offset)[0], offset + 2
+        if info == 26:
+            return struct.unpack_from(">f", data, offset)[0], offset + 4
+        if info == 27:
+            return struct.unpack_from(">d", data, offset)[0], offset + 8
+        raise CBORDecodeError(f"Unsupported simple value {info}")
+
+    if info == 31:
+        raise CBORDecodeError("Indefinite-length items are not supported")
+
+    argument, offset = _read_argument(data, offset, info)
+
+    if major == 0:
+        return argument, offset
+    if major == 1:
+        return -1 - argument, offset
+    if major == 2:
+        return bytes(data[offset:offset + argument]), offset + argument
+    if major == 3:
+        return str(data[offset:offset + argument], "utf-8"), offset + argument
+    if major == 4:
+        items = []
+        for _ in range(argument):
+            item, offset = _decode(data, offset)
+            items.append(item)
+        return items, offset
+    if major == 5:
+        result = {}
+        for _ in range(argument):
+            key, offset = _decode(data, offset)
+            value, offset = _decode(data, offset)
+            result[key] = value
+        return result, offset
+    # Major type 6: semantic tag, the tagged item is returned as is
+    return _decode(data, offset)
@@ -1,26 +1,40 @@
 """HTTP client for communicating with the Minecraft plugin."""
 
+import asyncio
+import json
 import httpx
-from typing import Optional, Dict, Any, List
+from typing import Optional, Dict, Any, AsyncIterator, List, Tuple, Union
 from datetime import datetime
 import logging
+from collections import OrderedDict
+
+from . import cbor
 
 logger = logging.getLogger(__name__)
 
+# Most recently used GET responses kept for revalidation with If-None-Match
+ETAG_CACHE_SIZE = 64
+# Requests carrying these move forward on every poll and are not worth caching
+_UNCACHED_PARAMS = ("cursor", "since_seq")
+
 
 class PluginAPIClient:
     """HTTP client for communicating with the Minecraft plugin API."""
     
-    def __init__(self, base_url: str, api_key: str, timeout: int = 10):
+    def __init__(self, base_url: str, api_key: str, timeout: int = 10, binary: bool = True):
         self.base_url = base_url.rstrip('/')
         self.api_key = api_key
         self.timeout = timeout
+        # Ask for CBOR first; servers without CBOR support keep answering JSON
+        self._accept = f"{cbor.CONTENT_TYPE}, application/json;q=0.9" if binary else "application/json"
         self._client: Optional[httpx.AsyncClient] = None
+        # ETag -> last body per GET URL, used to answer 304 Not Modified; least recently used first
+        self._etag_cache: "OrderedDict[str, Tuple[str, Dict[str, Any]]]" = OrderedDict()
     
     async def __aenter__(self):
         self._client = httpx.AsyncClient(
             timeout=self.timeout,
-            headers={"X-API-Key": self.api_key}
+            headers={"X-API-Key": self.api_key, "Accept": self._accept}
         )
         return self
     
@@ -33,7 +47,7 @@ class PluginAPIClient:
         if self._client is None:
             self._client = httpx.AsyncClient(
                 timeout=self.timeout,
-                headers={"X-API-Key": self.api_key}
+                headers={"X-API-Key": self.api_key, "Accept": self._accept}
             )
         return self._client
     
@@ -64,11 +78,34 @@ class PluginAPIClient:
         client = self._get_client()
         url = f"{self.base_url}{endpoint}"
         
+        cache_key = None
+        cached = None
+        params = kwargs.get("params") or {}
+        if method == "GET" and not any(key in params for key in _UNCACHED_PARAMS):
+            cache_key = url + "?" + "&".join(f"{k}={v}" for k, v in sorted(params.items()))
+            cached = self._etag_cache.get(cache_key)
+            if cached is not None:
+                self._etag_cache.move_to_end(cache_key)
+                headers = dict(kwargs.get("headers") or {})
+                headers["If-None-Match"] = cached[0]
+                kwargs["headers"] = headers
+        
         last_error = None
         for attempt in range(max_retries + 1):
             try:
                 response = await client.request(method, url, **kwargs)
                 
+                # The entry may have been evicted meanwhile; the body sent with the tag is still valid
+                if response.status_code == 304 and cached is not None:
+                    return cached[1]
+                
+                if response.status_code == 429 and attempt < max_retries:
+                    retry_after = float(response.headers.get("retry-after", "1"))
+                    last_error = f"Rate limited, retrying after {retry_after} seconds"
+                    logger.warning(f"Attempt {attempt + 1}/{max_retries + 1} failed: {last_error}")
+                    await asyncio.sleep(min(retry_after, 5.0))
+                    continue
+                
                 if response.status_code == 401:
                     return {
                         "error": "Authentication failed. Invalid API key.",
@@ -78,7 +115,7 @@ class PluginAPIClient:
                 if response.status_code >= 400:
                     error_msg = f"HTTP {response.status_code}"
                     try:
-                        error_data = response.json()
+                        error_data = self._decode(response)
                         if "error" in error_data:
                             error_msg = error_data["error"]
                     except Exception:
@@ -90,9 +127,17 @@ class PluginAPIClient:
                     }
                 
                 try:
-                    return response.json()
+                    data = self._decode(response)
                 except Exception:
                     return {"data": response.text}
+                
+                etag = response.headers.get("etag")
+                if cache_key is not None and etag:
+                    self._etag_cache[cache_key] = (etag, data)
+                    self._etag_cache.move_to_end(cache_key)
+                    while len(self._etag_cache) > ETAG_CACHE_SIZE:
+                        self._etag_cache.popitem(last=False)
+                return data
                     
             except httpx.TimeoutException as e:
                 last_error = f"Request timeout after {self.timeout} seconds"
@@ -115,11 +160,94 @@ class PluginAPIClient:
             "status_code": 0
         }
     
+    @staticmethod
+    def _decode(response: httpx.Response) -> Any:
+        content_type = response.headers.get("content-type", "")
+        if content_type.startswith(cbor.CONTENT_TYPE):
+            return cbor.loads(response.content)
+        return response.json()
+    
     async def get_status(self) -> Dict[str, Any]:
         return await self._request("GET", "/api/status")
     
-    async def get_plugins(self) -> Dict[str, Any]:
-        return await self._request("GET", "/api/plugins")
+    async def get_ticks(self) -> Dict[str, Any]:
+        """Report TPS and tick duration percentiles over the last 5 seconds, minute and 5 minutes."""
+        return await self._request("GET", "/api/ticks")
+    
+    async def get_hotspots(
+        self,
+        limit: int = 10,
+        sort: str = "entities",
+        world: Optional[str] = None,
+        fields: Optional[List[str]] = None
+    ) -> Dict[str, Any]:
+        """Report per-world entity totals and the busiest chunks of the last hotspot scan.
+        
+        sort is "entities" or "tile_entities". The world filter applies to the
+        busiest chunks across all worlds, so it may return fewer than limit.
+        """
+        params: Dict[str, Any] = {"limit": limit, "sort": sort}
+        if world is not None:
+            params["world"] = world
+        if fields:
+            params["fields"] = ",".join(fields)
+        return await self._request("GET", "/api/hotspots", params=params)
+    
+    async def get_listener_profile(
+        self,
+        window: int = 60,
+        limit: int = 20,
+        fields: Optional[List[str]] = None
+    ) -> Dict[str, Any]:
+        """Report main-thread time spent in event listeners per plugin and event type.
+        
+        window is in seconds (up to 300). Requires profiling.listeners.enabled in the
+        plugin config.
+        """
+        params: Dict[str, Any] = {"window": window, "limit": limit}
+        if fields:
+            params["fields"] = ",".join(fields)
+        return await self._request("GET", "/api/profiler/listeners", params=params)
+    
+    async def profile_cpu(self, duration: float = 10.0, interval_ms: int = 10) -> Dict[str, Any]:
+        """Sample the server thread's stack and return collapsed stacks under "data".
+        
+        The request blocks until the profile is done. The text can be fed to
+        flame graph tools as is. Not retried, since a retry would profile again.
+        """
+        return await self._request(
+            "GET",
+            "/api/profiler/cpu",
+            max_retries=0,
+            params={"duration": duration, "interval_ms": interval_ms},
+            timeout=duration + self.timeout,
+        )
+    
+    @staticmethod
+    def _page_params(
+        params: Dict[str, Any],
+        cursor: Optional[str],
+        fields: Optional[List[str]]
+    ) -> Dict[str, Any]:
+        """Add list pagination and projection parameters."""
+        if cursor is not None:
+            params["cursor"] = cursor
+        if fields:
+            params["fields"] = ",".join(fields)
+        return params
+    
+    async def get_plugins(
+        self,
+        limit: Optional[int] = None,
+        cursor: Optional[str] = None,
+        fields: Optional[List[str]] = None
+    ) -> Dict[str, Any]:
+        params: Dict[str, Any] = {}
+        if limit is not None:
+            params["limit"] = limit
+        self._page_params(params, cursor, fields)
+        
+        return await self._request("GET", "/api/plugins", params=params)
     
     async def execute_command(self, command: str) -> Dict[str, Any]:
         return await self._request(
@@ -128,39 +256,227 @@ class PluginAPIClient:
             json={"commands": command}
         )
     
+    async def execute_commands(
+        self,
+        commands: List[str],
+        stop_on_failure: bool = False,
+        priority: Optional[str] = None
+    ) -> Dict[str, Any]:
+        """Run several commands back to back in a single server tick.
+
+        With `stop_on_failure`, the commands after the first failure are skipped.
+        `priority` picks the scheduling lane: "interactive", "normal" or "bulk".
+        """
+        body: Dict[str, Any] = {"commands": commands, "stop_on_failure": stop_on_failure}
+        if priority is not None:
+            body["priority"] = priority
+        
+        return await self._request("POST", "/api/command", json=body)
+    
+    async def stream_commands(
+        self,
+        commands: List[str],
+        stop_on_failure: bool = False,
+        priority: Optional[str] = None
+    ) -> AsyncIterator[Dict[str, Any]]:
+        """Run commands and yield their output records as the server sends them.
+
+        Records have a "type": "output" (index, line), "result", "dropped"
+        (lines lost to a slow reader) and a final "done".
+        """
+        body: Dict[str, Any] = {"commands": commands, "stop_on_failure": stop_on_failure, "stream": True}
+        if priority is not None:
+            body["priority"] = priority
+        
+        client = self._get_client()
+        async with client.stream(
+            "POST",
+            f"{self.base_url}/api/command",
+            json=body,
+            headers={"Accept": "application/x-ndjson"},
+            timeout=httpx.Timeout(self.timeout, read=None)
+        ) as response:
+            if response.status_code >= 400:
+                await response.aread()
+                yield {"type": "error", "error": f"HTTP {response.status_code}", "status_code": response.status_code}
+                return
+            async for line in response.aiter_lines():
+                if line:
+                    yield json.loads(line)
+    
+    async def get_command_queue(self) -> Dict[str, Any]:
+        """Report the main-thread command queue: depth, wait times and tick budget."""
+        return await self._request("GET", "/api/commands/queue")
+    
+    async def submit_command_job(
+        self,
+        commands: Union[str, List[str]],
+        stop_on_failure: bool = False,
+        priority: Optional[str] = None
+    ) -> Dict[str, Any]:
+        """Start commands as a job and return its ID without waiting for them."""
+        body: Dict[str, Any] = {"commands": commands, "stop_on_failure": stop_on_failure}
+        if priority is not None:
+            body["priority"] = priority
+        
+        return await self._request("POST", "/api/commands/jobs", json=body)
+    
+    async def get_command_job(self, job_id: str, wait: Optional[float] = None) -> Dict[str, Any]:
+        """Fetch a command job, optionally waiting up to `wait` seconds for it to finish.
+
+        Keep `wait` below the client timeout, or the request times out first.
+        """
+        params: Dict[str, Any] = {}
+        if wait is not None:
+            params["wait"] = wait
+        
+        return await self._request("GET", f"/api/commands/jobs/{job_id}", params=params)
+    
+    async def cancel_command_job(self, job_id: str) -> Dict[str, Any]:
+        """Cancel the commands of a job that have not started yet.
+
+        Commands that already ran keep their results; the rest report status "cancelled".
+        """
+        return await self._request("DELETE", f"/api/commands/jobs/{job_id}")
+    
+    async def get_schedules(self) -> Dict[str, Any]:
+        """List the server-side command schedules with their next and last runs."""
+        return await self._request("GET", "/api/schedules")
+    
+    async def put_schedule(
+        self,
+        schedule_id: str,
+        commands: Union[str, List[str]],
+        interval_seconds: Optional[int] = None,
+        cron: Optional[str] = None,
+        priority: Optional[str] = None,
+        stop_on_failure: bool = False,
+        enabled: bool = True
+    ) -> Dict[str, Any]:
+        """Create or replace a recurring command schedule.
+
+        Give either `interval_seconds` or a five-field `cron` expression.
+        The schedule is saved in the plugin config and survives restarts.
+        """
+        body: Dict[str, Any] = {"commands": commands, "stop_on_failure": stop_on_failure, "enabled": enabled}
+        if interval_seconds is not None:
+            body["interval_seconds"] = interval_seconds
+        if cron is not None:
+            body["cron"] = cron
+        if priority is not None:
+            body["priority"] = priority
+        
+        return await self._request("PUT", f"/api/schedules/{schedule_id}", json=body)
+    
+    async def delete_schedule(self, schedule_id: str) -> Dict[str, Any]:
+        return await self._request("DELETE", f"/api/schedules/{schedule_id}")
+    
+    async def get_audit(
+        self,
+        client: Optional[str] = None,
+        start_time: Optional[int] = None,
+        end_time: Optional[int] = None,
+        limit: Optional[int] = None,
+        cursor: Optional[str] = None,
+        fields: Optional[List[str]] = None
+    ) -> Dict[str, Any]:
+        """Query the command audit journal, newest first.
+
+        `client` is an API key name; `start_time` and `end_time` are Unix times in ms.
+        """
+        params: Dict[str, Any] = {}
+        if client is not None:
+            params["client"] = client
+        if start_time is not None:
+            params["start_time"] = start_time
+        if end_time is not None:
+            params["end_time"] = end_time
+        if limit is not None:
+            params["limit"] = limit
+        self._page_params(params, cursor, fields)
+        
+        return await self._request("GET", "/api/audit", params=params)
+    
     async def get_logs(
         self,
         limit: Optional[int] = None,
         start_time: Optional[datetime] = None,
-        end_time: Optional[datetime] = None
+        end_time: Optional[datetime] = None,
+        cursor: Optional[str] = None,
+        fields: Optional[List[str]] = None
     ) -> Dict[str, Any]:
-        params = {}
+        params: Dict[str, Any] = {}
         if limit is not None:
             params["limit"] = limit
         if start_time is not None:
             params["start_time"] = start_time.isoformat()
         if end_time is not None:
             params["end_time"] = end_time.isoformat()
+        self._page_params(params, cursor, fields)
         
         return await self._request("GET", "/api/logs", params=params)
     
-    async def get_players(self) -> Dict[str, Any]:
-        return await self._request("GET", "/api/players")
+    async def get_players(
+        self,
+        limit: Optional[int] = None,
+        cursor: Optional[str] = None,
+        fields: Optional[List[str]] = None
+    ) -> Dict[str, Any]:
+        params: Dict[str, Any] = {}
+        if limit is not None:
+            params["limit"] = limit
+        self._page_params(params, cursor, fields)
+        
+        return await self._request("GET", "/api/players", params=params)
     
     async def get_filtered_logs(
         self,
         level: str,
         plugin: Optional[str] = None,
-        limit: Optional[int] = None
+        limit: Optional[int] = None,
+        cursor: Optional[str] = None,
+        fields: Optional[List[str]] = None
     ) -> Dict[str, Any]:
         endpoint = f"/api/logs/{level}"
-        params = {}
+        params: Dict[str, Any] = {}
         if plugin is not None:
             params["plugin"] = plugin
         if limit is not None:
             params["limit"] = limit
+        self._page_params(params, cursor, fields)
         
         return await self._request("GET", endpoint, params=params)
 
-    async def get_commands(self) -> Dict[str, Any]:
-        return await self._request("GET", "/api/commands")
+    async def get_commands(
+        self,
+        prefix: Optional[str] = None,
+        plugin: Optional[str] = None,
+        offset: Optional[int] = None,
+        limit: Optional[int] = None,
+        cursor: Optional[str] = None,
+        fields: Optional[List[str]] = None
+    ) -> Dict[str, Any]:
+        params: Dict[str, Any] = {}
+        if prefix is not None:
+            params["prefix"] = prefix
+        if plugin is not None:
+            params["plugin"] = plugin
+        if offset is not None:
+            params["offset"] = offset
+        if limit is not None:
+            params["limit"] = limit
+        self._page_params(params, cursor, fields)
+        
+        return await self._request("GET", "/api/commands", params=params)
+
+    async def batch(self, requests: List[Dict[str, Any]]) -> Dict[str, Any]:
+        """Run several API calls in one round trip.
+        
+        Each request is a dict with "route" and optional "id", "method",
+        "params", "body" and "if_none_match" keys.
+        """
+        return await self._request(
+            "POST",
+            "/api/batch",
+            json={"requests": requests}
+        )
@@ -57,6 +57,7 @@ async def status_tool(api_key: str) -> Dict[str, Any]:
             "server_version": response.get("serverVersion", "Unknown"),
             "minecraft_version": response.get("minecraftVersion", "Unknown"),
             "online": response.get("online", True),
+            "tick": response.get("tick"),
         }
         
     except Exception as e: